@@ -0,0 +1,83 @@
+package com.gazmanzara.library.benchmark;
+
+import com.gazmanzara.library.model.Author;
+import com.gazmanzara.library.model.Book;
+import com.gazmanzara.library.model.BorrowStatus;
+import com.gazmanzara.library.model.BorrowedBook;
+import com.gazmanzara.library.model.Category;
+import com.gazmanzara.library.model.Member;
+
+import java.time.LocalDateTime;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Builds detached entity graphs shaped like production data: a book or a
+ * member with a long borrow history of which only the most recent borrow is
+ * still active.
+ */
+final class BenchmarkData {
+
+    private static final LocalDateTime START = LocalDateTime.of(2020, 1, 1, 10, 0);
+
+    private BenchmarkData() {
+    }
+
+    static Book book(long id, int historySize) {
+        Author author = new Author("Gabriel García Márquez");
+        author.setId(1L);
+        author.setBiography("Colombian novelist, short-story writer, screenwriter and journalist.");
+
+        Set<Category> categories = new HashSet<>();
+        for (String name : new String[]{"Fiction", "Magical Realism", "Classics"}) {
+            Category category = new Category(name, name + " books");
+            category.setId((long) categories.size() + 1);
+            categories.add(category);
+        }
+
+        Book book = new Book("One Hundred Years of Solitude", "978-0-06-088328-" + id, author);
+        book.setId(id);
+        book.setDescription("The multi-generational story of the Buendía family in the town of Macondo.");
+        book.setImgUrl("https://covers.example.com/" + id + ".jpg");
+        book.setPublicationYear(1967);
+        book.setCategories(categories);
+
+        Member reader = member(1L, 0);
+        for (int i = 0; i < historySize; i++) {
+            BorrowedBook borrow = borrow(id * 100_000 + i, i, i < historySize - 1);
+            book.addBorrowedBook(borrow);
+            reader.addBorrowedBook(borrow);
+        }
+        return book;
+    }
+
+    static Member member(long id, int historySize) {
+        Member member = new Member("Ada", "Lovelace", "ada" + id + "@example.com");
+        member.setId(id);
+        member.setPhone("+44 20 7946 " + id);
+        for (int i = 0; i < historySize; i++) {
+            BorrowedBook borrow = borrow(id * 100_000 + i, i, i < historySize - 1);
+            book(i + 1L, 0).addBorrowedBook(borrow);
+            member.addBorrowedBook(borrow);
+        }
+        return member;
+    }
+
+    // Past borrows are two weeks long and follow each other; the active one is not yet due
+    private static BorrowedBook borrow(long id, int sequence, boolean returned) {
+        BorrowedBook borrow = new BorrowedBook();
+        borrow.setId(id);
+        if (returned) {
+            borrow.setBorrowDate(START.plusWeeks(2L * sequence));
+            borrow.setDueDate(START.plusWeeks(2L * sequence + 2));
+            borrow.setReturnDate(START.plusWeeks(2L * sequence + 1));
+            borrow.setStatus(BorrowStatus.RETURNED);
+        } else {
+            LocalDateTime now = LocalDateTime.now();
+            borrow.setBorrowDate(now.minusDays(7));
+            borrow.setDueDate(now.plusDays(7));
+            borrow.setStatus(BorrowStatus.BORROWED);
+        }
+        return borrow;
+    }
+}
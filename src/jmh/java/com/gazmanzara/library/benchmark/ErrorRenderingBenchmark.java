@@ -0,0 +1,84 @@
+package com.gazmanzara.library.benchmark;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.gazmanzara.library.controller.BookController;
+import com.gazmanzara.library.exception.BadRequestException;
+import com.gazmanzara.library.exception.GlobalExceptionHandler;
+import com.gazmanzara.library.exception.ResourceNotFoundException;
+import jakarta.servlet.http.HttpServletRequest;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.core.MethodParameter;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.validation.BeanPropertyBindingResult;
+import org.springframework.web.bind.MethodArgumentNotValidException;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.context.request.WebRequest;
+
+import java.lang.reflect.Proxy;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Error responses as the exception handler builds and Jackson renders them.
+ * Each benchmark creates the exception as well, since that is part of what
+ * a failed request pays for.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ErrorRenderingBenchmark {
+
+    private final GlobalExceptionHandler handler = new GlobalExceptionHandler();
+
+    private ObjectMapper objectMapper;
+    private WebRequest request;
+    private MethodParameter createBookParameter;
+
+    @Setup
+    public void setUp() throws NoSuchMethodException {
+        objectMapper = Jackson2ObjectMapperBuilder.json().build();
+        // Only the request URI is read when describing the request
+        HttpServletRequest servletRequest = (HttpServletRequest) Proxy.newProxyInstance(
+                HttpServletRequest.class.getClassLoader(),
+                new Class<?>[]{HttpServletRequest.class},
+                (proxy, method, args) -> method.getName().equals("getRequestURI") ? "/api/books/42" : null);
+        request = new ServletWebRequest(servletRequest);
+        createBookParameter = new MethodParameter(
+                BookController.class.getMethod("createBook", BookController.BookRequest.class), 0);
+    }
+
+    @Benchmark
+    public byte[] notFound() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(handler.handleResourceNotFoundException(
+                new ResourceNotFoundException("Book", "id", 42L), request).getBody());
+    }
+
+    @Benchmark
+    public byte[] badRequest() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(handler.handleBadRequestException(
+                new BadRequestException("Book is already borrowed"), request).getBody());
+    }
+
+    @Benchmark
+    public byte[] validationFailure() throws JsonProcessingException {
+        BookController.BookRequest target = new BookController.BookRequest();
+        BeanPropertyBindingResult result = new BeanPropertyBindingResult(target, "bookRequest");
+        result.rejectValue("title", "NotBlank", "Book title must not be blank");
+        result.rejectValue("isbn", "NotBlank", "ISBN must not be blank");
+        result.rejectValue("categoryIds", "NotEmpty", "At least one category is required");
+        return objectMapper.writeValueAsBytes(handler.handleValidationExceptions(
+                new MethodArgumentNotValidException(createBookParameter, result), request).getBody());
+    }
+}
@@ -0,0 +1,75 @@
+package com.gazmanzara.library.benchmark;
+
+import com.gazmanzara.library.dto.BookDTO;
+import com.gazmanzara.library.model.Book;
+import com.gazmanzara.library.model.BorrowedBook;
+import com.gazmanzara.library.model.Member;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Entity helpers that run on every request touching a book or a member, for
+ * borrow histories from a new item up to a heavily circulated one.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ModelBenchmark {
+
+    @Param({"1", "20", "200"})
+    private int historySize;
+
+    private Book book;
+    private Member member;
+
+    @Setup
+    public void setUp() {
+        book = BenchmarkData.book(42L, historySize);
+        member = BenchmarkData.member(7L, historySize);
+    }
+
+    @Benchmark
+    public BookDTO bookDto() {
+        return new BookDTO(book);
+    }
+
+    @Benchmark
+    public boolean bookIsCurrentlyBorrowed() {
+        return book.isCurrentlyBorrowed();
+    }
+
+    @Benchmark
+    public Long bookCurrentBorrowId() {
+        return book.getCurrentBorrowId();
+    }
+
+    @Benchmark
+    public Set<BorrowedBook> memberCurrentBorrows() {
+        return member.getCurrentBorrows();
+    }
+
+    @Benchmark
+    public Set<Long> memberCurrentBorrowIds() {
+        return member.getCurrentBorrowIds();
+    }
+
+    @Benchmark
+    public boolean memberHasOverdueBooks() {
+        return member.hasOverdueBooks();
+    }
+}
@@ -0,0 +1,86 @@
+package com.gazmanzara.library.benchmark;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.gazmanzara.library.dto.BookDTO;
+import com.gazmanzara.library.model.BorrowedBook;
+import com.gazmanzara.library.model.Member;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A page of the bulk list endpoints encoded as JSON, CBOR and Smile, with
+ * the ObjectMapper defaults Spring Boot configures. Serialization cost is
+ * what JMH measures; the payload size of each page is printed once per
+ * trial, since JMH has no column for it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PayloadEncodingBenchmark {
+
+    @Param({"json", "cbor", "smile"})
+    private String encoding;
+
+    // The default page size of the list endpoints
+    @Param({"50"})
+    private int pageSize;
+
+    private ObjectMapper objectMapper;
+    private List<BookDTO> books;
+    private List<Member> members;
+    private List<BorrowedBook> borrows;
+
+    @Setup
+    public void setUp() throws JsonProcessingException {
+        objectMapper = switch (encoding) {
+            case "json" -> Jackson2ObjectMapperBuilder.json().build();
+            case "cbor" -> Jackson2ObjectMapperBuilder.cbor().build();
+            case "smile" -> Jackson2ObjectMapperBuilder.smile().build();
+            default -> throw new IllegalArgumentException("Unknown encoding " + encoding);
+        };
+        books = new ArrayList<>(pageSize);
+        members = new ArrayList<>(pageSize);
+        borrows = new ArrayList<>(pageSize);
+        for (long id = 1; id <= pageSize; id++) {
+            books.add(new BookDTO(BenchmarkData.book(id, 0)));
+            Member member = BenchmarkData.member(id, 1);
+            members.add(member);
+            borrows.add(member.getCurrentBorrows().iterator().next());
+        }
+        System.out.printf("%n%s payload bytes per page: books %d, members %d, borrowed books %d%n", encoding,
+                books().length, members().length, borrowedBooks().length);
+    }
+
+    @Benchmark
+    public byte[] books() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(books);
+    }
+
+    @Benchmark
+    public byte[] members() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(members);
+    }
+
+    @Benchmark
+    public byte[] borrowedBooks() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(borrows);
+    }
+}
@@ -0,0 +1,73 @@
+package com.gazmanzara.library.benchmark;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.gazmanzara.library.dto.BookDTO;
+import com.gazmanzara.library.model.Book;
+import com.gazmanzara.library.model.BorrowedBook;
+import com.gazmanzara.library.model.Member;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Jackson serialization of the response bodies the controllers return, with
+ * the same ObjectMapper defaults Spring Boot configures.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SerializationBenchmark {
+
+    @Param({"1", "20", "200"})
+    private int historySize;
+
+    private ObjectMapper objectMapper;
+    private Book book;
+    private BookDTO bookDto;
+    private Member member;
+    private BorrowedBook borrow;
+
+    @Setup
+    public void setUp() {
+        objectMapper = Jackson2ObjectMapperBuilder.json().build();
+        book = BenchmarkData.book(42L, historySize);
+        bookDto = new BookDTO(book);
+        member = BenchmarkData.member(7L, historySize);
+        borrow = member.getCurrentBorrows().iterator().next();
+    }
+
+    @Benchmark
+    public byte[] book() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(book);
+    }
+
+    @Benchmark
+    public byte[] bookDto() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(bookDto);
+    }
+
+    @Benchmark
+    public byte[] member() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(member);
+    }
+
+    @Benchmark
+    public byte[] borrowedBook() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(borrow);
+    }
+}
@@ -0,0 +1,331 @@
+package com.gazmanzara.library.loadtest;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.SplittableRandom;
+
+/**
+ * Fills a library database with synthetic data at a configurable scale. The
+ * schema must already exist (start the application against the database
+ * once); rows are appended after the existing ids, so the generator can be
+ * run against a database that already holds the seed data.
+ *
+ * <p>Options, all optional:
+ * <pre>
+ *   --url=jdbc:postgresql://localhost:5432/library   (default: $DB_URL)
+ *   --user=...  --password=...                       (default: $DB_USER, $DB_PASS)
+ *   --authors=20000 --categories=60 --books=1000000 --members=500000 --borrows=20000000
+ *   --active-ratio=0.08   share of books currently on loan
+ *   --batch=5000 --seed=42
+ * </pre>
+ *
+ * <p>Written for PostgreSQL. Borrow histories are generated per book in date
+ * order, so every book has at most one active borrow, as the active-borrow
+ * index requires.
+ */
+public class DatasetGenerator {
+
+    private static final LocalDateTime HISTORY_START = LocalDateTime.now().minusYears(5);
+    private static final long HISTORY_HOURS = java.time.Duration.between(HISTORY_START, LocalDateTime.now()).toHours();
+
+    private final Connection connection;
+    private final SplittableRandom random;
+    private final int batchSize;
+
+    private long rowsSinceCommit;
+
+    DatasetGenerator(Connection connection, long seed, int batchSize) {
+        this.connection = connection;
+        this.random = new SplittableRandom(seed);
+        this.batchSize = batchSize;
+    }
+
+    public static void main(String[] args) throws SQLException {
+        Options options = new Options(args);
+        String url = options.string("url", System.getenv("DB_URL"));
+        if (url == null) {
+            throw new IllegalArgumentException("Pass --url or set DB_URL");
+        }
+        if (url.startsWith("jdbc:postgresql:") && !url.contains("reWriteBatchedInserts")) {
+            url += (url.contains("?") ? "&" : "?") + "reWriteBatchedInserts=true";
+        }
+
+        try (Connection connection = DriverManager.getConnection(url,
+                options.string("user", System.getenv("DB_USER")),
+                options.string("password", System.getenv("DB_PASS")))) {
+            connection.setAutoCommit(false);
+            DatasetGenerator generator = new DatasetGenerator(connection,
+                    options.number("seed", 42), (int) options.number("batch", 5000));
+            generator.generate(
+                    options.number("authors", 20_000),
+                    options.number("categories", 60),
+                    options.number("books", 1_000_000),
+                    options.number("members", 500_000),
+                    options.number("borrows", 20_000_000),
+                    options.decimal("active-ratio", 0.08));
+        }
+    }
+
+    void generate(long authors, long categories, long books, long members, long borrows, double activeRatio)
+            throws SQLException {
+        long started = System.nanoTime();
+        long firstAuthor = nextId("author");
+        long firstCategory = nextId("category");
+        long firstBook = nextId("books");
+        long firstMember = nextId("members");
+        long firstBorrow = nextId("borrowed_books");
+
+        insertAuthors(firstAuthor, authors);
+        insertCategories(firstCategory, categories);
+        insertBooks(firstBook, books, firstAuthor, authors, firstCategory, categories);
+        insertMembers(firstMember, members);
+        long borrowRows = insertBorrows(firstBorrow, borrows, firstBook, books, firstMember, members, activeRatio);
+        recountMembers(firstMember);
+
+        for (String table : new String[]{"author", "category", "books", "members", "borrowed_books"}) {
+            restartIdentity(table);
+        }
+        try (Statement statement = connection.createStatement()) {
+            // Dashboard counters are rebuilt from the tables on next read
+            statement.executeUpdate("DELETE FROM library_statistics");
+        }
+        connection.commit();
+        analyze();
+
+        System.out.printf("Generated %d authors, %d categories, %d books, %d members and %d borrows in %ds%n",
+                authors, categories, books, members, borrowRows, (System.nanoTime() - started) / 1_000_000_000L);
+    }
+
+    private void insertAuthors(long firstId, long count) throws SQLException {
+        try (PreparedStatement insert = connection.prepareStatement(
+                "INSERT INTO author (id, name, biography) VALUES (?, ?, ?)")) {
+            for (long id = firstId; id < firstId + count; id++) {
+                insert.setLong(1, id);
+                insert.setString(2, Vocabulary.pick(Vocabulary.FIRST_NAMES, random) + " "
+                        + Vocabulary.pick(Vocabulary.LAST_NAMES, random) + " #" + id);
+                insert.setString(3, "Author of " + Vocabulary.title(random).toLowerCase() + " and other works");
+                add(insert);
+                if (rowsSinceCommit >= batchSize) {
+                    flush(insert);
+                }
+            }
+            flush(insert);
+        }
+    }
+
+    private void insertCategories(long firstId, long count) throws SQLException {
+        try (PreparedStatement insert = connection.prepareStatement(
+                "INSERT INTO category (id, name, description) VALUES (?, ?, ?)")) {
+            for (long id = firstId; id < firstId + count; id++) {
+                String genre = Vocabulary.GENRES[(int) ((id - firstId) % Vocabulary.GENRES.length)];
+                insert.setLong(1, id);
+                insert.setString(2, genre + " #" + id);
+                insert.setString(3, genre + " books");
+                add(insert);
+                if (rowsSinceCommit >= batchSize) {
+                    flush(insert);
+                }
+            }
+            flush(insert);
+        }
+    }
+
+    private void insertBooks(long firstId, long count, long firstAuthor, long authors,
+                             long firstCategory, long categories) throws SQLException {
+        try (PreparedStatement insertBook = connection.prepareStatement(
+                "INSERT INTO books (id, title, description, isbn, publication_year, img_url, author_id) " +
+                        "VALUES (?, ?, ?, ?, ?, ?, ?)");
+             PreparedStatement insertCategory = connection.prepareStatement(
+                     "INSERT INTO book_categories (book_id, category_id) VALUES (?, ?)")) {
+            for (long id = firstId; id < firstId + count; id++) {
+                insertBook.setLong(1, id);
+                insertBook.setString(2, Vocabulary.title(random));
+                insertBook.setString(3, "A story of " + Vocabulary.pick(Vocabulary.TITLE_WORDS, random) + " and "
+                        + Vocabulary.pick(Vocabulary.TITLE_WORDS, random) + ".");
+                insertBook.setString(4, String.format("979%010d", id));
+                insertBook.setInt(5, 1900 + random.nextInt(126));
+                insertBook.setString(6, "https://covers.example.com/" + id + ".jpg");
+                insertBook.setLong(7, firstAuthor + skewed(authors));
+                add(insertBook);
+
+                // One to three distinct categories per book
+                long category = random.nextLong(categories);
+                int categoryCount = 1 + random.nextInt((int) Math.min(3, categories));
+                for (int i = 0; i < categoryCount; i++) {
+                    insertCategory.setLong(1, id);
+                    insertCategory.setLong(2, firstCategory + (category + i) % categories);
+                    add(insertCategory);
+                }
+                if (rowsSinceCommit >= batchSize) {
+                    // Books before their categories, so the join rows never point at a missing book
+                    flush(insertBook);
+                    flush(insertCategory);
+                }
+                progress("books", id - firstId + 1);
+            }
+            flush(insertBook);
+            flush(insertCategory);
+        }
+    }
+
+    private void insertMembers(long firstId, long count) throws SQLException {
+        try (PreparedStatement insert = connection.prepareStatement(
+                "INSERT INTO members (id, first_name, last_name, email, phone) VALUES (?, ?, ?, ?, ?)")) {
+            for (long id = firstId; id < firstId + count; id++) {
+                String first = Vocabulary.pick(Vocabulary.FIRST_NAMES, random);
+                String last = Vocabulary.pick(Vocabulary.LAST_NAMES, random);
+                insert.setLong(1, id);
+                insert.setString(2, first);
+                insert.setString(3, last);
+                insert.setString(4, (first + "." + last + "." + id + "@example.org").toLowerCase());
+                insert.setString(5, "+1-555-" + id);
+                add(insert);
+                if (rowsSinceCommit >= batchSize) {
+                    flush(insert);
+                }
+            }
+            flush(insert);
+        }
+    }
+
+    /**
+     * Spreads the borrows over the books with a skew towards popular titles.
+     * Each book's history is a run of consecutive two-week loans; the last one
+     * is left open for roughly {@code activeRatio} of the books, and those
+     * already past their due date are marked overdue, as the overdue job
+     * would have.
+     */
+    private long insertBorrows(long firstId, long count, long firstBook, long books,
+                               long firstMember, long members, double activeRatio) throws SQLException {
+        if (books == 0 || members == 0) {
+            return 0;
+        }
+        double perBook = (double) count / books;
+        long id = firstId;
+        try (PreparedStatement insert = connection.prepareStatement(
+                "INSERT INTO borrowed_books (id, book_id, member_id, borrow_date, due_date, return_date, status) " +
+                        "VALUES (?, ?, ?, ?, ?, ?, ?)")) {
+            for (long book = 0; book < books && id < firstId + count; book++) {
+                // Popularity falls off with the book's rank, averaging perBook over the catalog
+                double weight = 2.0 * (1.0 - (double) book / books) * (0.5 + random.nextDouble());
+                int historySize = (int) Math.min(Math.round(perBook * weight), firstId + count - id);
+                boolean active = random.nextDouble() < activeRatio;
+
+                LocalDateTime borrowDate = HISTORY_START.plusHours(random.nextLong(Math.max(1, HISTORY_HOURS / 4)));
+                for (int i = 0; i < historySize && borrowDate.isBefore(LocalDateTime.now()); i++) {
+                    boolean last = i == historySize - 1 || borrowDate.plusDays(30).isAfter(LocalDateTime.now());
+                    LocalDateTime dueDate = borrowDate.plusDays(14);
+                    insert.setLong(1, id++);
+                    insert.setLong(2, firstBook + book);
+                    insert.setLong(3, firstMember + skewed(members));
+                    insert.setTimestamp(4, Timestamp.valueOf(borrowDate));
+                    insert.setTimestamp(5, Timestamp.valueOf(dueDate));
+                    if (last && active) {
+                        insert.setTimestamp(6, null);
+                        insert.setString(7, dueDate.isBefore(LocalDateTime.now()) ? "OVERDUE" : "BORROWED");
+                    } else {
+                        LocalDateTime returnDate = min(borrowDate.plusDays(1 + random.nextInt(20)), LocalDateTime.now());
+                        insert.setTimestamp(6, Timestamp.valueOf(returnDate));
+                        insert.setString(7, "RETURNED");
+                        borrowDate = returnDate.plusHours(1 + random.nextLong(
+                                Math.max(1, HISTORY_HOURS / Math.max(1, historySize) / 2)));
+                    }
+                    add(insert);
+                    progress("borrows", id - firstId);
+                    if (last) {
+                        break;
+                    }
+                }
+                if (rowsSinceCommit >= batchSize) {
+                    flush(insert);
+                }
+            }
+            flush(insert);
+        }
+        return id - firstId;
+    }
+
+    // Fills the members' circulation summary from their borrows, as the application's reconcile would
+    private void recountMembers(long firstMember) throws SQLException {
+        try (PreparedStatement update = connection.prepareStatement(
+                "UPDATE members m SET active_borrows = c.active, overdue_borrows = c.overdue, " +
+                        "last_activity_at = c.last_activity " +
+                        "FROM (SELECT member_id, " +
+                        "COUNT(*) FILTER (WHERE status IN ('BORROWED', 'OVERDUE')) AS active, " +
+                        "COUNT(*) FILTER (WHERE status = 'OVERDUE') AS overdue, " +
+                        "MAX(GREATEST(borrow_date, return_date)) AS last_activity " +
+                        "FROM borrowed_books WHERE member_id >= ? GROUP BY member_id) c " +
+                        "WHERE m.id = c.member_id")) {
+            update.setLong(1, firstMember);
+            update.executeUpdate();
+        }
+        connection.commit();
+    }
+
+    private static LocalDateTime min(LocalDateTime a, LocalDateTime b) {
+        return a.isBefore(b) ? a : b;
+    }
+
+    // Index in [0, bound), biased towards low values so a minority of rows gets most references
+    private long skewed(long bound) {
+        double u = random.nextDouble();
+        return Math.min(bound - 1, (long) (bound * u * u));
+    }
+
+    // Queues the row; callers flush once rowsSinceCommit reaches the batch size
+    private void add(PreparedStatement statement) throws SQLException {
+        statement.addBatch();
+        rowsSinceCommit++;
+    }
+
+    private void flush(PreparedStatement statement) throws SQLException {
+        statement.executeBatch();
+        connection.commit();
+        rowsSinceCommit = 0;
+    }
+
+    private void progress(String what, long done) {
+        if (done % 1_000_000 == 0) {
+            System.out.printf("  %,d %s%n", done, what);
+        }
+    }
+
+    private long nextId(String table) throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet result = statement.executeQuery("SELECT COALESCE(MAX(id), 0) + 1 FROM " + table)) {
+            result.next();
+            return result.getLong(1);
+        }
+    }
+
+    // Explicit ids bypass the identity sequences, so move them past the generated rows
+    private void restartIdentity(String table) throws SQLException {
+        long next = nextId(table);
+        try (Statement statement = connection.createStatement()) {
+            if (isPostgres()) {
+                statement.execute("SELECT setval(pg_get_serial_sequence('" + table + "', 'id'), " + next + ", false)");
+            } else {
+                statement.execute("ALTER TABLE " + table + " ALTER COLUMN id RESTART WITH " + next);
+            }
+        }
+    }
+
+    private void analyze() throws SQLException {
+        if (isPostgres()) {
+            connection.setAutoCommit(true);
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("ANALYZE");
+            }
+        }
+    }
+
+    private boolean isPostgres() throws SQLException {
+        return connection.getMetaData().getDatabaseProductName().equalsIgnoreCase("PostgreSQL");
+    }
+}
@@ -0,0 +1,127 @@
+package com.gazmanzara.library.loadtest;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Latencies and outcomes of one endpoint. Samples are kept in full, which
+ * is cheap at load-test volumes and gives exact percentiles.
+ */
+final class LatencyRecorder {
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private long[] nanos = new long[4096];
+    private int size;
+    private long clientErrors;
+    private long errors;
+
+    // Status -1 means the request failed without a response
+    void record(long latencyNanos, int status) {
+        lock.lock();
+        try {
+            if (size == nanos.length) {
+                nanos = Arrays.copyOf(nanos, size * 2);
+            }
+            nanos[size++] = latencyNanos;
+            if (status >= 400 && status < 500) {
+                clientErrors++;
+            } else if (status < 0 || status >= 500) {
+                errors++;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    Summary summarize(String endpoint, Duration duration) {
+        long[] sorted;
+        lock.lock();
+        try {
+            sorted = Arrays.copyOf(nanos, size);
+        } finally {
+            lock.unlock();
+        }
+        Arrays.sort(sorted);
+        return new Summary(endpoint, sorted.length, sorted.length / (duration.toNanos() / 1e9),
+                percentile(sorted, 0.50), percentile(sorted, 0.95), percentile(sorted, 0.99),
+                sorted.length == 0 ? 0 : sorted[sorted.length - 1] / 1e6, clientErrors, errors);
+    }
+
+    private static double percentile(long[] sorted, double fraction) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        return sorted[(int) Math.ceil(sorted.length * fraction) - 1] / 1e6;
+    }
+
+    /**
+     * Results for one endpoint; latencies in milliseconds. Client errors (4xx)
+     * are expected in a mixed workload, such as borrowing a book that is
+     * already on loan, and are reported apart from failures.
+     */
+    record Summary(String endpoint, long requests, double throughput, double p50, double p95, double p99,
+                   double max, long clientErrors, long errors) {
+
+        private static final String CSV_HEADER = "endpoint,requests,throughput,p50,p95,p99,max,client_errors,errors";
+
+        static String table(List<Summary> summaries) {
+            StringBuilder table = new StringBuilder(String.format("%-45s %9s %9s %9s %9s %9s %9s %7s %7s%n",
+                    "endpoint", "requests", "req/s", "p50 ms", "p95 ms", "p99 ms", "max ms", "4xx", "errors"));
+            for (Summary s : summaries) {
+                table.append(String.format("%-45s %9d %9.1f %9.1f %9.1f %9.1f %9.1f %7d %7d%n",
+                        s.endpoint, s.requests, s.throughput, s.p50, s.p95, s.p99, s.max, s.clientErrors, s.errors));
+            }
+            return table.toString();
+        }
+
+        static String csv(List<Summary> summaries) {
+            StringBuilder csv = new StringBuilder(CSV_HEADER).append('\n');
+            for (Summary s : summaries) {
+                csv.append(String.format(java.util.Locale.ROOT, "%s,%d,%.2f,%.2f,%.2f,%.2f,%.2f,%d,%d%n",
+                        s.endpoint, s.requests, s.throughput, s.p50, s.p95, s.p99, s.max, s.clientErrors, s.errors));
+            }
+            return csv.toString();
+        }
+
+        static Map<String, Summary> parseCsv(String csv) {
+            Map<String, Summary> summaries = new HashMap<>();
+            for (String line : csv.split("\n")) {
+                if (line.isBlank() || line.startsWith("endpoint,")) {
+                    continue;
+                }
+                String[] f = line.split(",");
+                summaries.put(f[0], new Summary(f[0], Long.parseLong(f[1]), Double.parseDouble(f[2]),
+                        Double.parseDouble(f[3]), Double.parseDouble(f[4]), Double.parseDouble(f[5]),
+                        Double.parseDouble(f[6]), Long.parseLong(f[7]), Long.parseLong(f[8])));
+            }
+            return summaries;
+        }
+
+        // Endpoints whose p99 grew, or whose throughput fell, by more than the allowed fraction
+        static List<String> regressions(Map<String, Summary> baseline, List<Summary> current, double allowed) {
+            List<String> regressions = new ArrayList<>();
+            for (Summary now : current) {
+                Summary before = baseline.get(now.endpoint);
+                if (before == null) {
+                    continue;
+                }
+                if (before.p99 > 0 && now.p99 > before.p99 * (1 + allowed)) {
+                    regressions.add(String.format("%s p99 %.1f ms -> %.1f ms", now.endpoint, before.p99, now.p99));
+                }
+                if (now.throughput < before.throughput * (1 - allowed)) {
+                    regressions.add(String.format("%s throughput %.1f -> %.1f req/s",
+                            now.endpoint, before.throughput, now.throughput));
+                }
+                if (now.errors > 0 && before.errors == 0) {
+                    regressions.add(String.format("%s %d errors", now.endpoint, now.errors));
+                }
+            }
+            return regressions;
+        }
+    }
+}
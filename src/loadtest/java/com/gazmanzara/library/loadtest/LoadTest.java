@@ -0,0 +1,262 @@
+package com.gazmanzara.library.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.gazmanzara.library.dto.CursorPage;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Drives a running instance with a mix of user journeys from concurrent
+ * clients and reports throughput and latency percentiles per endpoint.
+ *
+ * <p>Options, all optional:
+ * <pre>
+ *   --base-url=http://localhost:8080
+ *   --clients=64 --duration=60 --warmup=10      (seconds, or ISO-8601 such as PT2M)
+ *   --mix=browse:25,search:20,detail:20,borrow:10,dashboard:10,members:10,authors:5
+ *   --out=results.csv                           write the per-endpoint results
+ *   --baseline=previous.csv --max-regression=0.25
+ * </pre>
+ *
+ * <p>With a baseline, the run fails (exit status 1) when an endpoint's p99
+ * grows or its throughput drops by more than the allowed fraction. Ids are
+ * drawn from the ranges reported by the dashboard overview, which match a
+ * database filled by {@link DatasetGenerator}.
+ */
+public class LoadTest {
+
+    private final HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build();
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Map<String, LatencyRecorder> recorders = new ConcurrentHashMap<>();
+    private final String baseUrl;
+
+    private long maxBookId;
+    private long maxMemberId;
+    private volatile boolean measuring;
+
+    LoadTest(String baseUrl) {
+        this.baseUrl = baseUrl.endsWith("/") ? baseUrl.substring(0, baseUrl.length() - 1) : baseUrl;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options = new Options(args);
+        LoadTest loadTest = new LoadTest(options.string("base-url", "http://localhost:8080"));
+        Map<String, Integer> mix = parseMix(options.string("mix",
+                "browse:25,search:20,detail:20,borrow:10,dashboard:10,members:10,authors:5"));
+        Duration duration = options.duration("duration", Duration.ofSeconds(60));
+
+        loadTest.discover();
+        loadTest.run((int) options.number("clients", 64), options.duration("warmup", Duration.ofSeconds(10)),
+                duration, mix);
+
+        List<LatencyRecorder.Summary> results = loadTest.summaries(duration);
+        System.out.println(LatencyRecorder.Summary.table(results));
+
+        String out = options.string("out", null);
+        if (out != null) {
+            Files.writeString(Path.of(out), LatencyRecorder.Summary.csv(results));
+        }
+        String baseline = options.string("baseline", null);
+        if (baseline != null) {
+            List<String> regressions = LatencyRecorder.Summary.regressions(
+                    LatencyRecorder.Summary.parseCsv(Files.readString(Path.of(baseline))), results,
+                    options.decimal("max-regression", 0.25));
+            regressions.forEach(regression -> System.out.println("REGRESSION " + regression));
+            if (!regressions.isEmpty()) {
+                System.exit(1);
+            }
+        }
+    }
+
+    // Id ranges to draw from, taken from the dashboard counters
+    void discover() throws IOException, InterruptedException {
+        JsonNode overview = getJson("/api/dashboard/overview");
+        maxBookId = Math.max(1, overview.path("totalBooks").asLong());
+        maxMemberId = Math.max(1, overview.path("totalMembers").asLong());
+        System.out.printf("Target %s: %d books, %d members%n", baseUrl, maxBookId, maxMemberId);
+    }
+
+    void run(int clients, Duration warmup, Duration duration, Map<String, Integer> mix) throws InterruptedException {
+        List<Journey> journeys = new ArrayList<>();
+        mix.forEach((name, weight) -> {
+            Journey journey = journey(name);
+            for (int i = 0; i < weight; i++) {
+                journeys.add(journey);
+            }
+        });
+
+        long warmupEnd = System.nanoTime() + warmup.toNanos();
+        long end = warmupEnd + duration.toNanos();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < clients; i++) {
+                executor.submit(() -> {
+                    while (System.nanoTime() < end) {
+                        try {
+                            journeys.get(ThreadLocalRandom.current().nextInt(journeys.size())).run();
+                        } catch (IOException | RuntimeException ex) {
+                            // An unreadable response; the request itself has already been recorded
+                        }
+                    }
+                    return null;
+                });
+            }
+            Thread.sleep(warmup.toMillis());
+            measuring = true;
+            System.out.printf("Warmed up; measuring %ds with %d clients%n", duration.toSeconds(), clients);
+        }
+    }
+
+    List<LatencyRecorder.Summary> summaries(Duration duration) {
+        return recorders.entrySet().stream()
+                .sorted(Map.Entry.comparingByKey())
+                .map(entry -> entry.getValue().summarize(entry.getKey(), duration))
+                .toList();
+    }
+
+    private Journey journey(String name) {
+        return switch (name) {
+            case "browse" -> this::browse;
+            case "search" -> this::search;
+            case "detail" -> this::detail;
+            case "borrow" -> this::borrowAndReturn;
+            case "dashboard" -> this::dashboard;
+            case "members" -> this::members;
+            case "authors" -> this::authorsAndCategories;
+            default -> throw new IllegalArgumentException("Unknown journey " + name);
+        };
+    }
+
+    // Catalog browsing: open the listing somewhere in the middle and page forward
+    private void browse() throws IOException, InterruptedException {
+        String cursor = CursorPage.encodeCursor(ThreadLocalRandom.current().nextLong(maxBookId));
+        for (int page = 0; page < 3 && cursor != null; page++) {
+            JsonNode body = getJson("GET /api/books", "/api/books?limit=50&after=" + cursor);
+            cursor = body == null || body.path("nextCursor").isNull() ? null : body.path("nextCursor").asText();
+        }
+    }
+
+    private void search() throws IOException, InterruptedException {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        String words = Vocabulary.pick(Vocabulary.TITLE_WORDS, random)
+                + (random.nextBoolean() ? " " + Vocabulary.pick(Vocabulary.TITLE_WORDS, random) : "");
+        get("GET /api/books/search", "/api/books/search?limit=20&q=" + URLEncoder.encode(words, StandardCharsets.UTF_8));
+        if (random.nextInt(4) == 0) {
+            get("GET /api/authors/search", "/api/authors/search?name="
+                    + URLEncoder.encode(Vocabulary.pick(Vocabulary.LAST_NAMES, random), StandardCharsets.UTF_8));
+        }
+    }
+
+    private void detail() throws IOException, InterruptedException {
+        long bookId = 1 + ThreadLocalRandom.current().nextLong(maxBookId);
+        get("GET /api/books/{id}", "/api/books/" + bookId);
+        get("GET /api/borrowed-books/book/{id}", "/api/borrowed-books/book/" + bookId);
+    }
+
+    // Kiosk burst: a handful of borrows by one member, each returned again
+    private void borrowAndReturn() throws IOException, InterruptedException {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long memberId = 1 + random.nextLong(maxMemberId);
+        List<String> borrows = new ArrayList<>();
+        for (int i = 0, burst = 1 + random.nextInt(3); i < burst; i++) {
+            long bookId = 1 + random.nextLong(maxBookId);
+            HttpResponse<String> response = send("POST /api/borrowed-books/borrow", HttpRequest.newBuilder(
+                    URI.create(baseUrl + "/api/borrowed-books/borrow?bookId=" + bookId + "&memberId=" + memberId))
+                    .POST(HttpRequest.BodyPublishers.noBody()).build());
+            if (response != null && response.statusCode() == 201) {
+                response.headers().firstValue("Location").ifPresent(borrows::add);
+            }
+        }
+        for (String borrow : borrows) {
+            send("POST /api/borrowed-books/{id}/return", HttpRequest.newBuilder(URI.create(borrow + "/return"))
+                    .POST(HttpRequest.BodyPublishers.noBody()).build());
+        }
+    }
+
+    // A dashboard page load polls all of its widgets
+    private void dashboard() throws IOException, InterruptedException {
+        get("GET /api/dashboard/overview", "/api/dashboard/overview");
+        get("GET /api/dashboard/books/popular", "/api/dashboard/books/popular?window=30d");
+        get("GET /api/dashboard/members/top-borrowers", "/api/dashboard/members/top-borrowers?window=30d");
+        get("GET /api/dashboard/books/by-category", "/api/dashboard/books/by-category");
+    }
+
+    private void members() throws IOException, InterruptedException {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        get("GET /api/members", "/api/members?limit=50&after="
+                + CursorPage.encodeCursor(random.nextLong(maxMemberId)));
+        long memberId = 1 + random.nextLong(maxMemberId);
+        get("GET /api/members/{id}", "/api/members/" + memberId);
+        get("GET /api/borrowed-books/member/{id}", "/api/borrowed-books/member/" + memberId + "?current=true");
+    }
+
+    private void authorsAndCategories() throws IOException, InterruptedException {
+        get("GET /api/authors", "/api/authors?limit=50");
+        get("GET /api/categories", "/api/categories?limit=50");
+    }
+
+    private JsonNode getJson(String path) throws IOException, InterruptedException {
+        HttpResponse<String> response = client.send(
+                HttpRequest.newBuilder(URI.create(baseUrl + path)).GET().build(), HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() != 200) {
+            throw new IllegalStateException("GET " + path + " returned " + response.statusCode());
+        }
+        return objectMapper.readTree(response.body());
+    }
+
+    private JsonNode getJson(String endpoint, String path) throws IOException, InterruptedException {
+        HttpResponse<String> response = get(endpoint, path);
+        return response != null && response.statusCode() == 200 ? objectMapper.readTree(response.body()) : null;
+    }
+
+    private HttpResponse<String> get(String endpoint, String path) throws InterruptedException {
+        return send(endpoint, HttpRequest.newBuilder(URI.create(baseUrl + path)).GET().build());
+    }
+
+    // Sends the request and records its latency and outcome; I/O failures count as errors
+    private HttpResponse<String> send(String endpoint, HttpRequest request) throws InterruptedException {
+        long started = System.nanoTime();
+        HttpResponse<String> response = null;
+        try {
+            response = client.send(request, HttpResponse.BodyHandlers.ofString());
+        } catch (IOException ex) {
+            // recorded as an error below
+        }
+        if (measuring) {
+            recorders.computeIfAbsent(endpoint, e -> new LatencyRecorder())
+                    .record(System.nanoTime() - started, response == null ? -1 : response.statusCode());
+        }
+        return response;
+    }
+
+    private static Map<String, Integer> parseMix(String mix) {
+        Map<String, Integer> weights = new LinkedHashMap<>();
+        for (String entry : mix.split(",")) {
+            String[] parts = entry.trim().split(":");
+            weights.put(parts[0], parts.length > 1 ? Integer.parseInt(parts[1]) : 1);
+        }
+        return weights;
+    }
+
+    @FunctionalInterface
+    private interface Journey {
+        void run() throws IOException, InterruptedException;
+    }
+}
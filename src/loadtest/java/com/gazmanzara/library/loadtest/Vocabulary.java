@@ -0,0 +1,59 @@
+package com.gazmanzara.library.loadtest;
+
+import java.util.random.RandomGenerator;
+
+/**
+ * Word lists shared by the dataset generator and the load test, so that the
+ * search queries the load test sends match the generated titles.
+ */
+final class Vocabulary {
+
+    static final String[] TITLE_WORDS = {
+            "shadow", "river", "winter", "garden", "silent", "empire", "storm", "glass", "night", "city",
+            "forgotten", "crown", "letters", "mountain", "secret", "summer", "island", "iron", "last", "light",
+            "ocean", "house", "song", "fire", "stone", "wolf", "dream", "journey", "kingdom", "memory",
+            "war", "peace", "star", "road", "heart", "moon", "sea", "time", "blood", "silver",
+            "golden", "black", "white", "red", "lost", "hidden", "broken", "distant", "wild", "quiet",
+            "bridge", "tower", "forest", "desert", "library", "map", "clock", "mirror", "door", "window",
+            "daughter", "son", "king", "queen", "stranger", "witness", "hunter", "thief", "doctor", "teacher",
+            "murder", "revenge", "promise", "return", "escape", "voyage", "legacy", "season", "harvest", "bones",
+            "paper", "salt", "smoke", "thunder", "echo", "orchard", "harbor", "valley", "north", "south"
+    };
+
+    static final String[] FIRST_NAMES = {
+            "James", "Mary", "John", "Patricia", "Robert", "Jennifer", "Michael", "Linda", "William", "Elizabeth",
+            "David", "Barbara", "Richard", "Susan", "Joseph", "Jessica", "Thomas", "Sarah", "Charles", "Karen",
+            "Ana", "Luis", "Sofia", "Mateo", "Yuki", "Hiro", "Amara", "Kwame", "Ingrid", "Lars",
+            "Priya", "Arjun", "Fatima", "Omar", "Chen", "Mei", "Olga", "Ivan", "Zoe", "Noah"
+    };
+
+    static final String[] LAST_NAMES = {
+            "Smith", "Johnson", "Williams", "Brown", "Jones", "Garcia", "Miller", "Davis", "Rodriguez", "Martinez",
+            "Hernandez", "Lopez", "Gonzalez", "Wilson", "Anderson", "Thomas", "Taylor", "Moore", "Jackson", "Martin",
+            "Tanaka", "Sato", "Mensah", "Okafor", "Larsen", "Nilsson", "Patel", "Sharma", "Haddad", "Nasser",
+            "Wang", "Li", "Petrova", "Ivanov", "Müller", "Schmidt", "Rossi", "Bianchi", "Dubois", "Moreau"
+    };
+
+    static final String[] GENRES = {
+            "Fantasy", "Mystery", "Horror", "Science Fiction", "Romance", "Non-Fiction", "Adventure",
+            "Literary Fiction", "Historical Fiction", "Thriller", "Contemporary Fiction", "Classic Literature",
+            "Young Adult", "Biography", "Poetry", "Crime", "Humor", "Travel", "Philosophy", "Graphic Novel"
+    };
+
+    private Vocabulary() {
+    }
+
+    static String pick(String[] words, RandomGenerator random) {
+        return words[random.nextInt(words.length)];
+    }
+
+    static String title(RandomGenerator random) {
+        int length = 2 + random.nextInt(4);
+        StringBuilder title = new StringBuilder("The");
+        for (int i = 0; i < length; i++) {
+            String word = pick(TITLE_WORDS, random);
+            title.append(' ').append(Character.toUpperCase(word.charAt(0))).append(word, 1, word.length());
+        }
+        return title.toString();
+    }
+}
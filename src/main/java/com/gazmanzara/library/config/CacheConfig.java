@@ -0,0 +1,88 @@
+package com.gazmanzara.library.config;
+
+import com.github.benmanes.caffeine.jcache.configuration.CaffeineConfiguration;
+import com.github.benmanes.caffeine.jcache.spi.CaffeineCachingProvider;
+import org.hibernate.cache.jcache.ConfigSettings;
+import org.hibernate.cache.jcache.MissingCacheStrategy;
+import org.hibernate.cache.spi.RegionFactory;
+import org.hibernate.cfg.AvailableSettings;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.cache.CacheManager;
+import javax.cache.Caching;
+import javax.cache.spi.CachingProvider;
+import java.net.URI;
+import java.time.Duration;
+import java.util.OptionalLong;
+import java.util.UUID;
+
+/**
+ * Hibernate second-level cache for the small, read-mostly reference data:
+ * authors, categories and the categories of each book. Every region is a
+ * bounded Caffeine cache with its own eviction policy; Hibernate refuses to
+ * start if an entity names a region that is not configured here. Hits and
+ * misses are published per region through the Hibernate metrics.
+ *
+ * <p>Rows changed outside of Hibernate (plain JDBC) are not seen by the
+ * cache until their entries expire.
+ */
+@Configuration
+public class CacheConfig {
+
+    public static final String AUTHOR_REGION = "author";
+    public static final String CATEGORY_REGION = "category";
+    public static final String BOOK_CATEGORIES_REGION = "book-categories";
+
+    @Bean(destroyMethod = "close")
+    public CacheManager hibernateCacheManager(
+            @Value("${library.cache.author.maximum-size:20000}") long authorSize,
+            @Value("${library.cache.author.expire-after-access:PT1H}") Duration authorExpiry,
+            @Value("${library.cache.category.maximum-size:1000}") long categorySize,
+            @Value("${library.cache.category.expire-after-write:PT1H}") Duration categoryExpiry,
+            @Value("${library.cache.book-categories.maximum-size:100000}") long bookCategoriesSize,
+            @Value("${library.cache.book-categories.expire-after-access:PT30M}") Duration bookCategoriesExpiry,
+            @Value("${library.cache.query-results.maximum-size:10000}") long queryResultsSize,
+            @Value("${library.cache.query-results.expire-after-write:PT10M}") Duration queryResultsExpiry) {
+        // A manager of its own rather than the provider's shared default, whose regions would clash with those of
+        // another application context in the same JVM (the test context cache holds several)
+        CachingProvider provider = Caching.getCachingProvider(CaffeineCachingProvider.class.getName());
+        CacheManager cacheManager = provider.getCacheManager(
+                URI.create("library-" + UUID.randomUUID()), provider.getDefaultClassLoader());
+        // Authors are looked up one at a time across the whole catalog, so keep the recently used ones
+        cacheManager.createCache(AUTHOR_REGION, region(authorSize).setExpireAfterAccess(nanos(authorExpiry)));
+        // The category list is tiny and read by nearly every book
+        cacheManager.createCache(CATEGORY_REGION, region(categorySize).setExpireAfterWrite(nanos(categoryExpiry)));
+        cacheManager.createCache(BOOK_CATEGORIES_REGION,
+                region(bookCategoriesSize).setExpireAfterAccess(nanos(bookCategoriesExpiry)));
+        cacheManager.createCache(RegionFactory.DEFAULT_QUERY_RESULTS_REGION_UNQUALIFIED_NAME,
+                region(queryResultsSize).setExpireAfterWrite(nanos(queryResultsExpiry)));
+        // One entry per table; evicting them would let the query cache serve stale results
+        cacheManager.createCache(RegionFactory.DEFAULT_UPDATE_TIMESTAMPS_REGION_UNQUALIFIED_NAME,
+                new CaffeineConfiguration<>().setStoreByValue(false));
+        return cacheManager;
+    }
+
+    @Bean
+    public HibernatePropertiesCustomizer secondLevelCacheCustomizer(CacheManager hibernateCacheManager) {
+        return properties -> {
+            properties.put(AvailableSettings.USE_SECOND_LEVEL_CACHE, true);
+            properties.put(AvailableSettings.CACHE_REGION_FACTORY, "jcache");
+            properties.put(ConfigSettings.CACHE_MANAGER, hibernateCacheManager);
+            properties.put(ConfigSettings.MISSING_CACHE_STRATEGY, MissingCacheStrategy.FAIL.getExternalRepresentation());
+        };
+    }
+
+    // Hibernate keeps disassembled, immutable entries, so they can be stored by reference
+    private static CaffeineConfiguration<Object, Object> region(long maximumSize) {
+        return new CaffeineConfiguration<>()
+                .setStoreByValue(false)
+                .setMaximumSize(OptionalLong.of(maximumSize));
+    }
+
+    private static OptionalLong nanos(Duration duration) {
+        return OptionalLong.of(duration.toNanos());
+    }
+}
@@ -0,0 +1,111 @@
+package com.gazmanzara.library.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Sends read-only transactions to the read replicas listed in
+ * {@code library.replicas.urls}; everything else, including reads outside a
+ * transaction, stays on the primary configured under spring.datasource.
+ * Without replicas this configuration is skipped and Spring Boot sets up
+ * the single data source as usual.
+ * <p>
+ * The routing is done by a {@link LazyConnectionDataSourceProxy}: it fetches
+ * the physical connection on the first statement, by which time the
+ * transaction has marked it read-only, and takes it from the
+ * {@link ReplicaPool} if so.
+ */
+@Configuration
+@ConditionalOnProperty("library.replicas.urls")
+public class ReadReplicaConfig {
+
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource primaryDataSource(DataSourceProperties properties) {
+        HikariDataSource dataSource = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        dataSource.setPoolName("primary");
+        return dataSource;
+    }
+
+    @Bean
+    public ReplicaPool replicaPool(
+            HikariDataSource primaryDataSource,
+            DataSourceProperties properties,
+            MeterRegistry meterRegistry,
+            @Value("${library.replicas.urls}") List<String> urls,
+            @Value("${library.replicas.username:${spring.datasource.username}}") String username,
+            @Value("${library.replicas.password:${spring.datasource.password}}") String password,
+            @Value("${library.replicas.pool-size:10}") int poolSize,
+            @Value("${library.replicas.connection-timeout:PT1S}") Duration connectionTimeout,
+            @Value("${library.replicas.max-lag:PT5S}") Duration maxLag) {
+        List<HikariDataSource> replicas = new ArrayList<>();
+        for (String url : urls) {
+            HikariDataSource replica = properties.initializeDataSourceBuilder()
+                    .type(HikariDataSource.class)
+                    .url(url)
+                    .username(username)
+                    .password(password)
+                    .build();
+            replica.setPoolName("replica-" + (replicas.size() + 1));
+            replica.setMaximumPoolSize(poolSize);
+            // A replica that is down when a read needs it costs that read this much before it moves on
+            replica.setConnectionTimeout(connectionTimeout.toMillis());
+            // Start even if a replica is down; the health check brings it in once it answers
+            replica.setInitializationFailTimeout(-1);
+            replica.setReadOnly(true);
+            replica.setMetricRegistry(meterRegistry);
+            replicas.add(replica);
+        }
+        return new ReplicaPool(primaryDataSource, replicas, maxLag, meterRegistry);
+    }
+
+    @Bean
+    @Primary
+    public DataSource dataSource(HikariDataSource primaryDataSource, ReplicaPool replicaPool) {
+        LazyConnectionDataSourceProxy dataSource = new LazyConnectionDataSourceProxy(primaryDataSource);
+        dataSource.setReadOnlyDataSource(replicaPool);
+        return dataSource;
+    }
+
+    // Should exceed max-lag plus check-interval, the longest a replica can be behind and still get reads
+    @Bean
+    public ReadYourWritesFilter readYourWritesFilter(
+            @Value("${library.replicas.read-your-writes-window:PT10S}") Duration window) {
+        return new ReadYourWritesFilter(window);
+    }
+
+    // Replicas are optional: the application stays up on the primary alone, so their state is reported as details
+    @Bean
+    public HealthIndicator replicasHealthIndicator(ReplicaPool replicaPool) {
+        return () -> {
+            Map<String, Object> details = new LinkedHashMap<>();
+            for (ReplicaPool.Replica replica : replicaPool.getReplicas()) {
+                Map<String, Object> state = new LinkedHashMap<>();
+                state.put("url", replica.getUrl());
+                state.put("usable", replica.isUsable());
+                state.put("standby", replica.getStandby());
+                state.put("lagSeconds", Double.isNaN(replica.getLagSeconds()) ? null : replica.getLagSeconds());
+                state.put("error", replica.getError());
+                details.put(replica.getName(), state);
+            }
+            return Health.up().withDetails(details).build();
+        };
+    }
+}
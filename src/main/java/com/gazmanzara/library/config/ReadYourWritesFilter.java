@@ -0,0 +1,89 @@
+package com.gazmanzara.library.config;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.Cookie;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseCookie;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.time.Duration;
+
+/**
+ * Keeps a client on the primary for a while after it writes, so that the
+ * book it just borrowed, or the member it just created, is not missing from
+ * a lagging replica on the next read. Requests that can write, anything but
+ * GET, HEAD and OPTIONS, always run on the primary and set a short-lived
+ * cookie; requests carrying that cookie do too. The cookie is set before the
+ * write runs, since the response may be committed by the time it returns; a
+ * failed write pins the client for no longer than a successful one. Browsers
+ * treat http://localhost as secure, so the Secure cookie also works for local
+ * development.
+ * <p>
+ * The pin holds on the request thread only. Streaming exports write from an
+ * async thread and read from a replica regardless.
+ */
+public class ReadYourWritesFilter extends OncePerRequestFilter {
+
+    static final String COOKIE_NAME = "library-primary";
+
+    private static final ThreadLocal<Boolean> PINNED = new ThreadLocal<>();
+
+    private final Duration window;
+
+    public ReadYourWritesFilter(Duration window) {
+        this.window = window;
+    }
+
+    public static boolean isPinnedToPrimary() {
+        return Boolean.TRUE.equals(PINNED.get());
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !request.getRequestURI().startsWith("/api/");
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        boolean write = switch (request.getMethod()) {
+            case "GET", "HEAD", "OPTIONS" -> false;
+            default -> true;
+        };
+        if (write) {
+            response.addHeader(HttpHeaders.SET_COOKIE, ResponseCookie.from(COOKIE_NAME, "1")
+                    .path("/api")
+                    .maxAge(window)
+                    .httpOnly(true)
+                    // The SPA is served from another site and calls with credentials; browsers only store
+                    // and send a cookie across sites as SameSite=None, which in turn requires Secure
+                    .secure(true)
+                    .sameSite("None")
+                    .build()
+                    .toString());
+        }
+        PINNED.set(write || hasCookie(request));
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            PINNED.remove();
+        }
+    }
+
+    private static boolean hasCookie(HttpServletRequest request) {
+        Cookie[] cookies = request.getCookies();
+        if (cookies == null) {
+            return false;
+        }
+        for (Cookie cookie : cookies) {
+            if (COOKIE_NAME.equals(cookie.getName())) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
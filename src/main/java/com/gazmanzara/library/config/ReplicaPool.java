@@ -0,0 +1,185 @@
+package com.gazmanzara.library.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The read-only side of the routing data source: hands out connections to
+ * the read replicas in turn, skipping those that are down or lag the primary
+ * by more than the tolerance. Connections come from the primary instead when
+ * no replica qualifies or the request is pinned to it for read-your-writes
+ * (see {@link ReadYourWritesFilter}).
+ * <p>
+ * Lag is measured on the replica as the age of the last replayed transaction,
+ * or zero while it has replayed everything it received. A server that is not
+ * in recovery has no lag to measure and always counts as current, which lets
+ * two independent local databases stand in for a primary and a replica.
+ */
+public class ReplicaPool extends AbstractDataSource implements DisposableBean {
+
+    private static final Logger log = LoggerFactory.getLogger(ReplicaPool.class);
+
+    private static final String LAG_SQL = """
+            SELECT pg_is_in_recovery(),
+                   CASE WHEN NOT pg_is_in_recovery() OR pg_last_wal_receive_lsn() = pg_last_wal_replay_lsn() THEN 0
+                        ELSE EXTRACT(EPOCH FROM now() - pg_last_xact_replay_timestamp()) END
+            """;
+
+    /**
+     * One replica and the outcome of its last check. A replica starts out
+     * unused until its first check passes.
+     */
+    public static class Replica {
+
+        private final String name;
+        private final HikariDataSource dataSource;
+        private volatile boolean usable;
+        private volatile Boolean standby;
+        private volatile double lagSeconds = Double.NaN;
+        private volatile String error;
+
+        Replica(String name, HikariDataSource dataSource) {
+            this.name = name;
+            this.dataSource = dataSource;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getUrl() {
+            return dataSource.getJdbcUrl();
+        }
+
+        public boolean isUsable() {
+            return usable;
+        }
+
+        // Null until the replica has answered a check
+        public Boolean getStandby() {
+            return standby;
+        }
+
+        public double getLagSeconds() {
+            return lagSeconds;
+        }
+
+        public String getError() {
+            return error;
+        }
+    }
+
+    private final DataSource primary;
+    private final List<Replica> replicas;
+    private final double maxLagSeconds;
+    private final AtomicInteger next = new AtomicInteger();
+
+    public ReplicaPool(DataSource primary, List<HikariDataSource> replicaDataSources, Duration maxLag,
+                       MeterRegistry meterRegistry) {
+        this.primary = primary;
+        this.replicas = replicaDataSources.stream()
+                .map(dataSource -> new Replica(dataSource.getPoolName(), dataSource))
+                .toList();
+        this.maxLagSeconds = maxLag.toMillis() / 1000.0;
+        for (Replica replica : replicas) {
+            Gauge.builder("library.replica.lag", replica, Replica::getLagSeconds)
+                    .tag("replica", replica.name)
+                    .baseUnit("seconds")
+                    .description("Replication lag at the last check, NaN if the replica could not be reached")
+                    .register(meterRegistry);
+            Gauge.builder("library.replica.usable", replica, r -> r.usable ? 1 : 0)
+                    .tag("replica", replica.name)
+                    .description("Whether read-only transactions are routed to the replica")
+                    .register(meterRegistry);
+        }
+    }
+
+    public List<Replica> getReplicas() {
+        return replicas;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        if (!ReadYourWritesFilter.isPinnedToPrimary()) {
+            int start = Math.floorMod(next.getAndIncrement(), replicas.size());
+            for (int i = 0; i < replicas.size(); i++) {
+                Replica replica = replicas.get((start + i) % replicas.size());
+                if (!replica.usable) {
+                    continue;
+                }
+                try {
+                    return replica.dataSource.getConnection();
+                } catch (SQLException ex) {
+                    // Left out until a check passes again
+                    markFailed(replica, ex);
+                }
+            }
+        }
+        return primary.getConnection();
+    }
+
+    // The pools behind this one log in with their configured credentials, so the given ones are ignored
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return getConnection();
+    }
+
+    @Scheduled(fixedDelayString = "${library.replicas.check-interval:PT2S}")
+    public void checkReplicas() {
+        for (Replica replica : replicas) {
+            try (Connection connection = replica.dataSource.getConnection();
+                 Statement statement = connection.createStatement()) {
+                statement.setQueryTimeout(5);
+                try (ResultSet result = statement.executeQuery(LAG_SQL)) {
+                    result.next();
+                    boolean standby = result.getBoolean(1);
+                    double lag = result.getDouble(2);
+                    boolean lagKnown = !result.wasNull();
+                    boolean usable = lagKnown && lag <= maxLagSeconds;
+                    if (usable != replica.usable) {
+                        log.info("Replica {} {} (lag {}s, tolerance {}s)", replica.name,
+                                usable ? "in use" : "lagging, reads go elsewhere", lagKnown ? lag : "unknown", maxLagSeconds);
+                    }
+                    if (!standby && !Boolean.FALSE.equals(replica.standby)) {
+                        log.warn("Replica {} is not in recovery; its lag cannot be measured", replica.name);
+                    }
+                    replica.standby = standby;
+                    replica.lagSeconds = lagKnown ? lag : Double.NaN;
+                    replica.error = null;
+                    replica.usable = usable;
+                }
+            } catch (SQLException ex) {
+                markFailed(replica, ex);
+            }
+        }
+    }
+
+    private void markFailed(Replica replica, SQLException ex) {
+        if (replica.usable || replica.error == null) {
+            log.warn("Replica {} unavailable, reads go elsewhere: {}", replica.name, ex.getMessage());
+        }
+        replica.usable = false;
+        replica.lagSeconds = Double.NaN;
+        replica.error = ex.getMessage();
+    }
+
+    @Override
+    public void destroy() {
+        replicas.forEach(replica -> replica.dataSource.close());
+    }
+}
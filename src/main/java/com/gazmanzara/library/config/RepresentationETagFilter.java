@@ -0,0 +1,148 @@
+package com.gazmanzara.library.config;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletRequestWrapper;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpServletResponseWrapper;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+
+/**
+ * Keeps ETags distinct per response encoding. The controllers derive ETags
+ * from ids and versions only, so a JSON and a CBOR body of the same resource
+ * would otherwise share a strong validator. For requests that negotiate a
+ * binary encoding, the encoding is appended to the ETag on the way out and
+ * stripped from If-None-Match on the way in; validators of another encoding
+ * never match. Every API response also carries {@code Vary: Accept}.
+ */
+@Component
+public class RepresentationETagFilter extends OncePerRequestFilter {
+
+    private static final MediaType APPLICATION_SMILE = new MediaType("application", "x-jackson-smile");
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !request.getRequestURI().startsWith("/api/");
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        response.addHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT);
+        String encoding = binaryEncoding(request.getHeader(HttpHeaders.ACCEPT));
+        if (encoding == null) {
+            chain.doFilter(request, response);
+            return;
+        }
+        String suffix = "-" + encoding + "\"";
+        chain.doFilter(new IfNoneMatchRequest(request, suffix), new ETagResponse(response, suffix));
+    }
+
+    /**
+     * The binary encoding the Accept header prefers, or null when JSON would
+     * be chosen; JSON is preferred on ties, as in the converter order.
+     */
+    static String binaryEncoding(String accept) {
+        if (accept == null || accept.isBlank()) {
+            return null;
+        }
+        List<MediaType> accepted;
+        try {
+            accepted = MediaType.parseMediaTypes(accept);
+        } catch (InvalidMediaTypeException ex) {
+            return null;
+        }
+        MimeTypeUtils.sortBySpecificity(accepted);
+        for (MediaType type : accepted) {
+            if (type.getQualityValue() == 0) {
+                continue;
+            }
+            if (type.isCompatibleWith(MediaType.APPLICATION_JSON)) {
+                return null;
+            }
+            if (type.isCompatibleWith(MediaType.APPLICATION_CBOR)) {
+                return "cbor";
+            }
+            if (type.isCompatibleWith(APPLICATION_SMILE)) {
+                return "smile";
+            }
+        }
+        return null;
+    }
+
+    private static class IfNoneMatchRequest extends HttpServletRequestWrapper {
+
+        private final String suffix;
+
+        IfNoneMatchRequest(HttpServletRequest request, String suffix) {
+            super(request);
+            this.suffix = suffix;
+        }
+
+        @Override
+        public String getHeader(String name) {
+            if (!HttpHeaders.IF_NONE_MATCH.equalsIgnoreCase(name)) {
+                return super.getHeader(name);
+            }
+            List<String> tags = ownTags();
+            return tags.isEmpty() ? null : String.join(", ", tags);
+        }
+
+        @Override
+        public Enumeration<String> getHeaders(String name) {
+            if (!HttpHeaders.IF_NONE_MATCH.equalsIgnoreCase(name)) {
+                return super.getHeaders(name);
+            }
+            return Collections.enumeration(ownTags());
+        }
+
+        // The request's validators for this encoding, as the controllers issued them
+        private List<String> ownTags() {
+            return Collections.list(super.getHeaders(HttpHeaders.IF_NONE_MATCH)).stream()
+                    .flatMap(header -> Arrays.stream(header.split(",")))
+                    .map(String::trim)
+                    .filter(tag -> tag.equals("*") || tag.endsWith(suffix))
+                    .map(tag -> tag.equals("*") ? tag : tag.substring(0, tag.length() - suffix.length()) + "\"")
+                    .toList();
+        }
+    }
+
+    private static class ETagResponse extends HttpServletResponseWrapper {
+
+        private final String suffix;
+
+        ETagResponse(HttpServletResponse response, String suffix) {
+            super(response);
+            this.suffix = suffix;
+        }
+
+        @Override
+        public void setHeader(String name, String value) {
+            super.setHeader(name, tagged(name, value));
+        }
+
+        @Override
+        public void addHeader(String name, String value) {
+            super.addHeader(name, tagged(name, value));
+        }
+
+        private String tagged(String name, String value) {
+            if (!HttpHeaders.ETAG.equalsIgnoreCase(name) || value == null || !value.endsWith("\"")) {
+                return value;
+            }
+            return value.substring(0, value.length() - 1) + suffix;
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.gazmanzara.library.config;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.async.CallableProcessingInterceptor;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+
+/**
+ * Records how much database work each API request did: SQL statements
+ * prepared, rows returned by queries and entities loaded. The counts are
+ * published as histograms tagged with the handler method and URI pattern,
+ * so a latency spike on an endpoint can be matched with the queries behind
+ * it.
+ * <p>
+ * A request that goes async, such as a streaming export, is recorded once
+ * its async dispatch completes, and includes the work done on the async
+ * thread through {@link AsyncCounting}.
+ */
+@Component
+public class RequestMetricsFilter extends OncePerRequestFilter {
+
+    private static final String COUNTS_ATTRIBUTE = RequestMetricsFilter.class.getName() + ".counts";
+
+    private final MeterRegistry meterRegistry;
+
+    public RequestMetricsFilter(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !request.getRequestURI().startsWith("/api/");
+    }
+
+    // The async dispatch is where a request that went async finishes, so it is the one that records
+    @Override
+    protected boolean shouldNotFilterAsyncDispatch() {
+        return false;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        RequestQueryStatistics.Counts counts = isAsyncDispatch(request)
+                && request.getAttribute(COUNTS_ATTRIBUTE) instanceof RequestQueryStatistics.Counts started
+                ? RequestQueryStatistics.resume(started)
+                : RequestQueryStatistics.begin();
+        request.setAttribute(COUNTS_ATTRIBUTE, counts);
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            RequestQueryStatistics.end();
+            if (!isAsyncStarted(request)) {
+                String handler = handlerName(request);
+                String uri = uriPattern(request);
+                record("library.request.sql.statements", "SQL statements prepared per request", handler, uri, counts.statements());
+                record("library.request.sql.rows", "Rows returned by queries per request", handler, uri, counts.rows());
+                record("library.request.entities.loaded", "Entities loaded per request", handler, uri, counts.entities());
+            }
+        }
+    }
+
+    /**
+     * Counts the work of a {@code Callable} or {@code StreamingResponseBody},
+     * which runs on a thread of the MVC async executor, towards the request
+     * that returned it.
+     */
+    public static class AsyncCounting implements CallableProcessingInterceptor {
+
+        @Override
+        public <T> void preProcess(NativeWebRequest request, Callable<T> task) {
+            if (request.getAttribute(COUNTS_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST)
+                    instanceof RequestQueryStatistics.Counts counts) {
+                RequestQueryStatistics.resume(counts);
+            }
+        }
+
+        @Override
+        public <T> void postProcess(NativeWebRequest request, Callable<T> task, Object concurrentResult) {
+            RequestQueryStatistics.end();
+        }
+    }
+
+    private void record(String name, String description, String handler, String uri, long value) {
+        DistributionSummary.builder(name)
+                .description(description)
+                .tag("handler", handler)
+                .tag("uri", uri)
+                .publishPercentileHistogram()
+                .register(meterRegistry)
+                .record(value);
+    }
+
+    /**
+     * Controller and method that served the request, such as
+     * {@code BookController.searchBooks}, or {@code none} when no handler
+     * method matched.
+     */
+    static String handlerName(HttpServletRequest request) {
+        return request.getAttribute(HandlerMapping.BEST_MATCHING_HANDLER_ATTRIBUTE) instanceof HandlerMethod method
+                ? method.getBeanType().getSimpleName() + "." + method.getMethod().getName()
+                : "none";
+    }
+
+    // The mapped pattern keeps the tag's cardinality bounded; raw paths carry ids
+    private static String uriPattern(HttpServletRequest request) {
+        return request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE) instanceof String pattern
+                ? pattern
+                : "UNKNOWN";
+    }
+}
@@ -0,0 +1,108 @@
+package com.gazmanzara.library.config;
+
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.stat.internal.StatisticsImpl;
+
+/**
+ * Hibernate statistics that additionally attribute prepared statements, rows
+ * returned by queries and loaded entities to the request being served on the
+ * current thread. The global counters keep working as before; the
+ * per-request counts are picked up by {@link RequestMetricsFilter}.
+ */
+public class RequestQueryStatistics extends StatisticsImpl {
+
+    private static final ThreadLocal<Counts> CURRENT = new ThreadLocal<>();
+
+    public RequestQueryStatistics(SessionFactoryImplementor sessionFactory) {
+        super(sessionFactory);
+    }
+
+    /**
+     * Starts counting for the current thread and returns the counts, which
+     * keep growing until {@link #end()} is called.
+     */
+    public static Counts begin() {
+        Counts counts = new Counts();
+        CURRENT.set(counts);
+        return counts;
+    }
+
+    /**
+     * Carries counts started by {@link #begin()} over to the current thread,
+     * for work the request hands to another thread or to a later dispatch.
+     */
+    public static Counts resume(Counts counts) {
+        CURRENT.set(counts);
+        return counts;
+    }
+
+    public static void end() {
+        CURRENT.remove();
+    }
+
+    @Override
+    public void prepareStatement() {
+        super.prepareStatement();
+        Counts counts = CURRENT.get();
+        if (counts != null) {
+            counts.statements++;
+        }
+    }
+
+    @Override
+    public void queryExecuted(String hql, int rows, long time) {
+        super.queryExecuted(hql, rows, time);
+        Counts counts = CURRENT.get();
+        if (counts != null) {
+            counts.rows += rows;
+        }
+    }
+
+    /**
+     * Counts a row read through a {@code Stream} or scroll, for which
+     * Hibernate reports the statement but never a query execution.
+     */
+    public static void rowStreamed() {
+        Counts counts = CURRENT.get();
+        if (counts != null) {
+            counts.rows++;
+        }
+    }
+
+    @Override
+    public void loadEntity(String entityName) {
+        super.loadEntity(entityName);
+        Counts counts = CURRENT.get();
+        if (counts != null) {
+            counts.entities++;
+        }
+    }
+
+    @Override
+    public void fetchEntity(String entityName) {
+        super.fetchEntity(entityName);
+        Counts counts = CURRENT.get();
+        if (counts != null) {
+            counts.entities++;
+        }
+    }
+
+    // Only touched by one thread at a time: the one serving the request, or the async thread it handed over to
+    public static class Counts {
+        private long statements;
+        private long rows;
+        private long entities;
+
+        public long statements() {
+            return statements;
+        }
+
+        public long rows() {
+            return rows;
+        }
+
+        public long entities() {
+            return entities;
+        }
+    }
+}
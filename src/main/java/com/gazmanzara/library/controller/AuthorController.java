@@ -1,13 +1,21 @@
 package com.gazmanzara.library.controller;
 
+import com.gazmanzara.library.dto.CursorPage;
+import com.gazmanzara.library.dto.ETag;
 import com.gazmanzara.library.model.Author;
 import com.gazmanzara.library.repository.AuthorRepository;
 import com.gazmanzara.library.exception.ResourceNotFoundException;
 import com.gazmanzara.library.exception.ResourceAlreadyExistsException;
+import com.gazmanzara.library.service.BookRemovalService;
+import com.gazmanzara.library.service.BookSearchIndex;
+import com.gazmanzara.library.service.SuggestIndex;
 
 import jakarta.validation.Valid;
+import org.springframework.data.domain.Limit;
 import org.springframework.http.ResponseEntity;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
 import java.net.URI;
@@ -18,17 +26,37 @@ import java.util.List;
 public class AuthorController {
 
     private final AuthorRepository authorRepository;
+    private final BookSearchIndex searchIndex;
+    private final SuggestIndex suggestIndex;
+    private final BookRemovalService bookRemovalService;
 
-    public AuthorController(AuthorRepository authorRepository) {
+    public AuthorController(AuthorRepository authorRepository, BookSearchIndex searchIndex,
+                            SuggestIndex suggestIndex, BookRemovalService bookRemovalService) {
         this.authorRepository = authorRepository;
+        this.searchIndex = searchIndex;
+        this.suggestIndex = suggestIndex;
+        this.bookRemovalService = bookRemovalService;
     }
 
     @GetMapping
-    public ResponseEntity<List<Author>> getAllAuthors() {
-        return ResponseEntity.ok(authorRepository.findAll());
+    @Transactional(readOnly = true)
+    public ResponseEntity<CursorPage<Author>> getAllAuthors(
+            @RequestParam(required = false) String after,
+            @RequestParam(defaultValue = "50") int limit,
+            WebRequest request) {
+        int pageSize = CursorPage.checkLimit(limit);
+        List<Author> rows = authorRepository.findByIdGreaterThanOrderByIdAsc(
+                CursorPage.decodeCursor(after), Limit.of(pageSize + 1));
+        ETag etag = ETag.of("authors").add(pageSize);
+        rows.forEach(row -> etag.add(row.getId()).add(row.getVersion()));
+        if (request.checkNotModified(etag.build())) {
+            return null;
+        }
+        return ResponseEntity.ok(CursorPage.of(rows, pageSize, Author::getId));
     }
 
     @GetMapping("/search")
+    @Transactional(readOnly = true)
     public ResponseEntity<List<Author>> searchAuthors(@RequestParam String name) {
         return ResponseEntity.ok(authorRepository.findByNameContainingIgnoreCase(name));
     }
@@ -40,6 +68,7 @@ public class AuthorController {
         }
         
         Author savedAuthor = authorRepository.save(author);
+        suggestIndex.authorSaved(savedAuthor.getId(), savedAuthor.getName());
         
         URI location = ServletUriComponentsBuilder.fromCurrentRequest()
                 .path("/{id}")
@@ -50,22 +79,32 @@ public class AuthorController {
     }
 
     @GetMapping("/{id}")
-    public ResponseEntity<Author> getAuthorById(@PathVariable Long id) {
+    @Transactional(readOnly = true)
+    public ResponseEntity<Author> getAuthorById(@PathVariable Long id, WebRequest request) {
         Author author = authorRepository.findById(id)
                 .orElseThrow(() -> new ResourceNotFoundException("Author", "id", id));
+        if (request.checkNotModified(ETag.of("author").add(id).add(author.getVersion()).build())) {
+            return null;
+        }
         return ResponseEntity.ok(author);
     }
 
     @DeleteMapping("/{id}")
+    @Transactional
     public ResponseEntity<Void> deleteAuthor(@PathVariable Long id) {
         if (!authorRepository.existsById(id)) {
             throw new ResourceNotFoundException("Author", "id", id);
         }
+        // The books go the way a single book delete does, archived borrows and counters included
+        bookRemovalService.removeBooksOfAuthor(id);
         authorRepository.deleteById(id);
+        searchIndex.authorRemoved(id);
+        suggestIndex.authorRemoved(id);
         return ResponseEntity.ok().build();
     }
 
     @PutMapping("/{id}")
+    @Transactional
     public ResponseEntity<Author> updateAuthor(@PathVariable Long id, @Valid @RequestBody Author authorRequest) {
         Author author = authorRepository.findById(id)
                 .orElseThrow(() -> new ResourceNotFoundException("Author", "id", id));
@@ -75,11 +114,17 @@ public class AuthorController {
             throw new ResourceAlreadyExistsException("Author", "name", authorRequest.getName());
         }
 
+        // Books are indexed under the author's name, so a rename re-indexes them
+        if (!author.getName().equals(authorRequest.getName())) {
+            searchIndex.authorRenamed(id, authorRequest.getName());
+        }
+
         // Update author properties
         author.setName(authorRequest.getName());
         author.setBiography(authorRequest.getBiography());
 
         Author updatedAuthor = authorRepository.save(author);
+        suggestIndex.authorSaved(id, updatedAuthor.getName());
         return ResponseEntity.ok(updatedAuthor);
     }
 }
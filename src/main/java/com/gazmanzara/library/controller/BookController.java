@@ -1,24 +1,42 @@
 package com.gazmanzara.library.controller;
 
+import com.gazmanzara.library.dto.BookAvailabilityDTO;
 import com.gazmanzara.library.dto.BookDTO;
+import com.gazmanzara.library.dto.BookImportReport;
+import com.gazmanzara.library.dto.CursorPage;
+import com.gazmanzara.library.dto.ETag;
+import com.gazmanzara.library.dto.Fieldset;
 import com.gazmanzara.library.model.Book;
 import com.gazmanzara.library.model.Author;
 import com.gazmanzara.library.model.Category;
 import com.gazmanzara.library.repository.BookRepository;
 import com.gazmanzara.library.repository.AuthorRepository;
 import com.gazmanzara.library.repository.CategoryRepository;
-import com.gazmanzara.library.repository.BorrowedBookRepository;
+import com.gazmanzara.library.exception.BadRequestException;
 import com.gazmanzara.library.exception.ResourceNotFoundException;
 import com.gazmanzara.library.exception.ResourceAlreadyExistsException;
+import com.gazmanzara.library.service.BookAvailabilityIndex;
+import com.gazmanzara.library.service.BookImportService;
+import com.gazmanzara.library.service.BookReadService;
+import com.gazmanzara.library.service.BookRemovalService;
+import com.gazmanzara.library.service.BookSearchIndex;
+import com.gazmanzara.library.service.ExportService;
+import com.gazmanzara.library.service.LibraryStatisticsService;
+import com.gazmanzara.library.service.SuggestIndex;
 
 import jakarta.validation.Valid;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.NotEmpty;
 import jakarta.validation.constraints.NotNull;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
+import java.io.InputStream;
 import java.net.URI;
 import java.util.*;
 import java.util.stream.Collectors;
@@ -27,56 +45,134 @@ import java.util.stream.Collectors;
 @RequestMapping("/api/books")
 public class BookController {
 
+    private static final int MAX_AVAILABILITY_LOOKUPS = 1000;
+
     private final BookRepository bookRepository;
     private final AuthorRepository authorRepository;
     private final CategoryRepository categoryRepository;
+    private final LibraryStatisticsService statisticsService;
+    private final ExportService exportService;
+    private final BookAvailabilityIndex availabilityIndex;
+    private final BookSearchIndex searchIndex;
+    private final SuggestIndex suggestIndex;
+    private final BookReadService bookReadService;
+    private final BookImportService bookImportService;
+    private final BookRemovalService bookRemovalService;
 
     public BookController(
             BookRepository bookRepository,
             AuthorRepository authorRepository,
             CategoryRepository categoryRepository,
-            BorrowedBookRepository borrowedBookRepository) {
+            LibraryStatisticsService statisticsService,
+            ExportService exportService,
+            BookAvailabilityIndex availabilityIndex,
+            BookSearchIndex searchIndex,
+            SuggestIndex suggestIndex,
+            BookReadService bookReadService,
+            BookImportService bookImportService,
+            BookRemovalService bookRemovalService) {
         this.bookRepository = bookRepository;
         this.authorRepository = authorRepository;
         this.categoryRepository = categoryRepository;
+        this.statisticsService = statisticsService;
+        this.exportService = exportService;
+        this.availabilityIndex = availabilityIndex;
+        this.searchIndex = searchIndex;
+        this.suggestIndex = suggestIndex;
+        this.bookReadService = bookReadService;
+        this.bookImportService = bookImportService;
+        this.bookRemovalService = bookRemovalService;
     }
 
+    // ?fields=id,title,... returns only those fields, and reads only the columns behind them
     @GetMapping
-    public ResponseEntity<List<BookDTO>> getAllBooks() {
-        List<Book> books = bookRepository.findAll();
-        List<BookDTO> result = books.stream().map(BookDTO::new).toList();
-        return ResponseEntity.ok(result);
+    @Transactional(readOnly = true)
+    public ResponseEntity<CursorPage<?>> getAllBooks(
+            @RequestParam(required = false) String after,
+            @RequestParam(defaultValue = "50") int limit,
+            @RequestParam(required = false) String fields,
+            WebRequest request) {
+        int pageSize = CursorPage.checkLimit(limit);
+        long afterId = CursorPage.decodeCursor(after);
+        Fieldset fieldset = Fieldset.parse(fields, BookReadService.FIELDS);
+        String etag = bookReadService.pageETag(afterId, pageSize, fieldset);
+        if (etag != null && request.checkNotModified(etag)) {
+            return null;
+        }
+        return ResponseEntity.ok(fieldset != null
+                ? bookReadService.page(afterId, pageSize, fieldset)
+                : bookReadService.page(afterId, pageSize));
+    }
+
+    @GetMapping(value = "/export", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> exportBooks() {
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(exportService::exportBooks);
     }
 
     @GetMapping("/search")
-    public ResponseEntity<List<Book>> searchBooks(
+    @Transactional(readOnly = true)
+    public ResponseEntity<List<?>> searchBooks(
+            @RequestParam(required = false) String q,
             @RequestParam(required = false) String title,
             @RequestParam(required = false) String isbn,
             @RequestParam(required = false) Long authorId,
-            @RequestParam(required = false) Integer year) {
-
+            @RequestParam(required = false) String author,
+            @RequestParam(required = false) String category,
+            @RequestParam(required = false) Long categoryId,
+            @RequestParam(required = false) Integer year,
+            @RequestParam(defaultValue = "50") int limit,
+            @RequestParam(required = false) String fields,
+            WebRequest request) {
+
+        int maxResults = CursorPage.checkLimit(limit);
+        Fieldset fieldset = Fieldset.parse(fields, BookReadService.FIELDS);
+        boolean hasCriteria = q != null || title != null || authorId != null || author != null
+                || category != null || categoryId != null || year != null;
+
+        List<BookDTO> books;
         if (isbn != null) {
-            return bookRepository.findByIsbn(isbn)
-                    .map(book -> ResponseEntity.ok(List.of(book)))
-                    .orElse(ResponseEntity.ok(List.of()));
+            books = bookReadService.findByIsbn(isbn);
+        } else if (!hasCriteria) {
+            if (fieldset != null) {
+                return ResponseEntity.ok(bookReadService.page(0L, maxResults, fieldset).getItems());
+            }
+            books = bookReadService.page(0L, maxResults).getItems();
+        } else if (searchIndex.isLoaded()) {
+            BookSearchIndex.Query query = new BookSearchIndex.Query(q, title, author, authorId, category, categoryId, year);
+            List<Long> ids = searchIndex.search(query, maxResults);
+            String etag = bookReadService.etagOf(ids, fieldset);
+            if (etag != null && request.checkNotModified(etag)) {
+                return null;
+            }
+            if (fieldset != null) {
+                return ResponseEntity.ok(bookReadService.findAllInOrder(ids, fieldset));
+            }
+            books = bookReadService.findAllInOrder(ids);
+        } else {
+            // The search index is still loading; fall back to the single-criterion queries
+            String text = title != null ? title : q;
+            if (text != null) {
+                books = bookReadService.findByTitle(text, maxResults);
+            } else if (authorId != null) {
+                books = bookReadService.findByAuthorId(authorId, maxResults);
+            } else if (year != null) {
+                books = bookReadService.findByPublicationYear(year, maxResults);
+            } else {
+                books = List.of();
+            }
         }
 
-        if (title != null) {
-            return ResponseEntity.ok(bookRepository.findByTitleContainingIgnoreCase(title));
+        // The ISBN lookup and the fallback queries are narrowed by re-reading their few rows
+        if (fieldset != null) {
+            return ResponseEntity.ok(bookReadService.findAllInOrder(books.stream().map(book -> book.id).toList(), fieldset));
         }
-
-        if (authorId != null) {
-            return ResponseEntity.ok(bookRepository.findByAuthorId(authorId));
-        }
-
-        if (year != null) {
-            return ResponseEntity.ok(bookRepository.findByPublicationYear(year));
-        }
-
-        return ResponseEntity.ok(bookRepository.findAll());
+        return ResponseEntity.ok(books);
     }
 
     @PostMapping
+    @Transactional
     public ResponseEntity<Book> createBook(@Valid @RequestBody BookRequest bookRequest) {
         // Check if ISBN already exists
         if (bookRepository.existsByIsbn(bookRequest.getIsbn())) {
@@ -88,10 +184,7 @@ public class BookController {
                 .orElseThrow(() -> new ResourceNotFoundException("Author", "id", bookRequest.getAuthorId()));
 
         // Check if all categories exist
-        List<Category> categories = categoryRepository.findAllById(bookRequest.getCategoryIds());
-        if (categories.size() != bookRequest.getCategoryIds().size()) {
-            throw new ResourceNotFoundException("Category", "ids", bookRequest.getCategoryIds());
-        }
+        List<Category> categories = findCategories(bookRequest.getCategoryIds());
 
         Book book = new Book(
                 bookRequest.getTitle(),
@@ -103,6 +196,11 @@ public class BookController {
         book.setCategories(new HashSet<>(categories));
 
         Book savedBook = bookRepository.save(book);
+        statisticsService.recordBookAdded();
+        availabilityIndex.bookAdded(savedBook.getId());
+        searchIndex.index(savedBook);
+        suggestIndex.bookSaved(savedBook);
+        savedBook.resolveAvailability(null);
 
         URI location = ServletUriComponentsBuilder.fromCurrentRequest()
                 .path("/{id}")
@@ -112,19 +210,44 @@ public class BookController {
         return ResponseEntity.created(location).body(savedBook);
     }
 
+    // Bulk import; the body is read as it streams in, see BookImportService for the columns
+    @PostMapping(value = "/import", consumes = "text/csv")
+    public ResponseEntity<BookImportReport> importBooksCsv(
+            InputStream body,
+            @RequestParam(defaultValue = "true") boolean createAuthors,
+            @RequestParam(defaultValue = "false") boolean createCategories) {
+        return ResponseEntity.ok(bookImportService.importCsv(body,
+                new BookImportService.Options(createAuthors, createCategories)));
+    }
+
+    @PostMapping(value = "/import", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<BookImportReport> importBooksJson(
+            InputStream body,
+            @RequestParam(defaultValue = "true") boolean createAuthors,
+            @RequestParam(defaultValue = "false") boolean createCategories) {
+        return ResponseEntity.ok(bookImportService.importJson(body,
+                new BookImportService.Options(createAuthors, createCategories)));
+    }
+
     @GetMapping("/{id}")
-    public ResponseEntity<Book> getBook(@PathVariable Long id) {
+    @Transactional(readOnly = true)
+    public ResponseEntity<Book> getBook(@PathVariable Long id, WebRequest request) {
         Book book = bookRepository.findById(id)
                 .orElseThrow(() -> new ResourceNotFoundException("Book", "id", id));
+        availabilityIndex.apply(book);
+        if (request.checkNotModified(etagOf(book))) {
+            return null;
+        }
         return ResponseEntity.ok(book);
     }
 
     @DeleteMapping("/{id}")
+    @Transactional
     public ResponseEntity<Void> deleteBook(@PathVariable Long id) {
         if (!bookRepository.existsById(id)) {
             throw new ResourceNotFoundException("Book", "id", id);
         }
-        bookRepository.deleteById(id);
+        bookRemovalService.removeBook(id);
         return ResponseEntity.ok().build();
     }
 
@@ -143,10 +266,7 @@ public class BookController {
                 .orElseThrow(() -> new ResourceNotFoundException("Author", "id", bookRequest.getAuthorId()));
 
         // Check if all categories exist
-        List<Category> categories = categoryRepository.findAllById(bookRequest.getCategoryIds());
-        if (categories.size() != bookRequest.getCategoryIds().size()) {
-            throw new ResourceNotFoundException("Category", "ids", bookRequest.getCategoryIds());
-        }
+        List<Category> categories = findCategories(bookRequest.getCategoryIds());
 
         // Update book properties
         book.setTitle(bookRequest.getTitle());
@@ -158,12 +278,112 @@ public class BookController {
         book.setCategories(new HashSet<>(categories));
 
         Book updatedBook = bookRepository.save(book);
+        searchIndex.index(updatedBook);
+        suggestIndex.bookSaved(updatedBook);
+        availabilityIndex.apply(updatedBook);
         return ResponseEntity.ok(updatedBook);
     }
 
     @GetMapping("/active")
-    public ResponseEntity<List<Book>> getActiveBooks() {
-        return ResponseEntity.ok(bookRepository.findActiveBooks());
+    @Transactional(readOnly = true)
+    public ResponseEntity<List<BookDTO>> getActiveBooks() {
+        return ResponseEntity.ok(bookReadService.findActive());
+    }
+
+    @PostMapping("/availability")
+    public ResponseEntity<List<BookAvailabilityDTO>> getAvailability(@RequestBody AvailabilityRequest request) {
+        List<Long> ids = request.getIds() != null ? request.getIds() : List.of();
+        List<String> isbns = request.getIsbns() != null ? request.getIsbns() : List.of();
+        if (ids.size() + isbns.size() > MAX_AVAILABILITY_LOOKUPS) {
+            throw new BadRequestException("At most " + MAX_AVAILABILITY_LOOKUPS + " ids and ISBNs per request");
+        }
+
+        // ISBNs are resolved to ids in one query; availability still comes from the index
+        Map<String, Long> idsByIsbn = isbns.isEmpty() ? Map.of() : bookRepository.findIdsByIsbnIn(isbns).stream()
+                .collect(Collectors.toMap(BookRepository.BookIsbn::getIsbn, BookRepository.BookIsbn::getId));
+
+        // Until the index has loaded, the same answer is read from the tables in one query: each book that
+        // exists, mapped to its current borrow id or null
+        Map<Long, Long> unindexed = null;
+        if (!availabilityIndex.isLoaded()) {
+            Set<Long> lookups = ids.stream().filter(Objects::nonNull).collect(Collectors.toCollection(HashSet::new));
+            lookups.addAll(idsByIsbn.values());
+            unindexed = new HashMap<>();
+            if (!lookups.isEmpty()) {
+                for (BookRepository.BookAvailability row : bookRepository.findAvailabilityByIdIn(lookups)) {
+                    unindexed.put(row.getId(), row.getCurrentBorrowId());
+                }
+            }
+        }
+
+        List<BookAvailabilityDTO> result = new ArrayList<>(ids.size() + isbns.size());
+        for (Long id : ids) {
+            result.add(availabilityOf(id, null, unindexed));
+        }
+        for (String isbn : isbns) {
+            Long id = idsByIsbn.get(isbn);
+            result.add(id != null ? availabilityOf(id, isbn, unindexed) : new BookAvailabilityDTO(null, isbn, false, null));
+        }
+
+        return ResponseEntity.ok(result);
+    }
+
+    private BookAvailabilityDTO availabilityOf(Long id, String isbn, Map<Long, Long> unindexed) {
+        if (id == null || id <= 0 || id > Integer.MAX_VALUE) {
+            return new BookAvailabilityDTO(id, isbn, false, null);
+        }
+        if (unindexed != null) {
+            return unindexed.containsKey(id) ? new BookAvailabilityDTO(id, isbn, true, unindexed.get(id))
+                    : new BookAvailabilityDTO(id, isbn, false, null);
+        }
+        if (!availabilityIndex.exists(id)) {
+            return new BookAvailabilityDTO(id, isbn, false, null);
+        }
+        return new BookAvailabilityDTO(id, isbn, true, availabilityIndex.currentBorrowId(id));
+    }
+
+    // Everything the serialized book depends on; author and categories come from the second-level cache
+    private static String etagOf(Book book) {
+        ETag etag = ETag.of("book").add(book.getId()).add(book.getVersion());
+        if (book.getAuthor() != null) {
+            etag.add(book.getAuthor().getId()).add(book.getAuthor().getVersion());
+        }
+        book.getCategories().stream()
+                .sorted(Comparator.comparing(Category::getId))
+                .forEach(category -> etag.add(category.getId()).add(category.getVersion()));
+        return etag.add(book.getCurrentBorrowId()).build();
+    }
+
+    // Loaded one by one rather than with an IN query, so they come from the second-level cache
+    private List<Category> findCategories(List<Long> categoryIds) {
+        List<Category> categories = new ArrayList<>();
+        for (Long categoryId : new LinkedHashSet<>(categoryIds)) {
+            categories.add(categoryRepository.findById(categoryId)
+                    .orElseThrow(() -> new ResourceNotFoundException("Category", "ids", categoryIds)));
+        }
+        return categories;
+    }
+
+    public static class AvailabilityRequest {
+        private List<Long> ids;
+
+        private List<String> isbns;
+
+        public List<Long> getIds() {
+            return ids;
+        }
+
+        public void setIds(List<Long> ids) {
+            this.ids = ids;
+        }
+
+        public List<String> getIsbns() {
+            return isbns;
+        }
+
+        public void setIsbns(List<String> isbns) {
+            this.isbns = isbns;
+        }
     }
 
     public static class BookRequest {
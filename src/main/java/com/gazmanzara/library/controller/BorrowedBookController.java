@@ -1,115 +1,246 @@
 package com.gazmanzara.library.controller;
 
+import com.gazmanzara.library.dto.BorrowRecordDTO;
+import com.gazmanzara.library.dto.CirculationBatchResult;
+import com.gazmanzara.library.dto.CursorPage;
+import com.gazmanzara.library.dto.Fieldset;
 import com.gazmanzara.library.model.Book;
 import com.gazmanzara.library.model.BorrowedBook;
 import com.gazmanzara.library.model.Member;
 import com.gazmanzara.library.model.BorrowStatus;
+import com.gazmanzara.library.model.ArchivedBorrow;
+import com.gazmanzara.library.repository.ArchivedBorrowRepository;
 import com.gazmanzara.library.repository.BookRepository;
 import com.gazmanzara.library.repository.BorrowedBookRepository;
 import com.gazmanzara.library.repository.MemberRepository;
+import com.gazmanzara.library.repository.SparseRowRepository;
 import com.gazmanzara.library.exception.ResourceNotFoundException;
 import com.gazmanzara.library.exception.BadRequestException;
+import com.gazmanzara.library.service.BookAvailabilityIndex;
+import com.gazmanzara.library.service.CirculationService;
+import com.gazmanzara.library.service.ExportService;
+import com.gazmanzara.library.service.LibraryStatisticsService;
+import com.gazmanzara.library.service.MemberSummaryService;
 
+import org.hibernate.exception.ConstraintViolationException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Limit;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
 import java.net.URI;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 @RestController
 @RequestMapping("/api/borrowed-books")
 public class BorrowedBookController {
 
+    // Fields of a flat borrow record (as in BorrowRecordDTO) that ?fields= can select
+    private static final List<String> FIELDS = List.of("id", "bookId", "memberId", "borrowDate", "dueDate",
+            "returnDate", "status");
+
+    // Foreign key columns are read without joining the book or member
+    private static final Map<String, String> COLUMNS = Map.of(
+            "id", "bb.id",
+            "bookId", "bb.book.id",
+            "memberId", "bb.member.id",
+            "borrowDate", "bb.borrowDate",
+            "dueDate", "bb.dueDate",
+            "returnDate", "bb.returnDate",
+            "status", "bb.status");
+
     private final BorrowedBookRepository borrowedBookRepository;
+    private final ArchivedBorrowRepository archivedBorrowRepository;
     private final BookRepository bookRepository;
     private final MemberRepository memberRepository;
+    private final LibraryStatisticsService statisticsService;
+    private final ExportService exportService;
+    private final BookAvailabilityIndex availabilityIndex;
+    private final CirculationService circulationService;
+    private final MemberSummaryService memberSummaryService;
+    private final SparseRowRepository sparseRowRepository;
 
     public BorrowedBookController(
             BorrowedBookRepository borrowedBookRepository,
+            ArchivedBorrowRepository archivedBorrowRepository,
             BookRepository bookRepository,
-            MemberRepository memberRepository) {
+            MemberRepository memberRepository,
+            LibraryStatisticsService statisticsService,
+            ExportService exportService,
+            BookAvailabilityIndex availabilityIndex,
+            CirculationService circulationService,
+            MemberSummaryService memberSummaryService,
+            SparseRowRepository sparseRowRepository) {
         this.borrowedBookRepository = borrowedBookRepository;
+        this.archivedBorrowRepository = archivedBorrowRepository;
         this.bookRepository = bookRepository;
         this.memberRepository = memberRepository;
+        this.statisticsService = statisticsService;
+        this.exportService = exportService;
+        this.availabilityIndex = availabilityIndex;
+        this.circulationService = circulationService;
+        this.memberSummaryService = memberSummaryService;
+        this.sparseRowRepository = sparseRowRepository;
     }
 
     @PostMapping("/borrow")
-    public ResponseEntity<BorrowedBook> borrowBook(
+    @Transactional
+    public ResponseEntity<BorrowRecordDTO> borrowBook(
             @RequestParam Long bookId,
             @RequestParam Long memberId,
             @RequestParam(required = false) Integer durationInDays) {
 
-        Book book = bookRepository.findById(bookId)
-                .orElseThrow(() -> new ResourceNotFoundException("Book", "id", bookId));
+        // Targeted existence checks instead of loading the book and member with their borrow histories
+        if (!bookRepository.existsById(bookId)) {
+            throw new ResourceNotFoundException("Book", "id", bookId);
+        }
 
-        if (book.isCurrentlyBorrowed()) {
+        if (borrowedBookRepository.existsCurrentByBookId(bookId)) {
             throw new BadRequestException("Book is already borrowed");
         }
 
-        Member member = memberRepository.findById(memberId)
+        MemberSummaryService.Summary member = memberSummaryService.find(memberId)
                 .orElseThrow(() -> new ResourceNotFoundException("Member", "id", memberId));
 
-        if (member.hasOverdueBooks()) {
+        // Borrows that fell due since the last overdue sweep are not in the summary yet
+        LocalDateTime now = LocalDateTime.now();
+        if (member.overdueBorrows() > 0
+                || member.activeBorrows() > 0 && borrowedBookRepository.existsOverdueByMemberId(memberId, now)) {
             throw new BadRequestException("Member has overdue books and cannot borrow more books");
         }
 
+        // Checked and counted in one update, so concurrent borrows cannot overshoot the limit
+        if (!memberSummaryService.claimBorrowSlot(memberId, now)) {
+            throw new BadRequestException("Member has reached the limit of " + member.borrowLimit() + " borrowed books");
+        }
+
         BorrowedBook borrowedBook = new BorrowedBook();
-        borrowedBook.setBorrowDate(LocalDateTime.now());
-        borrowedBook.setDueDate(LocalDateTime.now().plusDays(durationInDays != null ? durationInDays : 14));
+        borrowedBook.setBook(bookRepository.getReferenceById(bookId));
+        borrowedBook.setMember(memberRepository.getReferenceById(memberId));
+        borrowedBook.setBorrowDate(now);
+        borrowedBook.setDueDate(now.plusDays(durationInDays != null ? durationInDays : 14));
         borrowedBook.setStatus(BorrowStatus.BORROWED);
 
-        // Use helper methods to maintain bidirectional relationship
-        book.addBorrowedBook(borrowedBook);
-        member.addBorrowedBook(borrowedBook);
-
-        BorrowedBook savedBorrow = borrowedBookRepository.save(borrowedBook);
+        // A concurrent borrow of the same book that got past the check above fails on the active borrow index
+        BorrowedBook savedBorrow;
+        try {
+            savedBorrow = borrowedBookRepository.saveAndFlush(borrowedBook);
+        } catch (DataIntegrityViolationException ex) {
+            if (violates(ex, BorrowedBook.CURRENT_BOOK_INDEX)) {
+                throw new BadRequestException("Book is already borrowed");
+            }
+            throw ex;
+        }
+        statisticsService.recordBorrow(memberId);
+        availabilityIndex.borrowed(bookId, savedBorrow.getId());
 
-        URI location = ServletUriComponentsBuilder.fromCurrentRequest()
-                .path("/{id}")
+        // The borrow is served at /api/borrowed-books/{id}, not below /borrow with its query string
+        URI location = ServletUriComponentsBuilder.fromCurrentContextPath()
+                .path("/api/borrowed-books/{id}")
                 .buildAndExpand(savedBorrow.getId())
                 .toUri();
 
-        return ResponseEntity.created(location).body(savedBorrow);
+        return ResponseEntity.created(location).body(new BorrowRecordDTO(savedBorrow.getId(), bookId, memberId,
+                savedBorrow.getBorrowDate(), savedBorrow.getDueDate(), null, savedBorrow.getStatus()));
+    }
+
+    private static boolean violates(DataIntegrityViolationException ex, String constraintName) {
+        return ex.getCause() instanceof ConstraintViolationException violation
+                && constraintName.equalsIgnoreCase(violation.getConstraintName());
+    }
+
+    // Many (bookId, memberId) pairs at once; each entry succeeds or fails on its own
+    @PostMapping("/batch/borrow")
+    public ResponseEntity<CirculationBatchResult> borrowBooks(
+            @RequestBody List<CirculationService.BorrowItem> items,
+            @RequestParam(required = false) Integer durationInDays) {
+        return ResponseEntity.ok(circulationService.borrow(items, durationInDays));
+    }
+
+    @PostMapping("/batch/return")
+    public ResponseEntity<CirculationBatchResult> returnBooks(@RequestBody List<Long> borrowIds) {
+        return ResponseEntity.ok(circulationService.returnBorrows(borrowIds));
     }
 
     @PostMapping("/{id}/return")
+    @Transactional
     public ResponseEntity<BorrowedBook> returnBook(@PathVariable Long id) {
-        BorrowedBook borrowedBook = borrowedBookRepository.findById(id)
+        // Locked, so a concurrent return or overdue sweep cannot change the status under us
+        BorrowedBookRepository.BorrowState borrow = borrowedBookRepository.findStateByIdForUpdate(id)
                 .orElseThrow(() -> new ResourceNotFoundException("BorrowedBook", "id", id));
 
-        if (borrowedBook.getStatus() == BorrowStatus.RETURNED) {
+        BorrowStatus status = BorrowStatus.valueOf(borrow.getStatus());
+        if (!status.isCurrent()) {
             throw new BadRequestException("Book is already returned");
         }
 
-        borrowedBook.setReturnDate(LocalDateTime.now());
-        borrowedBook.setStatus(BorrowStatus.RETURNED);
+        LocalDateTime now = LocalDateTime.now();
+        borrowedBookRepository.updateStatus(id, BorrowStatus.RETURNED, now);
+        memberSummaryService.adjust(borrow.getMemberId(),
+                new MemberSummaryService.Delta(-1, status == BorrowStatus.OVERDUE ? -1 : 0), now);
+        statisticsService.recordReturn(borrow.getMemberId());
+        availabilityIndex.returned(borrow.getBookId(), id);
+
+        // Loaded only now, so the member in the response carries its updated summary
+        BorrowedBook returnedBorrow = borrowedBookRepository.findById(id).orElseThrow();
+        returnedBorrow.getBook().resolveAvailability(null);
 
-        return ResponseEntity.ok(borrowedBookRepository.save(borrowedBook));
+        return ResponseEntity.ok(returnedBorrow);
     }
 
     @GetMapping("/member/{memberId}")
     public ResponseEntity<List<BorrowedBook>> getMemberBorrows(
             @PathVariable Long memberId,
-            @RequestParam(required = false) Boolean current) {
+            @RequestParam(required = false) Boolean current,
+            @RequestParam(required = false) Boolean includeArchived) {
 
         Member member = memberRepository.findById(memberId)
                 .orElseThrow(() -> new ResourceNotFoundException("Member", "id", memberId));
 
+        // Read through the (member, status) index rather than filtering the whole history
         if (Boolean.TRUE.equals(current)) {
-            return ResponseEntity.ok(List.copyOf(member.getCurrentBorrows()));
+            return ResponseEntity.ok(borrowedBookRepository.findCurrentBorrowsForMember(memberId));
         }
 
         // Return all borrow records for the member (both current and historical)
-        return ResponseEntity.ok(List.copyOf(member.getBorrowedBooks()));
+        if (!Boolean.TRUE.equals(includeArchived)) {
+            return ResponseEntity.ok(List.copyOf(member.getBorrowedBooks()));
+        }
+        return ResponseEntity.ok(withArchived(member.getBorrowedBooks(),
+                archivedBorrowRepository.findByMemberIdOrderByBorrowDateDesc(memberId)));
     }
 
     @GetMapping("/book/{bookId}")
-    public ResponseEntity<List<BorrowedBook>> getBookBorrowHistory(@PathVariable Long bookId) {
+    public ResponseEntity<List<BorrowedBook>> getBookBorrowHistory(
+            @PathVariable Long bookId,
+            @RequestParam(required = false) Boolean includeArchived) {
         Book book = bookRepository.findById(bookId)
                 .orElseThrow(() -> new ResourceNotFoundException("Book", "id", bookId));
-        return ResponseEntity.ok(borrowedBookRepository.findByBookIdOrderByBorrowDateDesc(bookId));
+        List<BorrowedBook> borrows = borrowedBookRepository.findByBookIdOrderByBorrowDateDesc(bookId);
+        if (!Boolean.TRUE.equals(includeArchived)) {
+            return ResponseEntity.ok(borrows);
+        }
+        return ResponseEntity.ok(withArchived(borrows, archivedBorrowRepository.findByBookIdOrderByBorrowDateDesc(bookId)));
+    }
+
+    // Live and archived borrows in one list, newest first
+    private List<BorrowedBook> withArchived(Collection<BorrowedBook> borrows, List<ArchivedBorrow> archived) {
+        List<BorrowedBook> merged = new ArrayList<>(borrows.size() + archived.size());
+        merged.addAll(borrows);
+        archived.forEach(borrow -> merged.add(borrow.toBorrowedBook()));
+        merged.sort(Comparator.comparing(BorrowedBook::getBorrowDate).reversed());
+        availabilityIndex.apply(merged.stream().map(BorrowedBook::getBook).distinct().toList());
+        return merged;
     }
 
     @GetMapping("/due-before")
@@ -117,23 +248,51 @@ public class BorrowedBookController {
             @RequestParam(required = false) LocalDateTime date) {
 
         LocalDateTime checkDate = date != null ? date : LocalDateTime.now();
-        return ResponseEntity.ok(
-                borrowedBookRepository.findByStatusAndDueDateBefore(BorrowStatus.BORROWED, checkDate));
+        return ResponseEntity.ok(borrowedBookRepository.findCurrentDueBefore(checkDate));
+    }
+
+    @GetMapping(value = "/export", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> exportBorrowedBooks(
+            @RequestParam(required = false) Boolean includeArchived) {
+        boolean archived = Boolean.TRUE.equals(includeArchived);
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(out -> exportService.exportBorrowRecords(out, archived));
     }
 
     @GetMapping("/{id}")
     public ResponseEntity<BorrowedBook> getBorrowById(@PathVariable Long id) {
+        // Archived borrows keep their id, so a link to a borrow still resolves after it has been archived
         BorrowedBook borrowedBook = borrowedBookRepository.findById(id)
+                .or(() -> archivedBorrowRepository.findWithBookAndMemberById(id).map(ArchivedBorrow::toBorrowedBook))
                 .orElseThrow(() -> new ResourceNotFoundException("BorrowedBook", "id", id));
         return ResponseEntity.ok(borrowedBook);
     }
 
+    // ?fields=id,bookId,... returns flat rows with only those fields instead of borrows with their book and member
     @GetMapping
-    public ResponseEntity<List<BorrowedBook>> getAllBorrowedBooks(
-            @RequestParam(required = false) BorrowStatus status) {
-        if (status != null) {
-            return ResponseEntity.ok(borrowedBookRepository.findByStatus(status));
+    public ResponseEntity<CursorPage<?>> getAllBorrowedBooks(
+            @RequestParam(required = false) BorrowStatus status,
+            @RequestParam(required = false) String after,
+            @RequestParam(defaultValue = "50") int limit,
+            @RequestParam(required = false) String fields) {
+        int pageSize = CursorPage.checkLimit(limit);
+        long afterId = CursorPage.decodeCursor(after);
+        Fieldset fieldset = Fieldset.parse(fields, FIELDS);
+        if (fieldset != null) {
+            Map<String, Object> parameters = new HashMap<>();
+            parameters.put("after", afterId);
+            if (status != null) {
+                parameters.put("status", status);
+            }
+            List<Map<String, Object>> rows = sparseRowRepository.findRows("BorrowedBook bb", fieldset.columns(COLUMNS),
+                    status != null ? "bb.id > :after AND bb.status = :status" : "bb.id > :after",
+                    parameters, "bb.id", pageSize + 1);
+            return ResponseEntity.ok(CursorPage.of(rows, pageSize, row -> (Long) row.get("id")));
         }
-        return ResponseEntity.ok(borrowedBookRepository.findAll());
+        List<BorrowedBook> rows = status != null
+                ? borrowedBookRepository.findByStatusAndIdGreaterThanOrderByIdAsc(status, afterId, Limit.of(pageSize + 1))
+                : borrowedBookRepository.findByIdGreaterThanOrderByIdAsc(afterId, Limit.of(pageSize + 1));
+        return ResponseEntity.ok(CursorPage.of(rows, pageSize, BorrowedBook::getId));
     }
 }
\ No newline at end of file
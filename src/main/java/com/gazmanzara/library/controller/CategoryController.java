@@ -1,13 +1,19 @@
 package com.gazmanzara.library.controller;
 
+import com.gazmanzara.library.dto.CursorPage;
+import com.gazmanzara.library.dto.ETag;
 import com.gazmanzara.library.model.Category;
 import com.gazmanzara.library.repository.CategoryRepository;
 import com.gazmanzara.library.exception.ResourceNotFoundException;
 import com.gazmanzara.library.exception.ResourceAlreadyExistsException;
+import com.gazmanzara.library.service.SuggestIndex;
 
 import jakarta.validation.Valid;
+import org.springframework.data.domain.Limit;
 import org.springframework.http.ResponseEntity;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
 import java.net.URI;
@@ -18,17 +24,32 @@ import java.util.List;
 public class CategoryController {
 
     private final CategoryRepository categoryRepository;
+    private final SuggestIndex suggestIndex;
 
-    public CategoryController(CategoryRepository categoryRepository) {
+    public CategoryController(CategoryRepository categoryRepository, SuggestIndex suggestIndex) {
         this.categoryRepository = categoryRepository;
+        this.suggestIndex = suggestIndex;
     }
 
     @GetMapping
-    public ResponseEntity<List<Category>> getAllCategories() {
-        return ResponseEntity.ok(categoryRepository.findAll());
+    @Transactional(readOnly = true)
+    public ResponseEntity<CursorPage<Category>> getAllCategories(
+            @RequestParam(required = false) String after,
+            @RequestParam(defaultValue = "50") int limit,
+            WebRequest request) {
+        int pageSize = CursorPage.checkLimit(limit);
+        List<Category> rows = categoryRepository.findByIdGreaterThanOrderByIdAsc(
+                CursorPage.decodeCursor(after), Limit.of(pageSize + 1));
+        ETag etag = ETag.of("categories").add(pageSize);
+        rows.forEach(row -> etag.add(row.getId()).add(row.getVersion()));
+        if (request.checkNotModified(etag.build())) {
+            return null;
+        }
+        return ResponseEntity.ok(CursorPage.of(rows, pageSize, Category::getId));
     }
 
     @GetMapping("/search")
+    @Transactional(readOnly = true)
     public ResponseEntity<List<Category>> searchCategories(@RequestParam String name) {
         return ResponseEntity.ok(categoryRepository.findByNameContainingIgnoreCase(name));
     }
@@ -40,6 +61,7 @@ public class CategoryController {
         }
         
         Category savedCategory = categoryRepository.save(category);
+        suggestIndex.categorySaved(savedCategory.getId(), savedCategory.getName());
         
         URI location = ServletUriComponentsBuilder.fromCurrentRequest()
                 .path("/{id}")
@@ -50,9 +72,13 @@ public class CategoryController {
     }
 
     @GetMapping("/{id}")
-    public ResponseEntity<Category> getCategoryById(@PathVariable Long id) {
+    @Transactional(readOnly = true)
+    public ResponseEntity<Category> getCategoryById(@PathVariable Long id, WebRequest request) {
         Category category = categoryRepository.findById(id)
                 .orElseThrow(() -> new ResourceNotFoundException("Category", "id", id));
+        if (request.checkNotModified(ETag.of("category").add(id).add(category.getVersion()).build())) {
+            return null;
+        }
         return ResponseEntity.ok(category);
     }
 
@@ -62,6 +88,7 @@ public class CategoryController {
             throw new ResourceNotFoundException("Category", "id", id);
         }
         categoryRepository.deleteById(id);
+        suggestIndex.categoryRemoved(id);
         return ResponseEntity.ok().build();
     }
 }
@@ -1,78 +1,81 @@
 package com.gazmanzara.library.controller;
 
+import com.gazmanzara.library.exception.BadRequestException;
 import com.gazmanzara.library.model.*;
 import com.gazmanzara.library.repository.*;
+import com.gazmanzara.library.service.LibraryStatisticsService;
+import org.springframework.data.domain.Limit;
 import org.springframework.http.ResponseEntity;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.bind.annotation.*;
 import java.time.LocalDateTime;
 import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
 @RestController
 @RequestMapping("/api/dashboard")
+@Transactional(readOnly = true)
 public class DashboardController {
 
-    private final BookRepository bookRepository;
-    private final MemberRepository memberRepository;
+    private static final Pattern WINDOW_PATTERN = Pattern.compile("(\\d{1,4})d");
+    private static final int MAX_RANKING_LIMIT = 100;
+
     private final BorrowedBookRepository borrowedBookRepository;
     private final CategoryRepository categoryRepository;
+    private final LibraryStatisticsService statisticsService;
+    private final JobRunRepository jobRunRepository;
 
     public DashboardController(
-            BookRepository bookRepository,
-            MemberRepository memberRepository,
             BorrowedBookRepository borrowedBookRepository,
-            CategoryRepository categoryRepository) {
-        this.bookRepository = bookRepository;
-        this.memberRepository = memberRepository;
+            CategoryRepository categoryRepository,
+            LibraryStatisticsService statisticsService,
+            JobRunRepository jobRunRepository) {
         this.borrowedBookRepository = borrowedBookRepository;
         this.categoryRepository = categoryRepository;
+        this.statisticsService = statisticsService;
+        this.jobRunRepository = jobRunRepository;
     }
 
     @GetMapping("/overview")
     public ResponseEntity<Map<String, Object>> getDashboardOverview() {
         Map<String, Object> overview = new HashMap<>();
 
-        // Book Statistics
-        long totalBooks = bookRepository.count();
-        long borrowedBooks = bookRepository.findAll().stream()
-                .filter(Book::isCurrentlyBorrowed)
-                .count();
-
-        // Member Statistics
-        long totalMembers = memberRepository.count();
-        long activeMembers = memberRepository.findAll().stream()
-                .filter(member -> !member.getCurrentBorrows().isEmpty())
-                .count();
-        long membersWithOverdue = memberRepository.findAll().stream()
-                .filter(Member::hasOverdueBooks)
-                .count();
+        // Counters are maintained by the write paths, so this is a single-row read
+        LibraryStatistics statistics = statisticsService.getStatistics();
 
         // Current Statistics
-        overview.put("totalBooks", totalBooks);
-        overview.put("borrowedBooks", borrowedBooks);
-        overview.put("availableBooks", totalBooks - borrowedBooks);
-        overview.put("totalMembers", totalMembers);
-        overview.put("activeMembers", activeMembers);
-        overview.put("membersWithOverdue", membersWithOverdue);
+        overview.put("totalBooks", statistics.getTotalBooks());
+        overview.put("borrowedBooks", statistics.getBorrowedBooks());
+        overview.put("availableBooks", statistics.getAvailableBooks());
+        overview.put("totalMembers", statistics.getTotalMembers());
+        overview.put("activeMembers", statistics.getActiveMembers());
+        overview.put("membersWithOverdue", statistics.getMembersWithOverdue());
 
         return ResponseEntity.ok(overview);
     }
 
     @GetMapping("/books/popular")
-    public ResponseEntity<List<Map<String, Object>>> getPopularBooks() {
-        List<Book> allBooks = bookRepository.findAll();
+    public ResponseEntity<List<Map<String, Object>>> getPopularBooks(
+            @RequestParam(defaultValue = "all") String window,
+            @RequestParam(defaultValue = "10") int limit) {
+
+        LocalDateTime since = windowStart(window);
+        Limit top = rankingLimit(limit);
+        List<BorrowedBookRepository.PopularBook> popularBooks = since == null
+                ? borrowedBookRepository.findPopularBooks(top)
+                : borrowedBookRepository.findPopularBooksSince(since, top);
 
-        return ResponseEntity.ok(allBooks.stream()
+        return ResponseEntity.ok(popularBooks.stream()
                 .map(book -> {
                     Map<String, Object> bookStats = new HashMap<>();
                     bookStats.put("id", book.getId());
                     bookStats.put("title", book.getTitle());
-                    bookStats.put("author", book.getAuthor().getName());
-                    bookStats.put("borrowCount", book.getBorrowedBooks().size());
+                    bookStats.put("author", book.getAuthor());
+                    bookStats.put("borrowCount", book.getBorrowCount());
                     return bookStats;
                 })
-                .sorted((b1, b2) -> ((Integer) b2.get("borrowCount")).compareTo((Integer) b1.get("borrowCount")))
-                .limit(10)
                 .collect(Collectors.toList()));
     }
 
@@ -91,27 +94,41 @@ public class DashboardController {
     }
 
     @GetMapping("/members/top-borrowers")
-    public ResponseEntity<List<Map<String, Object>>> getTopBorrowers() {
-        List<Member> members = memberRepository.findAll();
-
-        return ResponseEntity.ok(members.stream()
+    public ResponseEntity<List<Map<String, Object>>> getTopBorrowers(
+            @RequestParam(defaultValue = "all") String window,
+            @RequestParam(defaultValue = "10") int limit) {
+
+        LocalDateTime since = windowStart(window);
+        Limit top = rankingLimit(limit);
+        List<BorrowedBookRepository.TopBorrower> topBorrowers = since == null
+                ? borrowedBookRepository.findTopBorrowers(top)
+                : borrowedBookRepository.findTopBorrowersSince(since, top);
+
+        // Current borrows are looked up only for the ranked members
+        Map<Long, Long> currentBorrows = topBorrowers.isEmpty()
+                ? Map.of()
+                : borrowedBookRepository.countCurrentBorrowsByMember(
+                                topBorrowers.stream().map(BorrowedBookRepository.TopBorrower::getId).toList())
+                        .stream()
+                        .collect(Collectors.toMap(
+                                BorrowedBookRepository.MemberBorrowCount::getMemberId,
+                                BorrowedBookRepository.MemberBorrowCount::getBorrowCount));
+
+        return ResponseEntity.ok(topBorrowers.stream()
                 .map(member -> {
                     Map<String, Object> memberStats = new HashMap<>();
                     memberStats.put("id", member.getId());
                     memberStats.put("name", member.getFirstName() + " " + member.getLastName());
-                    memberStats.put("borrowCount", member.getBorrowedBooks().size());
-                    memberStats.put("currentBorrows", member.getCurrentBorrows().size());
+                    memberStats.put("borrowCount", member.getBorrowCount());
+                    memberStats.put("currentBorrows", currentBorrows.getOrDefault(member.getId(), 0L));
                     return memberStats;
                 })
-                .sorted((m1, m2) -> ((Integer) m2.get("borrowCount")).compareTo((Integer) m1.get("borrowCount")))
-                .limit(10)
                 .collect(Collectors.toList()));
     }
 
     @GetMapping("/borrows/overdue")
     public ResponseEntity<List<Map<String, Object>>> getOverdueBooks() {
-        List<BorrowedBook> overdueBooks = borrowedBookRepository
-                .findByStatusAndDueDateBefore(BorrowStatus.BORROWED, LocalDateTime.now());
+        List<BorrowedBook> overdueBooks = borrowedBookRepository.findCurrentDueBefore(LocalDateTime.now());
 
         return ResponseEntity.ok(overdueBooks.stream()
                 .map(borrow -> {
@@ -127,6 +144,12 @@ public class DashboardController {
                 .collect(Collectors.toList()));
     }
 
+    // Last run of each scheduled job
+    @GetMapping("/jobs")
+    public ResponseEntity<List<JobRun>> getJobRuns() {
+        return ResponseEntity.ok(jobRunRepository.findAll());
+    }
+
     @GetMapping("/borrows/recent")
     public ResponseEntity<List<Map<String, Object>>> getRecentBorrows() {
         List<BorrowedBook> recentBorrows = borrowedBookRepository.findAll().stream()
@@ -147,4 +170,23 @@ public class DashboardController {
                 })
                 .collect(Collectors.toList()));
     }
+
+    // Parses a ranking window such as "7d" or "30d"; "all" means no lower bound
+    private static LocalDateTime windowStart(String window) {
+        if ("all".equalsIgnoreCase(window)) {
+            return null;
+        }
+        Matcher matcher = WINDOW_PATTERN.matcher(window);
+        if (!matcher.matches()) {
+            throw new BadRequestException("Invalid window '" + window + "', expected e.g. 7d, 30d or all");
+        }
+        return LocalDateTime.now().minusDays(Long.parseLong(matcher.group(1)));
+    }
+
+    private static Limit rankingLimit(int limit) {
+        if (limit < 1 || limit > MAX_RANKING_LIMIT) {
+            throw new BadRequestException("limit must be between 1 and " + MAX_RANKING_LIMIT);
+        }
+        return Limit.of(limit);
+    }
 }
\ No newline at end of file
@@ -1,31 +1,89 @@
 package com.gazmanzara.library.controller;
 
+import com.gazmanzara.library.dto.CursorPage;
+import com.gazmanzara.library.dto.ETag;
+import com.gazmanzara.library.dto.Fieldset;
 import com.gazmanzara.library.model.Member;
+import com.gazmanzara.library.repository.ArchivedBorrowRepository;
+import com.gazmanzara.library.repository.BorrowedBookRepository;
 import com.gazmanzara.library.repository.MemberRepository;
+import com.gazmanzara.library.repository.SparseRowRepository;
 import com.gazmanzara.library.exception.ResourceNotFoundException;
 import com.gazmanzara.library.exception.ResourceAlreadyExistsException;
+import com.gazmanzara.library.service.BookAvailabilityIndex;
+import com.gazmanzara.library.service.LibraryStatisticsService;
 
 import jakarta.validation.Valid;
+import org.springframework.data.domain.Limit;
 import org.springframework.http.ResponseEntity;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
 import java.net.URI;
 import java.util.List;
+import java.util.Map;
 
 @RestController
 @RequestMapping("/api/members")
 public class MemberController {
 
+    // Member properties that ?fields= can select, in the order they are serialized
+    private static final List<String> FIELDS = List.of("id", "firstName", "lastName", "email", "phone",
+            "borrowLimit", "activeBorrows", "overdueBorrows", "lastActivityAt");
+
+    private static final Map<String, String> COLUMNS = Map.of(
+            "id", "m.id",
+            "firstName", "m.firstName",
+            "lastName", "m.lastName",
+            "email", "m.email",
+            "phone", "m.phone",
+            "borrowLimit", "m.borrowLimit",
+            "activeBorrows", "m.activeBorrows",
+            "overdueBorrows", "m.overdueBorrows",
+            "lastActivityAt", "m.lastActivityAt");
+
     private final MemberRepository memberRepository;
+    private final BorrowedBookRepository borrowedBookRepository;
+    private final ArchivedBorrowRepository archivedBorrowRepository;
+    private final LibraryStatisticsService statisticsService;
+    private final BookAvailabilityIndex availabilityIndex;
+    private final SparseRowRepository sparseRowRepository;
 
-    public MemberController(MemberRepository memberRepository) {
+    public MemberController(
+            MemberRepository memberRepository,
+            BorrowedBookRepository borrowedBookRepository,
+            ArchivedBorrowRepository archivedBorrowRepository,
+            LibraryStatisticsService statisticsService,
+            BookAvailabilityIndex availabilityIndex,
+            SparseRowRepository sparseRowRepository) {
         this.memberRepository = memberRepository;
+        this.borrowedBookRepository = borrowedBookRepository;
+        this.archivedBorrowRepository = archivedBorrowRepository;
+        this.statisticsService = statisticsService;
+        this.availabilityIndex = availabilityIndex;
+        this.sparseRowRepository = sparseRowRepository;
     }
 
+    // ?fields=id,firstName,... returns only those fields, and reads only the columns behind them
     @GetMapping
-    public ResponseEntity<List<Member>> getAllMembers() {
-        return ResponseEntity.ok(memberRepository.findAll());
+    public ResponseEntity<CursorPage<?>> getAllMembers(
+            @RequestParam(required = false) String after,
+            @RequestParam(defaultValue = "50") int limit,
+            @RequestParam(required = false) String fields,
+            WebRequest request) {
+        int pageSize = CursorPage.checkLimit(limit);
+        Fieldset fieldset = Fieldset.parse(fields, FIELDS);
+        if (fieldset != null) {
+            return getMemberFields(CursorPage.decodeCursor(after), pageSize, fieldset, request);
+        }
+        List<Member> rows = memberRepository.findByIdGreaterThanOrderByIdAsc(
+                CursorPage.decodeCursor(after), Limit.of(pageSize + 1));
+        if (request.checkNotModified(etagOf("members", rows, pageSize))) {
+            return null;
+        }
+        return ResponseEntity.ok(CursorPage.of(rows, pageSize, Member::getId));
     }
 
     @GetMapping("/search")
@@ -49,6 +107,7 @@ public class MemberController {
     }
 
     @PostMapping
+    @Transactional
     public ResponseEntity<Member> createMember(@Valid @RequestBody Member member) {
         // Check if email already exists
         if (memberRepository.existsByEmail(member.getEmail())) {
@@ -56,6 +115,7 @@ public class MemberController {
         }
         
         Member savedMember = memberRepository.save(member);
+        statisticsService.recordMemberAdded();
         
         URI location = ServletUriComponentsBuilder.fromCurrentRequest()
                 .path("/{id}")
@@ -66,9 +126,12 @@ public class MemberController {
     }
 
     @GetMapping("/{id}")
-    public ResponseEntity<Member> getMemberById(@PathVariable Long id) {
+    public ResponseEntity<Member> getMemberById(@PathVariable Long id, WebRequest request) {
         Member member = memberRepository.findById(id)
                 .orElseThrow(() -> new ResourceNotFoundException("Member", "id", id));
+        if (request.checkNotModified(etagOf("member", List.of(member), 1))) {
+            return null;
+        }
         return ResponseEntity.ok(member);
     }
 
@@ -88,17 +151,48 @@ public class MemberController {
         member.setLastName(memberRequest.getLastName());
         member.setEmail(memberRequest.getEmail());
         member.setPhone(memberRequest.getPhone());
+        member.setBorrowLimit(memberRequest.getBorrowLimit());
 
         Member updatedMember = memberRepository.save(member);
         return ResponseEntity.ok(updatedMember);
     }
 
+    private ResponseEntity<CursorPage<?>> getMemberFields(long after, int pageSize, Fieldset fieldset, WebRequest request) {
+        Map<String, String> columns = fieldset.columns(COLUMNS);
+        columns.put("version", "m.version");
+        List<Map<String, Object>> rows = sparseRowRepository.findRows("Member m", columns, "m.id > :after",
+                Map.of("after", after), "m.id", pageSize + 1);
+        ETag etag = ETag.of("members").add(pageSize).add(fieldset.mask());
+        for (Map<String, Object> row : rows) {
+            etag.add((Long) row.get("id")).add((Long) row.remove("version"));
+        }
+        if (request.checkNotModified(etag.build())) {
+            return null;
+        }
+        return ResponseEntity.ok(CursorPage.of(rows, pageSize, row -> (Long) row.get("id")));
+    }
+
+    // Every change to a member's circulation summary bumps its version as well
+    private static String etagOf(String kind, List<Member> members, int size) {
+        ETag etag = ETag.of(kind).add(size);
+        for (Member member : members) {
+            etag.add(member.getId()).add(member.getVersion());
+        }
+        return etag.build();
+    }
+
     @DeleteMapping("/{id}")
+    @Transactional
     public ResponseEntity<Void> deleteMember(@PathVariable Long id) {
         if (!memberRepository.existsById(id)) {
             throw new ResourceNotFoundException("Member", "id", id);
         }
+        // The member's borrows are deleted with it, which frees the books they held
+        List<Long> borrowedBookIds = borrowedBookRepository.findCurrentBookIdsForMember(id);
+        archivedBorrowRepository.deleteByMemberId(id);
         memberRepository.deleteById(id);
+        statisticsService.recordMemberRemoved(borrowedBookIds.size());
+        borrowedBookIds.forEach(availabilityIndex::bookReleased);
         return ResponseEntity.ok().build();
     }
 } 
\ No newline at end of file
@@ -0,0 +1,43 @@
+package com.gazmanzara.library.controller;
+
+import com.gazmanzara.library.exception.BadRequestException;
+import com.gazmanzara.library.service.SuggestIndex;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+
+/**
+ * Typeahead over titles, authors and categories, answered from memory so
+ * that a request per keystroke costs no database work.
+ */
+@RestController
+@RequestMapping("/api/suggest")
+public class SuggestController {
+
+    private static final int MAX_LIMIT = 50;
+
+    private final SuggestIndex suggestIndex;
+
+    public SuggestController(SuggestIndex suggestIndex) {
+        this.suggestIndex = suggestIndex;
+    }
+
+    @GetMapping
+    public ResponseEntity<List<SuggestIndex.Suggestion>> suggest(
+            @RequestParam String q,
+            @RequestParam(defaultValue = "10") int limit) {
+        if (limit < 1 || limit > MAX_LIMIT) {
+            throw new BadRequestException("limit must be between 1 and " + MAX_LIMIT);
+        }
+        // Until the first load finishes there is nothing to answer from; the client retries shortly
+        if (!suggestIndex.isLoaded()) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).header("Retry-After", "5").build();
+        }
+        return ResponseEntity.ok(suggestIndex.suggest(q, limit));
+    }
+}
@@ -10,4 +10,9 @@ public class AuthorDTO {
         this.id = author.getId();
         this.name = author.getName();
     }
+
+    public AuthorDTO(Long id, String name) {
+        this.id = id;
+        this.name = name;
+    }
 }
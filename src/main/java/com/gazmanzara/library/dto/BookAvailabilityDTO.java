@@ -0,0 +1,17 @@
+package com.gazmanzara.library.dto;
+
+public class BookAvailabilityDTO {
+    public Long id;
+    public String isbn;
+    public boolean found;
+    public boolean available;
+    public Long currentBorrow;
+
+    public BookAvailabilityDTO(Long id, String isbn, boolean found, Long currentBorrow) {
+        this.id = id;
+        this.isbn = isbn;
+        this.found = found;
+        this.available = found && currentBorrow == null;
+        this.currentBorrow = currentBorrow;
+    }
+}
@@ -1,5 +1,6 @@
 package com.gazmanzara.library.dto;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.gazmanzara.library.model.Book;
 
 import java.util.Set;
@@ -15,6 +16,12 @@ public class BookDTO {
     public AuthorDTO author;
     public Set<CategoryDTO> categories;
 
+    // Only present when availability has been resolved for the listing
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public Boolean currentlyBorrowed;
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public Long currentBorrow;
+
     public BookDTO(Book book) {
         this.id = book.getId();
         this.title = book.getTitle();
@@ -22,7 +29,24 @@ public class BookDTO {
         this.imgUrl = book.getImgUrl();
         this.isbn = book.getIsbn();
         this.publicationYear = book.getPublicationYear();
-        this.author = new AuthorDTO(book.getAuthor());
+        this.author = book.getAuthor() != null ? new AuthorDTO(book.getAuthor()) : null;
         this.categories = book.getCategories().stream().map(CategoryDTO::new).collect(Collectors.toSet());
     }
+
+    public BookDTO(Long id, String title, String description, String imgUrl, String isbn,
+                   Integer publicationYear, AuthorDTO author, Set<CategoryDTO> categories) {
+        this.id = id;
+        this.title = title;
+        this.description = description;
+        this.imgUrl = imgUrl;
+        this.isbn = isbn;
+        this.publicationYear = publicationYear;
+        this.author = author;
+        this.categories = categories;
+    }
+
+    public void resolveAvailability(Long currentBorrowId) {
+        this.currentlyBorrowed = currentBorrowId != null;
+        this.currentBorrow = currentBorrowId;
+    }
 }
@@ -0,0 +1,36 @@
+package com.gazmanzara.library.dto;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Outcome of a bulk book import. Rows are numbered from 1 in the order they
+ * were read; only the first {@link #MAX_ERRORS} rejected rows are listed.
+ */
+public class BookImportReport {
+
+    public static final int MAX_ERRORS = 1000;
+
+    public long received;
+    public long imported;
+    public long rejected;
+    public int authorsCreated;
+    public int categoriesCreated;
+    public long elapsedMillis;
+    public boolean errorsTruncated;
+    // Set when the input could not be read to the end; rows before the failure are still imported
+    public String aborted;
+    public List<RowError> errors = new ArrayList<>();
+
+    public void reject(long row, String isbn, String message) {
+        rejected++;
+        if (errors.size() < MAX_ERRORS) {
+            errors.add(new RowError(row, isbn, message));
+        } else {
+            errorsTruncated = true;
+        }
+    }
+
+    public record RowError(long row, String isbn, String message) {
+    }
+}
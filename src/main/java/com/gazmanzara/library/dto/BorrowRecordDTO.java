@@ -0,0 +1,26 @@
+package com.gazmanzara.library.dto;
+
+import com.gazmanzara.library.model.BorrowStatus;
+
+import java.time.LocalDateTime;
+
+public class BorrowRecordDTO {
+    public Long id;
+    public Long bookId;
+    public Long memberId;
+    public LocalDateTime borrowDate;
+    public LocalDateTime dueDate;
+    public LocalDateTime returnDate;
+    public BorrowStatus status;
+
+    public BorrowRecordDTO(Long id, Long bookId, Long memberId, LocalDateTime borrowDate,
+                           LocalDateTime dueDate, LocalDateTime returnDate, BorrowStatus status) {
+        this.id = id;
+        this.bookId = bookId;
+        this.memberId = memberId;
+        this.borrowDate = borrowDate;
+        this.dueDate = dueDate;
+        this.returnDate = returnDate;
+        this.status = status;
+    }
+}
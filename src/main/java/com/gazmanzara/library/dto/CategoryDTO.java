@@ -12,4 +12,10 @@ public class CategoryDTO {
         this.name = category.getName();
         this.description = category.getDescription();
     }
+
+    public CategoryDTO(Long id, String name, String description) {
+        this.id = id;
+        this.name = name;
+        this.description = description;
+    }
 }
@@ -0,0 +1,37 @@
+package com.gazmanzara.library.dto;
+
+import com.gazmanzara.library.model.BorrowStatus;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Outcome of a batch borrow or return: one item per requested entry, in
+ * request order. Failed items carry an error and leave the other items
+ * untouched.
+ */
+public class CirculationBatchResult {
+
+    public int succeeded;
+    public int failed;
+    public long elapsedMillis;
+    public List<Item> items = new ArrayList<>();
+
+    public static class Item {
+        public int index;
+        public Long borrowId;
+        public Long bookId;
+        public Long memberId;
+        public LocalDateTime dueDate;
+        public BorrowStatus status;
+        public String error;
+
+        public Item(int index, Long borrowId, Long bookId, Long memberId) {
+            this.index = index;
+            this.borrowId = borrowId;
+            this.bookId = bookId;
+            this.memberId = memberId;
+        }
+    }
+}
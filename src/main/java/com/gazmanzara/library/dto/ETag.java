@@ -0,0 +1,45 @@
+package com.gazmanzara.library.dto;
+
+/**
+ * Builds a strong ETag from the ids and versions a representation is made
+ * of, so that a conditional GET can be answered without loading or
+ * serializing the body. Every value that can change the representation has
+ * to be added, in a stable order; the values are folded into a 64-bit hash.
+ */
+public class ETag {
+
+    private final String kind;
+    private long hash = 0x9E3779B97F4A7C15L;
+
+    private ETag(String kind) {
+        this.kind = kind;
+    }
+
+    public static ETag of(String kind) {
+        return new ETag(kind);
+    }
+
+    public ETag add(long value) {
+        hash = Long.rotateLeft(hash ^ mix(value), 31) * 0xBF58476D1CE4E5B9L;
+        return this;
+    }
+
+    // Absent values hash differently from every id, which are all positive
+    public ETag add(Long value) {
+        return add(value != null ? value.longValue() : -1L);
+    }
+
+    /**
+     * The quoted header value, such as {@code "books-5f0c9e2a41d3b7e8"}.
+     */
+    public String build() {
+        return "\"" + kind + "-" + Long.toHexString(mix(hash)) + "\"";
+    }
+
+    // Finalizer of SplitMix64
+    private static long mix(long value) {
+        value = (value ^ (value >>> 30)) * 0xBF58476D1CE4E5B9L;
+        value = (value ^ (value >>> 27)) * 0x94D049BB133111EBL;
+        return value ^ (value >>> 31);
+    }
+}
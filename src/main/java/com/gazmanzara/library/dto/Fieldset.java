@@ -0,0 +1,74 @@
+package com.gazmanzara.library.dto;
+
+import com.gazmanzara.library.exception.BadRequestException;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The fields a client selected with {@code ?fields=} on a listing that
+ * supports sparse fieldsets. The id is always included, since cursors and
+ * clients key rows on it. Selected fields keep the order in which the
+ * resource declares them, so the selection alone, not how it was spelled,
+ * decides the representation and its ETag.
+ */
+public class Fieldset {
+
+    private final List<String> available;
+    private final long mask;
+
+    private Fieldset(List<String> available, long mask) {
+        this.available = available;
+        this.mask = mask;
+    }
+
+    /**
+     * Parses a comma-separated field list against the fields the resource
+     * declares, {@code id} first. Returns null when no fields were given,
+     * which selects the full representation.
+     */
+    public static Fieldset parse(String fields, List<String> available) {
+        if (fields == null || fields.isBlank()) {
+            return null;
+        }
+        long mask = 1L;
+        for (String field : fields.split(",")) {
+            String name = field.trim();
+            if (name.isEmpty()) {
+                continue;
+            }
+            int index = available.indexOf(name);
+            if (index < 0) {
+                throw new BadRequestException("Unknown field '" + name + "', expected any of " + String.join(", ", available));
+            }
+            mask |= 1L << index;
+        }
+        return new Fieldset(available, mask);
+    }
+
+    public boolean includes(String field) {
+        int index = available.indexOf(field);
+        return index >= 0 && (mask & (1L << index)) != 0;
+    }
+
+    // Tells the selections apart in ETags
+    public long mask() {
+        return mask;
+    }
+
+    /**
+     * The select expressions of the included fields, keyed by field name in
+     * declaration order. Fields without an entry are left for the caller to
+     * fill in.
+     */
+    public Map<String, String> columns(Map<String, String> expressionsByField) {
+        Map<String, String> columns = new LinkedHashMap<>();
+        for (String field : available) {
+            if (includes(field) && expressionsByField.containsKey(field)) {
+                columns.put(field, expressionsByField.get(field));
+            }
+        }
+        return columns;
+    }
+}
@@ -0,0 +1,84 @@
+package com.gazmanzara.library.model;
+
+import jakarta.persistence.*;
+import org.hibernate.annotations.Immutable;
+
+import java.time.LocalDateTime;
+
+/**
+ * A returned borrow that has been moved out of {@code borrowed_books} by the
+ * archiver. It keeps the id it had there, so links to it stay valid. Rows are
+ * written only by the archiver's SQL and are read-only here.
+ */
+@Entity
+@Immutable
+@Table(name = "borrowed_books_archive")
+public class ArchivedBorrow {
+
+    @Id
+    private Long id;
+
+    @ManyToOne(fetch = FetchType.EAGER)
+    @JoinColumn(name = "book_id", nullable = false)
+    private Book book;
+
+    @ManyToOne(fetch = FetchType.EAGER)
+    @JoinColumn(name = "member_id", nullable = false)
+    private Member member;
+
+    @Column(name = "borrow_date", nullable = false)
+    private LocalDateTime borrowDate;
+
+    @Column(name = "due_date", nullable = false)
+    private LocalDateTime dueDate;
+
+    @Column(name = "return_date", nullable = false)
+    private LocalDateTime returnDate;
+
+    @Column(name = "archived_at", nullable = false)
+    private LocalDateTime archivedAt;
+
+    public ArchivedBorrow() {
+    }
+
+    // The borrow as it was before archival, for responses that list both; it is not attached to any session
+    public BorrowedBook toBorrowedBook() {
+        BorrowedBook borrowedBook = new BorrowedBook();
+        borrowedBook.setId(id);
+        borrowedBook.setBook(book);
+        borrowedBook.setMember(member);
+        borrowedBook.setBorrowDate(borrowDate);
+        borrowedBook.setDueDate(dueDate);
+        borrowedBook.setReturnDate(returnDate);
+        borrowedBook.setStatus(BorrowStatus.RETURNED);
+        return borrowedBook;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public Book getBook() {
+        return book;
+    }
+
+    public Member getMember() {
+        return member;
+    }
+
+    public LocalDateTime getBorrowDate() {
+        return borrowDate;
+    }
+
+    public LocalDateTime getDueDate() {
+        return dueDate;
+    }
+
+    public LocalDateTime getReturnDate() {
+        return returnDate;
+    }
+
+    public LocalDateTime getArchivedAt() {
+        return archivedAt;
+    }
+}
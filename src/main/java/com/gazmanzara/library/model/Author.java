@@ -3,17 +3,31 @@ package com.gazmanzara.library.model;
 import jakarta.persistence.*;
 import jakarta.validation.constraints.NotBlank;
 import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.gazmanzara.library.config.CacheConfig;
+import org.hibernate.annotations.BatchSize;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.ColumnDefault;
 
 import java.util.ArrayList;
 import java.util.List;
 
 @Entity
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = CacheConfig.AUTHOR_REGION)
+@BatchSize(size = 50)
 public class Author {
 
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
 
+    // Bumped by every update; rows that predate the column start at 0
+    @Version
+    @ColumnDefault("0")
+    @JsonIgnore
+    private long version;
+
     @Column(unique = true)
     @NotBlank(message = "Name cannot be empty")
     private String name;
@@ -39,6 +53,10 @@ public class Author {
         this.id = id;
     }
 
+    public long getVersion() {
+        return version;
+    }
+
     public String getName() {
         return name;
     }
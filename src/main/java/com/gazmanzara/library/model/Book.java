@@ -4,6 +4,13 @@ import jakarta.persistence.*;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.NotNull;
 import com.fasterxml.jackson.annotation.*;
+import com.gazmanzara.library.config.CacheConfig;
+import org.hibernate.annotations.BatchSize;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.ColumnDefault;
+import org.hibernate.annotations.Fetch;
+import org.hibernate.annotations.FetchMode;
 
 import java.util.HashSet;
 import java.util.Set;
@@ -16,6 +23,12 @@ public class Book {
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
 
+    // Bumped by every update; rows that predate the column start at 0
+    @Version
+    @ColumnDefault("0")
+    @JsonIgnore
+    private long version;
+
     @NotBlank(message = "Book title must not be blank")
     private String title;
 
@@ -31,18 +44,31 @@ public class Book {
     @Column(name = "publication_year")
     private Integer publicationYear;
 
+    // Loaded by a separate select rather than a join, so it can come from the second-level cache
     @ManyToOne(fetch = FetchType.EAGER)
+    @Fetch(FetchMode.SELECT)
     @JoinColumn(name = "author_id")
     private Author author;
 
     @ManyToMany(fetch = FetchType.EAGER)
+    @Fetch(FetchMode.SELECT)
+    @BatchSize(size = 50)
+    @Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = CacheConfig.BOOK_CATEGORIES_REGION)
     @JoinTable(name = "book_categories", joinColumns = @JoinColumn(name = "book_id"), inverseJoinColumns = @JoinColumn(name = "category_id"))
     private Set<Category> categories = new HashSet<>();
 
+    // Live borrows only; the archiver moves old returned borrows to ArchivedBorrow
     @JsonIgnore
     @OneToMany(mappedBy = "book", cascade = CascadeType.ALL, orphanRemoval = true)
     private Set<BorrowedBook> borrowedBooks = new HashSet<>();
 
+    // Availability taken from the availability index, when it has been resolved
+    @Transient
+    private boolean availabilityResolved;
+
+    @Transient
+    private Long resolvedCurrentBorrowId;
+
     public Book() {
     }
 
@@ -55,20 +81,32 @@ public class Book {
     // Helper method to check if book is currently borrowed
     @JsonProperty("currentlyBorrowed")
     public boolean isCurrentlyBorrowed() {
+        if (availabilityResolved) {
+            return resolvedCurrentBorrowId != null;
+        }
         return borrowedBooks.stream()
-                .anyMatch(borrow -> borrow.getStatus() == BorrowStatus.BORROWED);
+                .anyMatch(borrow -> borrow.getStatus().isCurrent());
     }
 
     // Helper method to get current borrow record if exists
     @JsonProperty("currentBorrow")
     public Long getCurrentBorrowId() {
+        if (availabilityResolved) {
+            return resolvedCurrentBorrowId;
+        }
         return borrowedBooks.stream()
-                .filter(borrow -> borrow.getStatus() == BorrowStatus.BORROWED)
+                .filter(borrow -> borrow.getStatus().isCurrent())
                 .findFirst()
                 .map(BorrowedBook::getId)
                 .orElse(null);
     }
 
+    // Sets the availability from an external source so the borrow history is not walked
+    public void resolveAvailability(Long currentBorrowId) {
+        this.availabilityResolved = true;
+        this.resolvedCurrentBorrowId = currentBorrowId;
+    }
+
     // Helper method to add a borrow record
     public void addBorrowedBook(BorrowedBook borrowedBook) {
         borrowedBooks.add(borrowedBook);
@@ -90,6 +128,10 @@ public class Book {
         this.id = id;
     }
 
+    public long getVersion() {
+        return version;
+    }
+
     public String getTitle() {
         return title;
     }
@@ -2,5 +2,11 @@ package com.gazmanzara.library.model;
  
 public enum BorrowStatus {
     BORROWED,    // Book is currently borrowed
-    RETURNED     // Book has been returned
-} 
\ No newline at end of file
+    OVERDUE,     // Book is currently borrowed and past its due date; set by the overdue sweep
+    RETURNED;    // Book has been returned
+
+    // Borrowed or overdue: the book is still out
+    public boolean isCurrent() {
+        return this != RETURNED;
+    }
+} 
@@ -5,9 +5,13 @@ import jakarta.validation.constraints.NotNull;
 import java.time.LocalDateTime;
 
 @Entity
+// Indexes are created by the migrations in db/migration
 @Table(name = "borrowed_books")
 public class BorrowedBook {
 
+    // Partial unique index that allows one current (borrowed or overdue) borrow per book
+    public static final String CURRENT_BOOK_INDEX = "ux_borrowed_books_current_book";
+
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
@@ -0,0 +1,100 @@
+package com.gazmanzara.library.model;
+
+import jakarta.persistence.*;
+
+import java.time.LocalDateTime;
+
+/**
+ * Single-row table holding the dashboard counters. The row is kept up to date
+ * by the write paths and periodically rebuilt from the source tables.
+ */
+@Entity
+@Table(name = "library_statistics")
+public class LibraryStatistics {
+
+    public static final Long SINGLETON_ID = 1L;
+
+    @Id
+    private Long id = SINGLETON_ID;
+
+    @Column(name = "total_books", nullable = false)
+    private long totalBooks;
+
+    @Column(name = "borrowed_books", nullable = false)
+    private long borrowedBooks;
+
+    @Column(name = "total_members", nullable = false)
+    private long totalMembers;
+
+    @Column(name = "active_members", nullable = false)
+    private long activeMembers;
+
+    @Column(name = "members_with_overdue", nullable = false)
+    private long membersWithOverdue;
+
+    @Column(name = "reconciled_at")
+    private LocalDateTime reconciledAt;
+
+    public LibraryStatistics() {
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public long getTotalBooks() {
+        return totalBooks;
+    }
+
+    public void setTotalBooks(long totalBooks) {
+        this.totalBooks = totalBooks;
+    }
+
+    public long getBorrowedBooks() {
+        return borrowedBooks;
+    }
+
+    public void setBorrowedBooks(long borrowedBooks) {
+        this.borrowedBooks = borrowedBooks;
+    }
+
+    public long getAvailableBooks() {
+        return totalBooks - borrowedBooks;
+    }
+
+    public long getTotalMembers() {
+        return totalMembers;
+    }
+
+    public void setTotalMembers(long totalMembers) {
+        this.totalMembers = totalMembers;
+    }
+
+    public long getActiveMembers() {
+        return activeMembers;
+    }
+
+    public void setActiveMembers(long activeMembers) {
+        this.activeMembers = activeMembers;
+    }
+
+    public long getMembersWithOverdue() {
+        return membersWithOverdue;
+    }
+
+    public void setMembersWithOverdue(long membersWithOverdue) {
+        this.membersWithOverdue = membersWithOverdue;
+    }
+
+    public LocalDateTime getReconciledAt() {
+        return reconciledAt;
+    }
+
+    public void setReconciledAt(LocalDateTime reconciledAt) {
+        this.reconciledAt = reconciledAt;
+    }
+}
@@ -4,8 +4,11 @@ import jakarta.persistence.*;
 import jakarta.validation.constraints.Email;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.PositiveOrZero;
 import com.fasterxml.jackson.annotation.*;
+import org.hibernate.annotations.ColumnDefault;
 
+import java.time.LocalDateTime;
 import java.util.HashSet;
 import java.util.Set;
 import java.util.stream.Collectors;
@@ -18,6 +21,12 @@ public class Member {
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
 
+    // Bumped by every update; rows that predate the column start at 0
+    @Version
+    @ColumnDefault("0")
+    @JsonIgnore
+    private long version;
+
     @NotBlank(message = "First name cannot be empty")
     @Column(name = "first_name")
     private String firstName;
@@ -34,6 +43,24 @@ public class Member {
     @NotNull(message = "Phone is required")
     private String phone;
 
+    // Maximum number of current borrows; the configured default applies when null
+    @PositiveOrZero(message = "Borrow limit cannot be negative")
+    @Column(name = "borrow_limit")
+    private Integer borrowLimit;
+
+    // Circulation summary, maintained in SQL by the borrow, return and overdue paths (see MemberSummaryService)
+    @ColumnDefault("0")
+    @Column(name = "active_borrows", nullable = false, insertable = false, updatable = false)
+    private int activeBorrows;
+
+    @ColumnDefault("0")
+    @Column(name = "overdue_borrows", nullable = false, insertable = false, updatable = false)
+    private int overdueBorrows;
+
+    @Column(name = "last_activity_at", insertable = false, updatable = false)
+    private LocalDateTime lastActivityAt;
+
+    // Live borrows only; the archiver moves old returned borrows to ArchivedBorrow
     @JsonIgnore
     @OneToMany(mappedBy = "member", cascade = CascadeType.ALL, orphanRemoval = true)
     private Set<BorrowedBook> borrowedBooks = new HashSet<>();
@@ -55,6 +82,10 @@ public class Member {
         this.id = id;
     }
 
+    public long getVersion() {
+        return version;
+    }
+
     public String getFirstName() {
         return firstName;
     }
@@ -87,6 +118,26 @@ public class Member {
         this.phone = phone;
     }
 
+    public Integer getBorrowLimit() {
+        return borrowLimit;
+    }
+
+    public void setBorrowLimit(Integer borrowLimit) {
+        this.borrowLimit = borrowLimit;
+    }
+
+    public int getActiveBorrows() {
+        return activeBorrows;
+    }
+
+    public int getOverdueBorrows() {
+        return overdueBorrows;
+    }
+
+    public LocalDateTime getLastActivityAt() {
+        return lastActivityAt;
+    }
+
     @JsonIgnore
     public Set<BorrowedBook> getBorrowedBooks() {
         return borrowedBooks;
@@ -96,7 +147,8 @@ public class Member {
         this.borrowedBooks = borrowedBooks;
     }
 
-    @JsonProperty("currentBorrows")
+    // Walks the whole borrow history; responses carry the summary counters instead
+    @JsonIgnore
     public Set<Long> getCurrentBorrowIds() {
         return getCurrentBorrows().stream()
                 .map(BorrowedBook::getId)
@@ -106,7 +158,7 @@ public class Member {
     @JsonIgnore
     public Set<BorrowedBook> getCurrentBorrows() {
         return borrowedBooks.stream()
-                .filter(borrow -> borrow.getStatus() == BorrowStatus.BORROWED)
+                .filter(borrow -> borrow.getStatus().isCurrent())
                 .collect(Collectors.toSet());
     }
 
@@ -0,0 +1,52 @@
+package com.gazmanzara.library.repository;
+
+import com.gazmanzara.library.dto.BorrowRecordDTO;
+import com.gazmanzara.library.model.ArchivedBorrow;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.AvailableHints;
+import org.springframework.data.jpa.repository.EntityGraph;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+public interface ArchivedBorrowRepository extends JpaRepository<ArchivedBorrow, Long> {
+
+    @EntityGraph(attributePaths = {"book", "book.author", "member"})
+    @ExpectedPlan(indexes = "borrowed_books_archive_pkey")
+    Optional<ArchivedBorrow> findWithBookAndMemberById(Long id);
+
+    // Archived history of a member or a book, newest first
+    @EntityGraph(attributePaths = {"book", "book.author", "member"})
+    @ExpectedPlan(indexes = "ix_borrowed_books_archive_member")
+    List<ArchivedBorrow> findByMemberIdOrderByBorrowDateDesc(Long memberId);
+
+    @EntityGraph(attributePaths = {"book", "book.author", "member"})
+    @ExpectedPlan(indexes = "ix_borrowed_books_archive_book")
+    List<ArchivedBorrow> findByBookIdOrderByBorrowDateDesc(Long bookId);
+
+    // Archived rows are not part of the book's or member's mapped borrows, so they are deleted explicitly
+    @Modifying
+    @Query("DELETE FROM ArchivedBorrow ab WHERE ab.book.id = :bookId")
+    @ExpectedPlan(indexes = "ix_borrowed_books_archive_book")
+    int deleteByBookId(@Param("bookId") Long bookId);
+
+    @Modifying
+    @Query("DELETE FROM ArchivedBorrow ab WHERE ab.member.id = :memberId")
+    @ExpectedPlan(indexes = "ix_borrowed_books_archive_member")
+    int deleteByMemberId(@Param("memberId") Long memberId);
+
+    // Archived ledger as a server-side cursor of flat rows; must be consumed inside a transaction
+    @QueryHints(@QueryHint(name = AvailableHints.HINT_FETCH_SIZE, value = "1000"))
+    @Query("SELECT new com.gazmanzara.library.dto.BorrowRecordDTO(" +
+            "ab.id, ab.book.id, ab.member.id, ab.borrowDate, ab.dueDate, ab.returnDate, " +
+            "com.gazmanzara.library.model.BorrowStatus.RETURNED) " +
+            "FROM ArchivedBorrow ab ORDER BY ab.id")
+    @ExpectedPlan(scans = "borrowed_books_archive")
+    Stream<BorrowRecordDTO> streamAllRecords();
+}
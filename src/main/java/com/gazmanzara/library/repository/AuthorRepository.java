@@ -1,15 +1,41 @@
 package com.gazmanzara.library.repository;
 
 import com.gazmanzara.library.model.Author;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
 @Repository
 public interface AuthorRepository extends JpaRepository<Author, Long> {
+    @ExpectedPlan(indexes = "ukor6k6jmywerxbme223c988bmg")
     boolean existsByName(String name);
+
+    // Served from the query cache when hibernate.cache.use_query_cache is on
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"))
+    @ExpectedPlan(indexes = "ukor6k6jmywerxbme223c988bmg")
     Optional<Author> findByName(String name);
+
+    @ExpectedPlan(indexes = "ix_author_name_trgm")
     List<Author> findByNameContainingIgnoreCase(String name);
+
+    // Resolves a batch of exact names to ids without loading the entities
+    @ExpectedPlan(indexes = "ukor6k6jmywerxbme223c988bmg")
+    List<AuthorName> findByNameIn(Collection<String> names);
+
+    // Keyset page: rows after the given id, in id order
+    @ExpectedPlan(indexes = "author_pkey")
+    List<Author> findByIdGreaterThanOrderByIdAsc(Long id, Limit limit);
+
+    interface AuthorName {
+        Long getId();
+
+        String getName();
+    }
 }
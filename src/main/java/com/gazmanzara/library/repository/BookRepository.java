@@ -3,32 +3,269 @@ package com.gazmanzara.library.repository;
 import com.gazmanzara.library.model.Book;
 import com.gazmanzara.library.model.Author;
 import com.gazmanzara.library.model.Category;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.AvailableHints;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 @Repository
 public interface BookRepository extends JpaRepository<Book, Long> {
+    @ExpectedPlan(indexes = "ukkibbepcitr0a3cpk3rfr7nihn")
     boolean existsByIsbn(String isbn);
 
+    @ExpectedPlan(indexes = "ukkibbepcitr0a3cpk3rfr7nihn")
     Optional<Book> findByIsbn(String isbn);
 
+    @ExpectedPlan(indexes = "ix_books_title_trgm")
     List<Book> findByTitleContainingIgnoreCase(String title);
 
+    @ExpectedPlan(indexes = "ix_books_author")
     List<Book> findByAuthor(Author author);
 
+    @ExpectedPlan(indexes = "ix_books_author")
     List<Book> findByAuthorId(Long authorId);
 
+    // A category holds thousands of books, so the whole catalog is read
+    @ExpectedPlan(indexes = "book_categories_pkey", scans = "books")
     List<Book> findByCategoriesContaining(Category category);
 
+    @ExpectedPlan(indexes = "ix_books_publication_year")
     List<Book> findByPublicationYear(Integer year);
 
-    @Query("SELECT DISTINCT b FROM Book b WHERE NOT EXISTS (SELECT bb FROM BorrowedBook bb WHERE bb.book = b AND bb.status = 'BORROWED')")
+    // Keyset page: rows after the given id, in id order
+    @ExpectedPlan(indexes = "books_pkey")
+    List<Book> findByIdGreaterThanOrderByIdAsc(Long id, Limit limit);
+
+    // Full catalog as a server-side cursor, one row per book and category in book id order;
+    // must be consumed inside a transaction
+    @QueryHints(@QueryHint(name = AvailableHints.HINT_FETCH_SIZE, value = "2000"))
+    @Query("SELECT b.id AS id, b.title AS title, b.description AS description, b.imgUrl AS imgUrl, " +
+            "b.isbn AS isbn, b.publicationYear AS publicationYear, a.id AS authorId, a.name AS authorName, " +
+            "c.id AS categoryId, c.name AS categoryName, c.description AS categoryDescription " +
+            "FROM Book b LEFT JOIN b.author a LEFT JOIN b.categories c ORDER BY b.id")
+    @ExpectedPlan(indexes = {"books_pkey", "author_pkey", "book_categories_pkey", "category_pkey"})
+    Stream<ExportRow> streamExportRows();
+
+    // All book ids as a server-side cursor; must be consumed inside a transaction
+    @QueryHints(@QueryHint(name = AvailableHints.HINT_FETCH_SIZE, value = "5000"))
+    @Query("SELECT b.id FROM Book b")
+    @ExpectedPlan(scans = "books")
+    Stream<Long> streamAllIds();
+
+    // Which of the given book ids exist
+    @Query("SELECT b.id FROM Book b WHERE b.id IN :ids")
+    @ExpectedPlan(indexes = "books_pkey")
+    List<Long> findIdsByIdIn(@Param("ids") Collection<Long> ids);
+
+    // Which of the given books exist, with their current borrow; what the availability index answers, read from the tables
+    @Query("SELECT b.id AS id, bb.id AS currentBorrowId FROM Book b " +
+            "LEFT JOIN BorrowedBook bb ON bb.book = b AND bb.status IN ('BORROWED', 'OVERDUE') WHERE b.id IN :ids")
+    @ExpectedPlan(indexes = {"books_pkey", "ux_borrowed_books_current_book"})
+    List<BookAvailability> findAvailabilityByIdIn(@Param("ids") Collection<Long> ids);
+
+    // Ids of an author's books, to delete them one by one
+    @Query("SELECT b.id FROM Book b WHERE b.author.id = :authorId")
+    @ExpectedPlan(indexes = "ix_books_author")
+    List<Long> findIdsByAuthorId(@Param("authorId") Long authorId);
+
+    // Resolve ISBNs to ids without loading the books
+    @Query("SELECT b.id AS id, b.isbn AS isbn FROM Book b WHERE b.isbn IN :isbns")
+    @ExpectedPlan(indexes = "ukkibbepcitr0a3cpk3rfr7nihn")
+    List<BookIsbn> findIdsByIsbnIn(@Param("isbns") Collection<String> isbns);
+
+    // Searchable columns for the in-memory search index; must be consumed inside a transaction
+    @QueryHints(@QueryHint(name = AvailableHints.HINT_FETCH_SIZE, value = "2000"))
+    @Query("SELECT b.id AS id, b.title AS title, b.description AS description, " +
+            "b.publicationYear AS publicationYear, a.id AS authorId, a.name AS authorName " +
+            "FROM Book b LEFT JOIN b.author a")
+    @ExpectedPlan(scans = {"books", "author"})
+    Stream<SearchRow> streamSearchRows();
+
+    @QueryHints(@QueryHint(name = AvailableHints.HINT_FETCH_SIZE, value = "5000"))
+    @Query("SELECT b.id AS bookId, c.id AS categoryId, c.name AS categoryName FROM Book b JOIN b.categories c")
+    @ExpectedPlan(scans = {"books", "book_categories", "category"})
+    Stream<CategoryRow> streamCategoryRows();
+
+    // Titles with their borrow counts, archived borrows included, for the suggest index
+    @QueryHints(@QueryHint(name = AvailableHints.HINT_FETCH_SIZE, value = "5000"))
+    @Query(value = "SELECT b.id AS id, b.title AS title, b.author_id AS authorId, COALESCE(bb.borrows, 0) AS borrows " +
+            "FROM books b LEFT JOIN (SELECT book_id, COUNT(*) AS borrows FROM " +
+            "(SELECT book_id FROM borrowed_books UNION ALL SELECT book_id FROM borrowed_books_archive) x " +
+            "GROUP BY book_id) bb ON bb.book_id = b.id", nativeQuery = true)
+    @ExpectedPlan(scans = {"books", "borrowed_books", "borrowed_books_archive"})
+    Stream<TitleRow> streamTitleRows();
+
+    // Listing rows: book and author columns only, so no entities and no eager associations are loaded
+    @Query("SELECT b.id AS id, b.title AS title, b.description AS description, b.imgUrl AS imgUrl, " +
+            "b.isbn AS isbn, b.publicationYear AS publicationYear, a.id AS authorId, a.name AS authorName " +
+            "FROM Book b LEFT JOIN b.author a WHERE b.id > :after ORDER BY b.id")
+    @ExpectedPlan(indexes = "books_pkey")
+    List<BookRow> findRowsAfter(@Param("after") Long after, Limit limit);
+
+    @Query("SELECT b.id AS id, b.title AS title, b.description AS description, b.imgUrl AS imgUrl, " +
+            "b.isbn AS isbn, b.publicationYear AS publicationYear, a.id AS authorId, a.name AS authorName " +
+            "FROM Book b LEFT JOIN b.author a WHERE b.id IN :ids")
+    @ExpectedPlan(indexes = "books_pkey")
+    List<BookRow> findRowsByIdIn(@Param("ids") Collection<Long> ids);
+
+    @Query("SELECT b.id AS id, b.title AS title, b.description AS description, b.imgUrl AS imgUrl, " +
+            "b.isbn AS isbn, b.publicationYear AS publicationYear, a.id AS authorId, a.name AS authorName " +
+            "FROM Book b LEFT JOIN b.author a WHERE b.isbn = :isbn")
+    @ExpectedPlan(indexes = "ukkibbepcitr0a3cpk3rfr7nihn")
+    List<BookRow> findRowsByIsbn(@Param("isbn") String isbn);
+
+    @Query("SELECT b.id AS id, b.title AS title, b.description AS description, b.imgUrl AS imgUrl, " +
+            "b.isbn AS isbn, b.publicationYear AS publicationYear, a.id AS authorId, a.name AS authorName " +
+            "FROM Book b LEFT JOIN b.author a WHERE UPPER(b.title) LIKE UPPER(CONCAT('%', :title, '%')) ORDER BY b.id")
+    @ExpectedPlan(indexes = "ix_books_title_trgm")
+    List<BookRow> findRowsByTitleContaining(@Param("title") String title, Limit limit);
+
+    @Query("SELECT b.id AS id, b.title AS title, b.description AS description, b.imgUrl AS imgUrl, " +
+            "b.isbn AS isbn, b.publicationYear AS publicationYear, a.id AS authorId, a.name AS authorName " +
+            "FROM Book b JOIN b.author a WHERE a.id = :authorId ORDER BY b.id")
+    @ExpectedPlan(indexes = "ix_books_author")
+    List<BookRow> findRowsByAuthorId(@Param("authorId") Long authorId, Limit limit);
+
+    @Query("SELECT b.id AS id, b.title AS title, b.description AS description, b.imgUrl AS imgUrl, " +
+            "b.isbn AS isbn, b.publicationYear AS publicationYear, a.id AS authorId, a.name AS authorName " +
+            "FROM Book b LEFT JOIN b.author a WHERE b.publicationYear = :year ORDER BY b.id")
+    @ExpectedPlan(indexes = "books_pkey")
+    List<BookRow> findRowsByPublicationYear(@Param("year") Integer year, Limit limit);
+
+    @Query("SELECT b.id AS id, b.title AS title, b.description AS description, b.imgUrl AS imgUrl, " +
+            "b.isbn AS isbn, b.publicationYear AS publicationYear, a.id AS authorId, a.name AS authorName " +
+            "FROM Book b LEFT JOIN b.author a " +
+            "WHERE NOT EXISTS (SELECT bb FROM BorrowedBook bb WHERE bb.book = b AND bb.status IN ('BORROWED', 'OVERDUE')) ORDER BY b.id")
+    @ExpectedPlan(indexes = "ux_borrowed_books_current_book", scans = {"books", "author"})
+    List<BookRow> findActiveRows();
+
+    // Categories for a batch of listing rows, in one query
+    @Query("SELECT b.id AS bookId, c.id AS id, c.name AS name, c.description AS description " +
+            "FROM Book b JOIN b.categories c WHERE b.id IN :bookIds ORDER BY c.id")
+    @ExpectedPlan(indexes = "book_categories_pkey", scans = "category")
+    List<BookCategory> findCategoriesByBookIdIn(@Param("bookIds") Collection<Long> bookIds);
+
+    // Versions behind listing rows, for ETags. A change of a book's categories bumps the book's version,
+    // and a category's version only grows, so the sum changes whenever one of the categories does
+    @Query("SELECT b.id AS id, b.version AS version, a.id AS authorId, a.version AS authorVersion, " +
+            "(SELECT COALESCE(SUM(c.version), 0) FROM b.categories c) AS categoryVersions " +
+            "FROM Book b LEFT JOIN b.author a WHERE b.id > :after ORDER BY b.id")
+    @ExpectedPlan(indexes = {"books_pkey", "book_categories_pkey"}, scans = "category")
+    List<BookVersion> findVersionsAfter(@Param("after") Long after, Limit limit);
+
+    @Query("SELECT b.id AS id, b.version AS version, a.id AS authorId, a.version AS authorVersion, " +
+            "(SELECT COALESCE(SUM(c.version), 0) FROM b.categories c) AS categoryVersions " +
+            "FROM Book b LEFT JOIN b.author a WHERE b.id IN :ids")
+    @ExpectedPlan(indexes = {"books_pkey", "book_categories_pkey"}, scans = "category")
+    List<BookVersion> findVersionsByIdIn(@Param("ids") Collection<Long> ids);
+
+    interface BookRow {
+        Long getId();
+
+        String getTitle();
+
+        String getDescription();
+
+        String getImgUrl();
+
+        String getIsbn();
+
+        Integer getPublicationYear();
+
+        Long getAuthorId();
+
+        String getAuthorName();
+    }
+
+    interface ExportRow extends BookRow {
+        Long getCategoryId();
+
+        String getCategoryName();
+
+        String getCategoryDescription();
+    }
+
+    interface BookVersion {
+        Long getId();
+
+        Long getVersion();
+
+        Long getAuthorId();
+
+        Long getAuthorVersion();
+
+        Long getCategoryVersions();
+    }
+
+    interface BookCategory {
+        Long getBookId();
+
+        Long getId();
+
+        String getName();
+
+        String getDescription();
+    }
+
+    interface SearchRow {
+        Long getId();
+
+        String getTitle();
+
+        String getDescription();
+
+        Integer getPublicationYear();
+
+        Long getAuthorId();
+
+        String getAuthorName();
+    }
+
+    interface CategoryRow {
+        Long getBookId();
+
+        Long getCategoryId();
+
+        String getCategoryName();
+    }
+
+    interface TitleRow {
+        Long getId();
+
+        String getTitle();
+
+        Long getAuthorId();
+
+        long getBorrows();
+    }
+
+    interface BookAvailability {
+        Long getId();
+
+        // Null when the book is on the shelf
+        Long getCurrentBorrowId();
+    }
+
+    interface BookIsbn {
+        Long getId();
+
+        String getIsbn();
+    }
+
+    @Query("SELECT DISTINCT b FROM Book b WHERE NOT EXISTS (SELECT bb FROM BorrowedBook bb WHERE bb.book = b AND bb.status IN ('BORROWED', 'OVERDUE'))")
+    @ExpectedPlan(indexes = "ux_borrowed_books_current_book", scans = "books")
     List<Book> findActiveBooks();
 
-    @Query("SELECT DISTINCT b FROM Book b JOIN b.borrowedBooks bb WHERE bb.status = 'BORROWED'")
+    @Query("SELECT DISTINCT b FROM Book b JOIN b.borrowedBooks bb WHERE bb.status IN ('BORROWED', 'OVERDUE')")
+    @ExpectedPlan(indexes = "ux_borrowed_books_current_book", scans = "books")
     List<Book> findCurrentlyBorrowedBooks();
 }
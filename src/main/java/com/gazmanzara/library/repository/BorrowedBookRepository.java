@@ -1,36 +1,231 @@
 package com.gazmanzara.library.repository;
 
+import com.gazmanzara.library.dto.BorrowRecordDTO;
 import com.gazmanzara.library.model.BorrowedBook;
 import com.gazmanzara.library.model.BorrowStatus;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.AvailableHints;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 public interface BorrowedBookRepository extends JpaRepository<BorrowedBook, Long> {
 
     // Find all borrowed books for a specific member
+    @ExpectedPlan(indexes = "ix_borrowed_books_member_status")
     List<BorrowedBook> findByMemberIdAndStatus(Long memberId, BorrowStatus status);
 
     // Find current borrowed book for a specific book (if any)
+    @ExpectedPlan(indexes = "ix_borrowed_books_book_status")
     Optional<BorrowedBook> findByBookIdAndStatus(Long bookId, BorrowStatus status);
 
     // Find all borrowed books that are due before a certain date
+    @ExpectedPlan(indexes = "ix_borrowed_books_status_due_date")
     List<BorrowedBook> findByStatusAndDueDateBefore(BorrowStatus status, LocalDateTime date);
 
+    // Current borrows, whether or not the sweep has marked them overdue yet, that are due before the given time
+    @Query("SELECT bb FROM BorrowedBook bb WHERE bb.status IN ('BORROWED', 'OVERDUE') AND bb.dueDate < :date " +
+            "ORDER BY bb.dueDate")
+    @ExpectedPlan(indexes = "ux_borrowed_books_current_book")
+    List<BorrowedBook> findCurrentDueBefore(@Param("date") LocalDateTime date);
+
     // Check if a book is currently borrowed
-    boolean existsByBookIdAndStatus(Long bookId, BorrowStatus status);
+    @Query("SELECT COUNT(bb) > 0 FROM BorrowedBook bb WHERE bb.book.id = :bookId AND bb.status IN ('BORROWED', 'OVERDUE')")
+    @ExpectedPlan(indexes = "ux_borrowed_books_current_book")
+    boolean existsCurrentByBookId(@Param("bookId") Long bookId);
+
+    // Check if a member has any current borrow
+    @Query("SELECT COUNT(bb) > 0 FROM BorrowedBook bb WHERE bb.member.id = :memberId AND bb.status IN ('BORROWED', 'OVERDUE')")
+    @ExpectedPlan(indexes = "ix_borrowed_books_member_status")
+    boolean existsCurrentByMemberId(@Param("memberId") Long memberId);
+
+    // Count a member's current borrows
+    @Query("SELECT COUNT(bb) FROM BorrowedBook bb WHERE bb.member.id = :memberId AND bb.status IN ('BORROWED', 'OVERDUE')")
+    @ExpectedPlan(indexes = "ix_borrowed_books_member_status")
+    long countCurrentByMemberId(@Param("memberId") Long memberId);
+
+    // Check if a member has a current borrow that was due before the given time; also true between the
+    // due date and the next overdue sweep
+    @Query("SELECT COUNT(bb) > 0 FROM BorrowedBook bb WHERE bb.member.id = :memberId " +
+            "AND bb.status IN ('BORROWED', 'OVERDUE') AND bb.dueDate < :now")
+    @ExpectedPlan(indexes = "ix_borrowed_books_member_status")
+    boolean existsOverdueByMemberId(@Param("memberId") Long memberId, @Param("now") LocalDateTime now);
+
+    // Status of a borrow, locked until the transaction ends
+    @Query(value = "SELECT id, book_id AS bookId, member_id AS memberId, status FROM borrowed_books " +
+            "WHERE id = :id FOR UPDATE", nativeQuery = true)
+    @ExpectedPlan(indexes = "borrowed_books_pkey")
+    Optional<BorrowState> findStateByIdForUpdate(@Param("id") Long id);
+
+    @Modifying
+    @Query("UPDATE BorrowedBook bb SET bb.status = :status, bb.returnDate = :returnDate WHERE bb.id = :id")
+    @ExpectedPlan(indexes = "borrowed_books_pkey")
+    int updateStatus(@Param("id") Long id, @Param("status") BorrowStatus status,
+                     @Param("returnDate") LocalDateTime returnDate);
+
+    // Books currently on loan to a member
+    @Query("SELECT bb.book.id FROM BorrowedBook bb WHERE bb.member.id = :memberId AND bb.status IN ('BORROWED', 'OVERDUE')")
+    @ExpectedPlan(indexes = "ix_borrowed_books_member_status")
+    List<Long> findCurrentBookIdsForMember(@Param("memberId") Long memberId);
+
+    // All current borrows as (book, borrow) id pairs; must be consumed inside a transaction
+    @QueryHints(@QueryHint(name = AvailableHints.HINT_FETCH_SIZE, value = "5000"))
+    @Query("SELECT bb.book.id AS bookId, bb.id AS borrowId FROM BorrowedBook bb WHERE bb.status IN ('BORROWED', 'OVERDUE')")
+    @ExpectedPlan(indexes = "ux_borrowed_books_current_book")
+    Stream<CurrentBorrow> streamCurrentBorrows();
+
+    // Current borrows for a batch of books, as (book, borrow) id pairs
+    @Query("SELECT bb.book.id AS bookId, bb.id AS borrowId FROM BorrowedBook bb " +
+            "WHERE bb.book.id IN :bookIds AND bb.status IN ('BORROWED', 'OVERDUE')")
+    @ExpectedPlan(indexes = "ux_borrowed_books_current_book")
+    List<CurrentBorrow> findCurrentBorrowsByBookIdIn(@Param("bookIds") Collection<Long> bookIds);
+
+    // Find the members currently holding a book (normally at most one)
+    @Query("SELECT bb.member.id FROM BorrowedBook bb WHERE bb.book.id = :bookId AND bb.status IN ('BORROWED', 'OVERDUE')")
+    @ExpectedPlan(indexes = "ux_borrowed_books_current_book")
+    List<Long> findCurrentBorrowerIds(@Param("bookId") Long bookId);
+
+    // Members of a bounded set that hold a borrow due before the given time
+    @Query("SELECT DISTINCT bb.member.id FROM BorrowedBook bb " +
+            "WHERE bb.member.id IN :memberIds AND bb.status IN ('BORROWED', 'OVERDUE') AND bb.dueDate < :now")
+    @ExpectedPlan(indexes = "ix_borrowed_books_member_status")
+    List<Long> findMemberIdsWithOverdueIn(@Param("memberIds") Collection<Long> memberIds, @Param("now") LocalDateTime now);
+
+    // Which of the given borrow ids exist
+    @Query("SELECT bb.id FROM BorrowedBook bb WHERE bb.id IN :ids")
+    @ExpectedPlan(indexes = "borrowed_books_pkey")
+    List<Long> findIdsByIdIn(@Param("ids") Collection<Long> ids);
 
     // Find all borrowed books for a member that are currently borrowed
-    @Query("SELECT bb FROM BorrowedBook bb WHERE bb.member.id = :memberId AND bb.status = 'BORROWED'")
+    @Query("SELECT bb FROM BorrowedBook bb WHERE bb.member.id = :memberId AND bb.status IN ('BORROWED', 'OVERDUE')")
+    @ExpectedPlan(indexes = "ix_borrowed_books_member_status")
     List<BorrowedBook> findCurrentBorrowsForMember(@Param("memberId") Long memberId);
 
-    // Find all borrowed books for a book (borrowing history)
+    // Find all borrowed books for a book (borrowing history, without archived borrows)
+    @ExpectedPlan(indexes = "ix_borrowed_books_book_status")
     List<BorrowedBook> findByBookIdOrderByBorrowDateDesc(Long bookId);
 
     // Find all borrowed books by status
+    @ExpectedPlan(indexes = "ux_borrowed_books_current_book")
     List<BorrowedBook> findByStatus(BorrowStatus status);
+
+    // Keyset pages: rows after the given id, in id order
+    @ExpectedPlan(indexes = "borrowed_books_pkey")
+    List<BorrowedBook> findByIdGreaterThanOrderByIdAsc(Long id, Limit limit);
+
+    @ExpectedPlan(indexes = "borrowed_books_pkey")
+    List<BorrowedBook> findByStatusAndIdGreaterThanOrderByIdAsc(BorrowStatus status, Long id, Limit limit);
+
+    // Full borrow ledger as a server-side cursor of flat rows; must be consumed inside a transaction
+    @QueryHints(@QueryHint(name = AvailableHints.HINT_FETCH_SIZE, value = "1000"))
+    @Query("SELECT new com.gazmanzara.library.dto.BorrowRecordDTO(" +
+            "bb.id, bb.book.id, bb.member.id, bb.borrowDate, bb.dueDate, bb.returnDate, bb.status) " +
+            "FROM BorrowedBook bb ORDER BY bb.id")
+    @ExpectedPlan(scans = "borrowed_books")
+    Stream<BorrowRecordDTO> streamAllRecords();
+
+    // Aggregate circulation counts in a single pass over the current borrows
+    @Query("SELECT COUNT(DISTINCT bb.book.id) AS borrowedBooks, " +
+            "COUNT(DISTINCT bb.member.id) AS activeMembers, " +
+            "COUNT(DISTINCT CASE WHEN bb.dueDate < :now THEN bb.member.id END) AS membersWithOverdue " +
+            "FROM BorrowedBook bb WHERE bb.status IN ('BORROWED', 'OVERDUE')")
+    @ExpectedPlan(indexes = "ux_borrowed_books_current_book")
+    CirculationCounts countCurrentCirculation(@Param("now") LocalDateTime now);
+
+    // Most borrowed books, ranked in the database and cut to the requested size; archived borrows count too
+    @Query(value = "SELECT b.id AS id, b.title AS title, a.name AS author, COUNT(*) AS borrowCount " +
+            "FROM (SELECT book_id FROM borrowed_books UNION ALL SELECT book_id FROM borrowed_books_archive) bb " +
+            "JOIN books b ON b.id = bb.book_id LEFT JOIN author a ON a.id = b.author_id " +
+            "GROUP BY b.id, b.title, a.name ORDER BY COUNT(*) DESC, b.id", nativeQuery = true)
+    @ExpectedPlan(scans = {"borrowed_books", "borrowed_books_archive", "books", "author"})
+    List<PopularBook> findPopularBooks(Limit limit);
+
+    @Query(value = "SELECT b.id AS id, b.title AS title, a.name AS author, COUNT(*) AS borrowCount " +
+            "FROM (SELECT book_id FROM borrowed_books WHERE borrow_date >= :since " +
+            "UNION ALL SELECT book_id FROM borrowed_books_archive WHERE borrow_date >= :since) bb " +
+            "JOIN books b ON b.id = bb.book_id LEFT JOIN author a ON a.id = b.author_id " +
+            "GROUP BY b.id, b.title, a.name ORDER BY COUNT(*) DESC, b.id", nativeQuery = true)
+    @ExpectedPlan(indexes = {"ix_borrowed_books_borrow_date", "ix_borrowed_books_archive_borrow_date"})
+    List<PopularBook> findPopularBooksSince(@Param("since") LocalDateTime since, Limit limit);
+
+    // Members with the most borrows, ranked in the database and cut to the requested size; archived borrows count too
+    @Query(value = "SELECT m.id AS id, m.first_name AS firstName, m.last_name AS lastName, COUNT(*) AS borrowCount " +
+            "FROM (SELECT member_id FROM borrowed_books UNION ALL SELECT member_id FROM borrowed_books_archive) bb " +
+            "JOIN members m ON m.id = bb.member_id " +
+            "GROUP BY m.id, m.first_name, m.last_name ORDER BY COUNT(*) DESC, m.id", nativeQuery = true)
+    @ExpectedPlan(scans = {"borrowed_books", "borrowed_books_archive", "members"})
+    List<TopBorrower> findTopBorrowers(Limit limit);
+
+    @Query(value = "SELECT m.id AS id, m.first_name AS firstName, m.last_name AS lastName, COUNT(*) AS borrowCount " +
+            "FROM (SELECT member_id FROM borrowed_books WHERE borrow_date >= :since " +
+            "UNION ALL SELECT member_id FROM borrowed_books_archive WHERE borrow_date >= :since) bb " +
+            "JOIN members m ON m.id = bb.member_id " +
+            "GROUP BY m.id, m.first_name, m.last_name ORDER BY COUNT(*) DESC, m.id", nativeQuery = true)
+    @ExpectedPlan(indexes = {"ix_borrowed_books_borrow_date", "ix_borrowed_books_archive_borrow_date"})
+    List<TopBorrower> findTopBorrowersSince(@Param("since") LocalDateTime since, Limit limit);
+
+    // Current borrow counts for a bounded set of members
+    @Query("SELECT bb.member.id AS memberId, COUNT(bb.id) AS borrowCount FROM BorrowedBook bb " +
+            "WHERE bb.member.id IN :memberIds AND bb.status IN ('BORROWED', 'OVERDUE') GROUP BY bb.member.id")
+    @ExpectedPlan(indexes = "ix_borrowed_books_member_status")
+    List<MemberBorrowCount> countCurrentBorrowsByMember(@Param("memberIds") Collection<Long> memberIds);
+
+    interface BorrowState {
+        Long getId();
+
+        Long getBookId();
+
+        Long getMemberId();
+
+        String getStatus();
+    }
+
+    interface CurrentBorrow {
+        Long getBookId();
+
+        Long getBorrowId();
+    }
+
+    interface PopularBook {
+        Long getId();
+
+        String getTitle();
+
+        String getAuthor();
+
+        long getBorrowCount();
+    }
+
+    interface TopBorrower {
+        Long getId();
+
+        String getFirstName();
+
+        String getLastName();
+
+        long getBorrowCount();
+    }
+
+    interface MemberBorrowCount {
+        Long getMemberId();
+
+        long getBorrowCount();
+    }
+
+    interface CirculationCounts {
+        long getBorrowedBooks();
+
+        long getActiveMembers();
+
+        long getMembersWithOverdue();
+    }
 }
\ No newline at end of file
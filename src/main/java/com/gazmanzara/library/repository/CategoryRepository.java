@@ -1,15 +1,42 @@
 package com.gazmanzara.library.repository;
 
 import com.gazmanzara.library.model.Category;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
 @Repository
 public interface CategoryRepository extends JpaRepository<Category, Long> {
+    // Categories are few enough that every lookup reads the whole table
+    @ExpectedPlan(scans = "category")
     boolean existsByName(String name);
+
+    // Served from the query cache when hibernate.cache.use_query_cache is on
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"))
+    @ExpectedPlan(scans = "category")
     Optional<Category> findByName(String name);
+
+    @ExpectedPlan(scans = "category")
     List<Category> findByNameContainingIgnoreCase(String name);
+
+    // Resolves a batch of exact names to ids without loading the entities
+    @ExpectedPlan(scans = "category")
+    List<CategoryName> findByNameIn(Collection<String> names);
+
+    // Keyset page: rows after the given id, in id order
+    @ExpectedPlan(scans = "category")
+    List<Category> findByIdGreaterThanOrderByIdAsc(Long id, Limit limit);
+
+    interface CategoryName {
+        Long getId();
+
+        String getName();
+    }
 }
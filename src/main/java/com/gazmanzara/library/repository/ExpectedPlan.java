@@ -0,0 +1,24 @@
+package com.gazmanzara.library.repository;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * The plan PostgreSQL is expected to choose for a repository query on a
+ * database filled by the load-test DatasetGenerator, checked by
+ * QueryPlanTests. The statements the query runs must read every index
+ * listed, and may scan sequentially only the tables listed; a query that
+ * reads a whole table by design lists it under {@link #scans()}.
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface ExpectedPlan {
+
+    String[] indexes() default {};
+
+    String[] scans() default {};
+}
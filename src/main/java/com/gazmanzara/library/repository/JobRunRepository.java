@@ -0,0 +1,9 @@
+package com.gazmanzara.library.repository;
+
+import com.gazmanzara.library.model.JobRun;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface JobRunRepository extends JpaRepository<JobRun, String> {
+}
@@ -0,0 +1,42 @@
+package com.gazmanzara.library.repository;
+
+import com.gazmanzara.library.model.LibraryStatistics;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Optional;
+
+@Repository
+public interface LibraryStatisticsRepository extends JpaRepository<LibraryStatistics, Long> {
+
+    // Lock the counters row so that reconciliation and event updates serialize
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT s FROM LibraryStatistics s WHERE s.id = :id")
+    @ExpectedPlan(scans = "library_statistics")
+    Optional<LibraryStatistics> findByIdForUpdate(@Param("id") Long id);
+
+    // Apply deltas to the counters in place, without reading the row first
+    @Modifying
+    @Query("UPDATE LibraryStatistics s SET " +
+            "s.totalBooks = s.totalBooks + :booksDelta, " +
+            "s.borrowedBooks = s.borrowedBooks + :borrowedDelta, " +
+            "s.totalMembers = s.totalMembers + :membersDelta, " +
+            "s.activeMembers = s.activeMembers + :activeDelta " +
+            "WHERE s.id = :id")
+    @ExpectedPlan(scans = "library_statistics")
+    int adjust(@Param("id") Long id,
+               @Param("booksDelta") long booksDelta,
+               @Param("borrowedDelta") long borrowedDelta,
+               @Param("membersDelta") long membersDelta,
+               @Param("activeDelta") long activeDelta);
+
+    @Modifying
+    @Query("UPDATE LibraryStatistics s SET s.membersWithOverdue = :count WHERE s.id = :id")
+    @ExpectedPlan(scans = "library_statistics")
+    int updateMembersWithOverdue(@Param("id") Long id, @Param("count") long count);
+}
@@ -1,6 +1,7 @@
 package com.gazmanzara.library.repository;
 
 import com.gazmanzara.library.model.Member;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
 
@@ -9,7 +10,16 @@ import java.util.Optional;
 
 @Repository
 public interface MemberRepository extends JpaRepository<Member, Long> {
+    @ExpectedPlan(indexes = "uk9d30a9u1qpg8eou0otgkwrp5d")
     boolean existsByEmail(String email);
+
+    @ExpectedPlan(indexes = "uk9d30a9u1qpg8eou0otgkwrp5d")
     Optional<Member> findByEmail(String email);
+
+    @ExpectedPlan(indexes = {"ix_members_first_name_trgm", "ix_members_last_name_trgm"})
     List<Member> findByFirstNameContainingIgnoreCaseOrLastNameContainingIgnoreCase(String firstName, String lastName);
+
+    // Keyset page: rows after the given id, in id order
+    @ExpectedPlan(indexes = "members_pkey")
+    List<Member> findByIdGreaterThanOrderByIdAsc(Long id, Limit limit);
 } 
\ No newline at end of file
@@ -0,0 +1,58 @@
+package com.gazmanzara.library.repository;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.Tuple;
+import jakarta.persistence.TupleElement;
+import jakarta.persistence.TypedQuery;
+import org.springframework.stereotype.Repository;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Reads only the columns behind a sparse fieldset. The select list is built
+ * from expressions the callers declare as constants, never from request
+ * input, and rows come back as maps from alias to value, so no entities or
+ * eager associations are loaded.
+ */
+@Repository
+public class SparseRowRepository {
+
+    private final EntityManager entityManager;
+
+    public SparseRowRepository(EntityManager entityManager) {
+        this.entityManager = entityManager;
+    }
+
+    /**
+     * @param from       the JPQL from clause, with any joins the columns need
+     * @param columns    select expressions by alias, in output order
+     * @param where      condition with named parameters
+     * @param orderBy    order by expression, or null
+     * @param maxResults row limit, or 0 for none
+     */
+    public List<Map<String, Object>> findRows(String from, Map<String, String> columns, String where,
+                                              Map<String, ?> parameters, String orderBy, int maxResults) {
+        String select = columns.entrySet().stream()
+                .map(column -> column.getValue() + " AS " + column.getKey())
+                .collect(Collectors.joining(", "));
+        TypedQuery<Tuple> query = entityManager.createQuery("SELECT " + select + " FROM " + from + " WHERE " + where
+                + (orderBy != null ? " ORDER BY " + orderBy : ""), Tuple.class);
+        parameters.forEach(query::setParameter);
+        if (maxResults > 0) {
+            query.setMaxResults(maxResults);
+        }
+        List<Map<String, Object>> rows = new ArrayList<>();
+        for (Tuple tuple : query.getResultList()) {
+            Map<String, Object> row = new LinkedHashMap<>();
+            for (TupleElement<?> element : tuple.getElements()) {
+                row.put(element.getAlias(), tuple.get(element));
+            }
+            rows.add(row);
+        }
+        return rows;
+    }
+}
@@ -0,0 +1,225 @@
+package com.gazmanzara.library.service;
+
+import com.gazmanzara.library.model.Book;
+import com.gazmanzara.library.repository.BookRepository;
+import com.gazmanzara.library.repository.BorrowedBookRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * In-memory view of which books exist and which are currently on loan.
+ * <p>
+ * Book ids are dense identity values, so both structures are addressed
+ * directly by id: one bitset of known books, one of borrowed books, and a
+ * primitive array mapping a book id to its current borrow id (0 = none).
+ * The index is loaded at startup, updated after the borrow, return and
+ * catalog write paths commit, and rebuilt periodically to pick up changes
+ * made by other instances. Writes that commit while a rebuild reads the
+ * tables are replayed onto the rebuilt index, so none is lost to the swap.
+ */
+@Service
+public class BookAvailabilityIndex {
+
+    private static final Logger log = LoggerFactory.getLogger(BookAvailabilityIndex.class);
+
+    private static final long NO_BORROW = 0L;
+
+    private final BookRepository bookRepository;
+    private final BorrowedBookRepository borrowedBookRepository;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private State state = new State();
+    // Writes made while a rebuild reads the tables, applied again to the rebuilt index
+    private List<Consumer<State>> pending;
+    private volatile boolean loaded;
+
+    public BookAvailabilityIndex(BookRepository bookRepository, BorrowedBookRepository borrowedBookRepository) {
+        this.bookRepository = bookRepository;
+        this.borrowedBookRepository = borrowedBookRepository;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(fixedDelayString = "${library.availability.refresh-interval:PT10M}",
+            initialDelayString = "${library.availability.refresh-interval:PT10M}")
+    // Not read-only: with read replicas configured, that would build the index from a lagging copy
+    @Transactional
+    public void rebuild() {
+        lock.writeLock().lock();
+        try {
+            pending = new ArrayList<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        try {
+            State rebuilt = new State();
+            try (Stream<Long> ids = bookRepository.streamAllIds()) {
+                ids.forEach(id -> rebuilt.knownBooks.set(slot(id)));
+            }
+            try (Stream<BorrowedBookRepository.CurrentBorrow> current = borrowedBookRepository.streamCurrentBorrows()) {
+                current.forEach(borrow -> rebuilt.borrow(slot(borrow.getBookId()), borrow.getBorrowId()));
+            }
+
+            lock.writeLock().lock();
+            try {
+                pending.forEach(update -> update.accept(rebuilt));
+                state = rebuilt;
+                loaded = true;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            log.info("Availability index loaded: {} books, {} on loan",
+                    rebuilt.knownBooks.cardinality(), rebuilt.borrowedBooks.cardinality());
+        } finally {
+            lock.writeLock().lock();
+            try {
+                pending = null;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    public boolean exists(long bookId) {
+        lock.readLock().lock();
+        try {
+            return state.knownBooks.get(slot(bookId));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public boolean isBorrowed(long bookId) {
+        lock.readLock().lock();
+        try {
+            return state.borrowedBooks.get(slot(bookId));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Current borrow id for the book, or null when it is available
+    public Long currentBorrowId(long bookId) {
+        lock.readLock().lock();
+        try {
+            int slot = slot(bookId);
+            if (!state.borrowedBooks.get(slot)) {
+                return null;
+            }
+            return state.currentBorrowIds[slot];
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Resolves the availability flags serialized with the given books from
+     * the index, so that serializing them does not walk their borrow history.
+     * Books are left untouched until the index has been loaded.
+     */
+    public void apply(Book book) {
+        if (loaded && book.getId() != null) {
+            book.resolveAvailability(currentBorrowId(book.getId()));
+        }
+    }
+
+    public void apply(Collection<Book> books) {
+        books.forEach(this::apply);
+    }
+
+    // The methods below take effect once the current transaction commits
+
+    public void bookAdded(long bookId) {
+        AfterCommit.run(() -> write(current -> current.knownBooks.set(slot(bookId))));
+    }
+
+    public void bookRemoved(long bookId) {
+        AfterCommit.run(() -> write(current -> {
+            int slot = slot(bookId);
+            current.knownBooks.clear(slot);
+            current.clearBorrow(slot);
+        }));
+    }
+
+    public void borrowed(long bookId, long borrowId) {
+        AfterCommit.run(() -> write(current -> current.borrow(slot(bookId), borrowId)));
+    }
+
+    public void returned(long bookId, long borrowId) {
+        AfterCommit.run(() -> write(current -> {
+            int slot = slot(bookId);
+            if (slot < current.currentBorrowIds.length && current.currentBorrowIds[slot] == borrowId) {
+                current.clearBorrow(slot);
+            }
+        }));
+    }
+
+    // The book's current borrow was removed without a return, e.g. with its member
+    public void bookReleased(long bookId) {
+        AfterCommit.run(() -> write(current -> current.clearBorrow(slot(bookId))));
+    }
+
+    private void write(Consumer<State> update) {
+        lock.writeLock().lock();
+        try {
+            update.accept(state);
+            if (pending != null) {
+                pending.add(update);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private static long[] ensureCapacity(long[] array, int slot) {
+        if (slot < array.length) {
+            return array;
+        }
+        return Arrays.copyOf(array, Math.max(slot + 1, array.length + (array.length >> 1)));
+    }
+
+    // Known books, books on loan, and a primitive array mapping a book id to its current borrow id (0 = none)
+    private static final class State {
+        final BitSet knownBooks = new BitSet();
+        final BitSet borrowedBooks = new BitSet();
+        long[] currentBorrowIds = new long[0];
+
+        void borrow(int slot, long borrowId) {
+            currentBorrowIds = ensureCapacity(currentBorrowIds, slot);
+            currentBorrowIds[slot] = borrowId;
+            borrowedBooks.set(slot);
+        }
+
+        void clearBorrow(int slot) {
+            borrowedBooks.clear(slot);
+            if (slot < currentBorrowIds.length) {
+                currentBorrowIds[slot] = NO_BORROW;
+            }
+        }
+    }
+
+    private static int slot(long bookId) {
+        if (bookId < 0 || bookId > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Book id out of range for the availability index: " + bookId);
+        }
+        return (int) bookId;
+    }
+}
@@ -0,0 +1,436 @@
+package com.gazmanzara.library.service;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.csv.CsvMapper;
+import com.fasterxml.jackson.dataformat.csv.CsvSchema;
+import com.gazmanzara.library.dto.BookImportReport;
+import com.gazmanzara.library.model.Author;
+import com.gazmanzara.library.model.Book;
+import com.gazmanzara.library.model.Category;
+import com.gazmanzara.library.repository.AuthorRepository;
+import com.gazmanzara.library.repository.BookRepository;
+import com.gazmanzara.library.repository.CategoryRepository;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.NestedExceptionUtils;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Bulk book import from streamed CSV or JSON. Rows are read as they arrive
+ * and processed in chunks: every chunk checks its ISBNs and resolves its
+ * author and category names with one set-based query each, reserves its book
+ * ids from the books sequence in one round trip and writes books and their
+ * categories with JDBC batch inserts, all in one transaction per chunk.
+ * Rows that fail validation are reported and skipped; a chunk the database
+ * rejects is reported row by row and the import carries on.
+ */
+@Service
+public class BookImportService {
+
+    private static final Logger log = LoggerFactory.getLogger(BookImportService.class);
+
+    static final int CHUNK_SIZE = 1000;
+
+    private static final String RESERVE_IDS_SQL =
+            "SELECT nextval(pg_get_serial_sequence('books', 'id')) FROM generate_series(1, ?)";
+    private static final String INSERT_BOOK_SQL =
+            "INSERT INTO books (id, title, description, img_url, isbn, publication_year, author_id) " +
+                    "VALUES (?, ?, ?, ?, ?, ?, ?)";
+    private static final String INSERT_BOOK_CATEGORY_SQL =
+            "INSERT INTO book_categories (book_id, category_id) VALUES (?, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final BookRepository bookRepository;
+    private final AuthorRepository authorRepository;
+    private final CategoryRepository categoryRepository;
+    private final LibraryStatisticsService statisticsService;
+    private final BookAvailabilityIndex availabilityIndex;
+    private final BookSearchIndex searchIndex;
+    private final SuggestIndex suggestIndex;
+    private final EntityManagerFactory entityManagerFactory;
+    private final ObjectMapper objectMapper;
+    private final TransactionTemplate transaction;
+
+    /**
+     * @param createAuthors    create authors that do not exist yet instead of rejecting their rows
+     * @param createCategories likewise for categories
+     */
+    public record Options(boolean createAuthors, boolean createCategories) {
+    }
+
+    public BookImportService(
+            JdbcTemplate jdbcTemplate,
+            BookRepository bookRepository,
+            AuthorRepository authorRepository,
+            CategoryRepository categoryRepository,
+            LibraryStatisticsService statisticsService,
+            BookAvailabilityIndex availabilityIndex,
+            BookSearchIndex searchIndex,
+            SuggestIndex suggestIndex,
+            EntityManagerFactory entityManagerFactory,
+            ObjectMapper objectMapper,
+            PlatformTransactionManager transactionManager) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.bookRepository = bookRepository;
+        this.authorRepository = authorRepository;
+        this.categoryRepository = categoryRepository;
+        this.statisticsService = statisticsService;
+        this.availabilityIndex = availabilityIndex;
+        this.searchIndex = searchIndex;
+        this.suggestIndex = suggestIndex;
+        this.entityManagerFactory = entityManagerFactory;
+        this.objectMapper = objectMapper;
+        this.transaction = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * Imports CSV with a header row. Columns: title, isbn, description,
+     * imgUrl, publicationYear, author (name) and categories (names separated
+     * by {@code |}); unknown columns are ignored.
+     */
+    public BookImportReport importCsv(InputStream in, Options options) {
+        Import run = new Import(options);
+        CsvSchema schema = CsvSchema.emptySchema().withHeader();
+        try (MappingIterator<Map<String, String>> rows = new CsvMapper()
+                .readerForMapOf(String.class).with(schema).readValues(in)) {
+            while (rows.hasNextValue()) {
+                run.add(Row.fromCsv(rows.nextValue()));
+            }
+        } catch (IOException ex) {
+            run.abort(ex);
+        }
+        return run.finish();
+    }
+
+    /**
+     * Imports a JSON array of objects with the fields of the CSV columns;
+     * {@code categories} is an array of names.
+     */
+    public BookImportReport importJson(InputStream in, Options options) {
+        Import run = new Import(options);
+        try (JsonParser parser = objectMapper.getFactory().createParser(in)) {
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                throw new IOException("Expected a JSON array of books");
+            }
+            while (parser.nextToken() == JsonToken.START_OBJECT) {
+                run.add(Row.fromJson(objectMapper.readTree(parser)));
+            }
+        } catch (IOException ex) {
+            run.abort(ex);
+        }
+        return run.finish();
+    }
+
+    // State of one import: names and imported ISBNs already seen, the chunk being filled and the report
+    private final class Import {
+        private final Options options;
+        private final BookImportReport report = new BookImportReport();
+        private final Map<String, Long> authorIds = new HashMap<>();
+        private final Map<String, Long> categoryIds = new HashMap<>();
+        private final Set<String> seenIsbns = new HashSet<>();
+        private final long started = System.nanoTime();
+        private List<Row> chunk = new ArrayList<>(CHUNK_SIZE);
+        // Names created by the chunk in progress, counted once it commits
+        private int authorsCreated;
+        private int categoriesCreated;
+
+        Import(Options options) {
+            this.options = options;
+        }
+
+        void add(Row row) {
+            row.number = ++report.received;
+            chunk.add(row);
+            if (chunk.size() == CHUNK_SIZE) {
+                flush();
+            }
+        }
+
+        void abort(Exception ex) {
+            report.aborted = "Input could not be read after row " + report.received + ": " + ex.getMessage();
+        }
+
+        BookImportReport finish() {
+            flush();
+            // Rows of a chunk are rejected in several passes
+            report.errors.sort(Comparator.comparingLong(BookImportReport.RowError::row));
+            report.elapsedMillis = (System.nanoTime() - started) / 1_000_000;
+            log.info("Book import: {} rows, {} imported, {} rejected in {} ms{}", report.received, report.imported,
+                    report.rejected, report.elapsedMillis, report.aborted != null ? " (input cut short)" : "");
+            return report;
+        }
+
+        private void flush() {
+            if (chunk.isEmpty()) {
+                return;
+            }
+            List<Row> rows = chunk;
+            chunk = new ArrayList<>(CHUNK_SIZE);
+
+            List<Row> valid = new ArrayList<>(rows.size());
+            Set<String> chunkIsbns = new HashSet<>();
+            for (Row row : rows) {
+                String error = row.validate();
+                if (error == null && (seenIsbns.contains(row.isbn) || !chunkIsbns.add(row.isbn))) {
+                    error = "Duplicate ISBN in this import";
+                }
+                if (error != null) {
+                    report.reject(row.number, row.isbn, error);
+                } else {
+                    valid.add(row);
+                }
+            }
+            if (valid.isEmpty()) {
+                return;
+            }
+
+            Map<String, Long> newAuthorIds = new HashMap<>();
+            Map<String, Long> newCategoryIds = new HashMap<>();
+            authorsCreated = 0;
+            categoriesCreated = 0;
+            try {
+                report.imported += transaction.execute(status -> insert(valid, newAuthorIds, newCategoryIds));
+            } catch (DataAccessException ex) {
+                String reason = "Chunk rejected by the database: " + NestedExceptionUtils.getMostSpecificCause(ex).getMessage();
+                valid.forEach(row -> report.reject(row.number, row.isbn, reason));
+                return;
+            }
+            valid.stream().filter(row -> row.error != null).forEach(row -> report.reject(row.number, row.isbn, row.error));
+            // Only names and ISBNs whose rows committed are remembered for the next chunks
+            valid.stream().filter(row -> row.error == null).forEach(row -> seenIsbns.add(row.isbn));
+            authorIds.putAll(newAuthorIds);
+            categoryIds.putAll(newCategoryIds);
+            report.authorsCreated += authorsCreated;
+            report.categoriesCreated += categoriesCreated;
+        }
+
+        // Runs in the chunk's transaction; returns the number of books written
+        private int insert(List<Row> rows, Map<String, Long> newAuthorIds, Map<String, Long> newCategoryIds) {
+            Set<String> existingIsbns = bookRepository.findIdsByIsbnIn(rows.stream().map(row -> row.isbn).toList())
+                    .stream().map(BookRepository.BookIsbn::getIsbn).collect(Collectors.toSet());
+
+            Map<String, Long> authors = resolve(rows.stream().map(row -> row.author).collect(Collectors.toSet()),
+                    authorIds, newAuthorIds, names -> authorRepository.findByNameIn(names).stream()
+                            .collect(Collectors.toMap(AuthorRepository.AuthorName::getName, AuthorRepository.AuthorName::getId)),
+                    "author", options.createAuthors());
+            Map<String, Long> categories = resolve(rows.stream().flatMap(row -> row.categories.stream()).collect(Collectors.toSet()),
+                    categoryIds, newCategoryIds, names -> categoryRepository.findByNameIn(names).stream()
+                            .collect(Collectors.toMap(CategoryRepository.CategoryName::getName, CategoryRepository.CategoryName::getId)),
+                    "category", options.createCategories());
+
+            // Rejections are reported by the caller once the chunk has committed
+            List<Row> ready = new ArrayList<>(rows.size());
+            for (Row row : rows) {
+                row.error = existingIsbns.contains(row.isbn) ? "ISBN already exists"
+                        : !authors.containsKey(row.author) ? "Unknown author: " + row.author
+                        : row.categories.stream().filter(name -> !categories.containsKey(name)).findFirst()
+                        .map(name -> "Unknown category: " + name).orElse(null);
+                if (row.error == null) {
+                    ready.add(row);
+                }
+            }
+            if (ready.isEmpty()) {
+                return 0;
+            }
+
+            List<Long> ids = jdbcTemplate.queryForList(RESERVE_IDS_SQL, Long.class, ready.size());
+            for (int i = 0; i < ready.size(); i++) {
+                ready.get(i).id = ids.get(i);
+            }
+            jdbcTemplate.batchUpdate(INSERT_BOOK_SQL, ready, ready.size(), (ps, row) -> {
+                ps.setLong(1, row.id);
+                ps.setString(2, row.title);
+                ps.setString(3, row.description);
+                ps.setString(4, row.imgUrl);
+                ps.setString(5, row.isbn);
+                ps.setObject(6, row.publicationYear, java.sql.Types.INTEGER);
+                ps.setLong(7, authors.get(row.author));
+            });
+            List<long[]> bookCategories = new ArrayList<>();
+            for (Row row : ready) {
+                row.categories.forEach(name -> bookCategories.add(new long[]{row.id, categories.get(name)}));
+            }
+            jdbcTemplate.batchUpdate(INSERT_BOOK_CATEGORY_SQL, bookCategories, bookCategories.size(), (ps, pair) -> {
+                ps.setLong(1, pair[0]);
+                ps.setLong(2, pair[1]);
+            });
+
+            statisticsService.recordBooksAdded(ready.size());
+            List<Book> books = new ArrayList<>(ready.size());
+            for (Row row : ready) {
+                availabilityIndex.bookAdded(row.id);
+                books.add(row.toBook(authors, categories));
+            }
+            searchIndex.index(books);
+            suggestIndex.booksSaved(books);
+            return ready.size();
+        }
+
+        /**
+         * Ids for the given names: from earlier chunks, then from the table,
+         * then, if allowed, from new rows. Names found in this chunk are
+         * collected in {@code found} and only kept if the chunk commits.
+         */
+        private Map<String, Long> resolve(Set<String> names, Map<String, Long> known, Map<String, Long> found,
+                                          Function<Collection<String>, Map<String, Long>> find,
+                                          String table, boolean create) {
+            Map<String, Long> ids = new HashMap<>();
+            Set<String> missing = new HashSet<>();
+            for (String name : names) {
+                Long id = known.get(name);
+                if (id != null) {
+                    ids.put(name, id);
+                } else {
+                    missing.add(name);
+                }
+            }
+            if (missing.isEmpty()) {
+                return ids;
+            }
+            found.putAll(find.apply(missing));
+            missing.removeAll(found.keySet());
+            if (!missing.isEmpty() && create) {
+                // A concurrent import may create the same name first; the lookup below picks up either row
+                jdbcTemplate.batchUpdate("INSERT INTO " + table + " (name) VALUES (?) ON CONFLICT (name) DO NOTHING",
+                        missing, missing.size(), (ps, name) -> ps.setString(1, name));
+                Map<String, Long> created = find.apply(missing);
+                found.putAll(created);
+                if (table.equals("author")) {
+                    authorsCreated += created.size();
+                    created.forEach((name, id) -> suggestIndex.authorSaved(id, name));
+                } else {
+                    categoriesCreated += created.size();
+                    created.forEach((name, id) -> suggestIndex.categorySaved(id, name));
+                }
+                // Cached findByName results may say these names do not exist
+                AfterCommit.run(() -> entityManagerFactory.unwrap(SessionFactory.class).getCache().evictQueryRegions());
+            }
+            ids.putAll(found);
+            return ids;
+        }
+    }
+
+    // One input row; text fields are trimmed, blank ones become null
+    static final class Row {
+        long number;
+        Long id;
+        String error;
+        String title;
+        String isbn;
+        String description;
+        String imgUrl;
+        String publicationYearText;
+        Integer publicationYear;
+        String author;
+        List<String> categories = List.of();
+
+        static Row fromCsv(Map<String, String> columns) {
+            Row row = new Row();
+            row.title = clean(columns.get("title"));
+            row.isbn = clean(columns.get("isbn"));
+            row.description = clean(columns.get("description"));
+            row.imgUrl = clean(columns.get("imgUrl"));
+            row.publicationYearText = clean(columns.get("publicationYear"));
+            row.author = clean(columns.get("author"));
+            String categories = clean(columns.get("categories"));
+            if (categories != null) {
+                row.categories = names(Arrays.asList(categories.split("\\|")));
+            }
+            return row;
+        }
+
+        static Row fromJson(JsonNode node) {
+            Row row = new Row();
+            row.title = text(node, "title");
+            row.isbn = text(node, "isbn");
+            row.description = text(node, "description");
+            row.imgUrl = text(node, "imgUrl");
+            row.publicationYearText = text(node, "publicationYear");
+            row.author = text(node, "author");
+            JsonNode categories = node.path("categories");
+            if (categories.isArray()) {
+                List<String> names = new ArrayList<>();
+                categories.forEach(category -> names.add(category.asText()));
+                row.categories = names(names);
+            } else if (categories.isTextual()) {
+                row.categories = names(List.of(categories.asText()));
+            }
+            return row;
+        }
+
+        // The rules of POST /api/books, with names in place of ids
+        String validate() {
+            if (title == null) {
+                return "Book title must not be blank";
+            }
+            if (isbn == null) {
+                return "ISBN must not be blank";
+            }
+            if (author == null) {
+                return "Author is required";
+            }
+            if (categories.isEmpty()) {
+                return "At least one category is required";
+            }
+            if (publicationYearText != null) {
+                try {
+                    publicationYear = Integer.valueOf(publicationYearText);
+                } catch (NumberFormatException ex) {
+                    return "Invalid publication year: " + publicationYearText;
+                }
+            }
+            return null;
+        }
+
+        // Detached copy for the search index; never persisted
+        Book toBook(Map<String, Long> authorIds, Map<String, Long> categoryIds) {
+            Author bookAuthor = new Author(author);
+            bookAuthor.setId(authorIds.get(author));
+            Book book = new Book(title, isbn, bookAuthor);
+            book.setId(id);
+            book.setDescription(description);
+            book.setPublicationYear(publicationYear);
+            Set<Category> bookCategories = new LinkedHashSet<>();
+            for (String name : categories) {
+                Category category = new Category(name);
+                category.setId(categoryIds.get(name));
+                bookCategories.add(category);
+            }
+            book.setCategories(bookCategories);
+            return book;
+        }
+
+        private static List<String> names(Collection<String> values) {
+            return values.stream().map(Row::clean).filter(Objects::nonNull).distinct().toList();
+        }
+
+        private static String text(JsonNode node, String field) {
+            JsonNode value = node.get(field);
+            return value == null || value.isNull() ? null : clean(value.asText());
+        }
+
+        private static String clean(String value) {
+            if (value == null) {
+                return null;
+            }
+            String trimmed = value.trim();
+            return trimmed.isEmpty() ? null : trimmed;
+        }
+    }
+}
@@ -0,0 +1,266 @@
+package com.gazmanzara.library.service;
+
+import com.gazmanzara.library.dto.AuthorDTO;
+import com.gazmanzara.library.dto.BookDTO;
+import com.gazmanzara.library.dto.CategoryDTO;
+import com.gazmanzara.library.dto.CursorPage;
+import com.gazmanzara.library.dto.ETag;
+import com.gazmanzara.library.dto.Fieldset;
+import com.gazmanzara.library.repository.BookRepository;
+import com.gazmanzara.library.repository.BookRepository.BookRow;
+import com.gazmanzara.library.repository.BookRepository.BookVersion;
+import com.gazmanzara.library.repository.BorrowedBookRepository;
+import com.gazmanzara.library.repository.SparseRowRepository;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Read path for book listings. Books are assembled into {@link BookDTO}s from
+ * scalar projections rather than entities: one query for the books with their
+ * authors and one for the categories of the whole batch, however many books
+ * the listing holds. Availability comes from the availability index, or from
+ * one more batch query while the index is still loading.
+ * <p>
+ * Listings with a sparse fieldset skip what was not asked for: unselected
+ * columns are left out of the select, the author join and the category
+ * query only run for the fields that need them.
+ */
+@Service
+@Transactional(readOnly = true)
+public class BookReadService {
+
+    // Bounds the IN list of the per-batch category and borrow lookups
+    static final int BATCH_SIZE = 1000;
+
+    // Fields of BookDTO that ?fields= can select, in declaration order
+    public static final List<String> FIELDS = List.of("id", "title", "description", "imgUrl", "isbn",
+            "publicationYear", "author", "categories", "currentlyBorrowed", "currentBorrow");
+
+    private static final Map<String, String> COLUMNS = Map.of(
+            "id", "b.id",
+            "title", "b.title",
+            "description", "b.description",
+            "imgUrl", "b.imgUrl",
+            "isbn", "b.isbn",
+            "publicationYear", "b.publicationYear");
+
+    private final BookRepository bookRepository;
+    private final BorrowedBookRepository borrowedBookRepository;
+    private final BookAvailabilityIndex availabilityIndex;
+    private final SparseRowRepository sparseRowRepository;
+
+    public BookReadService(
+            BookRepository bookRepository,
+            BorrowedBookRepository borrowedBookRepository,
+            BookAvailabilityIndex availabilityIndex,
+            SparseRowRepository sparseRowRepository) {
+        this.bookRepository = bookRepository;
+        this.borrowedBookRepository = borrowedBookRepository;
+        this.availabilityIndex = availabilityIndex;
+        this.sparseRowRepository = sparseRowRepository;
+    }
+
+    public CursorPage<BookDTO> page(long after, int pageSize) {
+        CursorPage<BookRow> rows = CursorPage.of(
+                bookRepository.findRowsAfter(after, Limit.of(pageSize + 1)), pageSize, BookRow::getId);
+        return new CursorPage<>(assemble(rows.getItems()), rows.getNextCursor());
+    }
+
+    // Books with the given ids, in the order of the ids; unknown ids are skipped
+    public List<BookDTO> findAllInOrder(List<Long> ids) {
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+        Map<Long, BookDTO> byId = new HashMap<>();
+        for (BookDTO book : assemble(bookRepository.findRowsByIdIn(ids))) {
+            byId.put(book.id, book);
+        }
+        return ids.stream().map(byId::get).filter(Objects::nonNull).toList();
+    }
+
+    public CursorPage<Map<String, Object>> page(long after, int pageSize, Fieldset fields) {
+        CursorPage<Map<String, Object>> rows = CursorPage.of(
+                sparseRows("b.id > :after", Map.of("after", after), "b.id", pageSize + 1, fields),
+                pageSize, row -> (Long) row.get("id"));
+        return new CursorPage<>(complete(rows.getItems(), fields), rows.getNextCursor());
+    }
+
+    public List<Map<String, Object>> findAllInOrder(List<Long> ids, Fieldset fields) {
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+        Map<Long, Map<String, Object>> byId = new HashMap<>();
+        for (Map<String, Object> row : complete(sparseRows("b.id IN :ids", Map.of("ids", ids), null, 0, fields), fields)) {
+            byId.put((Long) row.get("id"), row);
+        }
+        return ids.stream().map(byId::get).filter(Objects::nonNull).toList();
+    }
+
+    public List<BookDTO> findByIsbn(String isbn) {
+        return assemble(bookRepository.findRowsByIsbn(isbn));
+    }
+
+    public List<BookDTO> findByTitle(String title, int limit) {
+        return assemble(bookRepository.findRowsByTitleContaining(title, Limit.of(limit)));
+    }
+
+    public List<BookDTO> findByAuthorId(Long authorId, int limit) {
+        return assemble(bookRepository.findRowsByAuthorId(authorId, Limit.of(limit)));
+    }
+
+    public List<BookDTO> findByPublicationYear(Integer year, int limit) {
+        return assemble(bookRepository.findRowsByPublicationYear(year, Limit.of(limit)));
+    }
+
+    public List<BookDTO> findActive() {
+        return assemble(bookRepository.findActiveRows());
+    }
+
+    /**
+     * ETag of the page {@link #page} returns for the same arguments, built
+     * from versions alone. Null while the availability index is loading,
+     * since availability then has to be read with the page itself.
+     */
+    public String pageETag(long after, int pageSize, Fieldset fields) {
+        if (!availabilityIndex.isLoaded()) {
+            return null;
+        }
+        // The extra row decides whether there is a next page
+        return etag(bookRepository.findVersionsAfter(after, Limit.of(pageSize + 1)), pageSize, fields);
+    }
+
+    // ETag of what findAllInOrder returns for the same ids, or null while the availability index is loading
+    public String etagOf(List<Long> ids, Fieldset fields) {
+        if (!availabilityIndex.isLoaded()) {
+            return null;
+        }
+        if (ids.isEmpty()) {
+            return etag(List.of(), 0, fields);
+        }
+        Map<Long, BookVersion> byId = new HashMap<>();
+        for (BookVersion version : bookRepository.findVersionsByIdIn(ids)) {
+            byId.put(version.getId(), version);
+        }
+        return etag(ids.stream().map(byId::get).filter(Objects::nonNull).toList(), ids.size(), fields);
+    }
+
+    // A fieldset is hashed in, so every selection of the same books has its own ETag
+    private String etag(List<BookVersion> versions, int size, Fieldset fields) {
+        ETag etag = ETag.of("books").add(size);
+        if (fields != null) {
+            etag.add(fields.mask());
+        }
+        for (BookVersion version : versions) {
+            etag.add(version.getId())
+                    .add(version.getVersion())
+                    .add(version.getAuthorId())
+                    .add(version.getAuthorVersion())
+                    .add(version.getCategoryVersions())
+                    .add(availabilityIndex.currentBorrowId(version.getId()));
+        }
+        return etag.build();
+    }
+
+    private List<BookDTO> assemble(List<BookRow> rows) {
+        List<BookDTO> books = new ArrayList<>(rows.size());
+        for (int from = 0; from < rows.size(); from += BATCH_SIZE) {
+            books.addAll(assembleBatch(rows.subList(from, Math.min(from + BATCH_SIZE, rows.size()))));
+        }
+        return books;
+    }
+
+    private List<BookDTO> assembleBatch(List<BookRow> rows) {
+        List<Long> ids = rows.stream().map(BookRow::getId).toList();
+
+        Map<Long, Set<CategoryDTO>> categories = categories(ids);
+
+        Map<Long, Long> currentBorrows = currentBorrows(ids);
+
+        List<BookDTO> books = new ArrayList<>(rows.size());
+        for (BookRow row : rows) {
+            AuthorDTO author = row.getAuthorId() != null ? new AuthorDTO(row.getAuthorId(), row.getAuthorName()) : null;
+            BookDTO book = new BookDTO(row.getId(), row.getTitle(), row.getDescription(), row.getImgUrl(),
+                    row.getIsbn(), row.getPublicationYear(), author,
+                    categories.getOrDefault(row.getId(), new LinkedHashSet<>()));
+            book.resolveAvailability(currentBorrows != null
+                    ? currentBorrows.get(row.getId())
+                    : availabilityIndex.currentBorrowId(row.getId()));
+            books.add(book);
+        }
+        return books;
+    }
+
+    private List<Map<String, Object>> sparseRows(String where, Map<String, ?> parameters, String orderBy,
+                                                 int maxResults, Fieldset fields) {
+        Map<String, String> columns = fields.columns(COLUMNS);
+        boolean author = fields.includes("author");
+        if (author) {
+            columns.put("authorId", "a.id");
+            columns.put("authorName", "a.name");
+        }
+        return sparseRowRepository.findRows(author ? "Book b LEFT JOIN b.author a" : "Book b",
+                columns, where, parameters, orderBy, maxResults);
+    }
+
+    // Adds the selected fields that do not come from the book's own columns, in declaration order
+    private List<Map<String, Object>> complete(List<Map<String, Object>> rows, Fieldset fields) {
+        boolean availability = fields.includes("currentlyBorrowed") || fields.includes("currentBorrow");
+        for (int from = 0; from < rows.size(); from += BATCH_SIZE) {
+            List<Map<String, Object>> batch = rows.subList(from, Math.min(from + BATCH_SIZE, rows.size()));
+            List<Long> ids = batch.stream().map(row -> (Long) row.get("id")).toList();
+            Map<Long, Set<CategoryDTO>> categories = fields.includes("categories") ? categories(ids) : Map.of();
+            Map<Long, Long> currentBorrows = availability ? currentBorrows(ids) : null;
+            for (Map<String, Object> row : batch) {
+                Long id = (Long) row.get("id");
+                if (fields.includes("author")) {
+                    Long authorId = (Long) row.remove("authorId");
+                    String authorName = (String) row.remove("authorName");
+                    row.put("author", authorId != null ? new AuthorDTO(authorId, authorName) : null);
+                }
+                if (fields.includes("categories")) {
+                    row.put("categories", categories.getOrDefault(id, new LinkedHashSet<>()));
+                }
+                if (availability) {
+                    Long currentBorrow = currentBorrows != null ? currentBorrows.get(id) : availabilityIndex.currentBorrowId(id);
+                    if (fields.includes("currentlyBorrowed")) {
+                        row.put("currentlyBorrowed", currentBorrow != null);
+                    }
+                    if (fields.includes("currentBorrow")) {
+                        row.put("currentBorrow", currentBorrow);
+                    }
+                }
+            }
+        }
+        return rows;
+    }
+
+    private Map<Long, Set<CategoryDTO>> categories(List<Long> bookIds) {
+        Map<Long, Set<CategoryDTO>> categories = new HashMap<>();
+        for (BookRepository.BookCategory category : bookRepository.findCategoriesByBookIdIn(bookIds)) {
+            categories.computeIfAbsent(category.getBookId(), id -> new LinkedHashSet<>())
+                    .add(new CategoryDTO(category.getId(), category.getName(), category.getDescription()));
+        }
+        return categories;
+    }
+
+    // Current borrow ids by book id, or null when they can be read from the index
+    private Map<Long, Long> currentBorrows(List<Long> bookIds) {
+        if (availabilityIndex.isLoaded()) {
+            return null;
+        }
+        Map<Long, Long> currentBorrows = new HashMap<>();
+        for (BorrowedBookRepository.CurrentBorrow borrow : borrowedBookRepository.findCurrentBorrowsByBookIdIn(bookIds)) {
+            currentBorrows.put(borrow.getBookId(), borrow.getBorrowId());
+        }
+        return currentBorrows;
+    }
+}
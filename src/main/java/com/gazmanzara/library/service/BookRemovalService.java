@@ -0,0 +1,64 @@
+package com.gazmanzara.library.service;
+
+import com.gazmanzara.library.repository.ArchivedBorrowRepository;
+import com.gazmanzara.library.repository.BookRepository;
+import com.gazmanzara.library.repository.BorrowedBookRepository;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+
+/**
+ * Deletes a book together with its live and archived borrows, and keeps the
+ * member summaries, dashboard counters and in-memory indexes in step. Used
+ * for a single book and for every book of a deleted author.
+ */
+@Service
+public class BookRemovalService {
+
+    private final BookRepository bookRepository;
+    private final BorrowedBookRepository borrowedBookRepository;
+    private final ArchivedBorrowRepository archivedBorrowRepository;
+    private final MemberSummaryService memberSummaryService;
+    private final LibraryStatisticsService statisticsService;
+    private final BookAvailabilityIndex availabilityIndex;
+    private final BookSearchIndex searchIndex;
+    private final SuggestIndex suggestIndex;
+
+    public BookRemovalService(
+            BookRepository bookRepository,
+            BorrowedBookRepository borrowedBookRepository,
+            ArchivedBorrowRepository archivedBorrowRepository,
+            MemberSummaryService memberSummaryService,
+            LibraryStatisticsService statisticsService,
+            BookAvailabilityIndex availabilityIndex,
+            BookSearchIndex searchIndex,
+            SuggestIndex suggestIndex) {
+        this.bookRepository = bookRepository;
+        this.borrowedBookRepository = borrowedBookRepository;
+        this.archivedBorrowRepository = archivedBorrowRepository;
+        this.memberSummaryService = memberSummaryService;
+        this.statisticsService = statisticsService;
+        this.availabilityIndex = availabilityIndex;
+        this.searchIndex = searchIndex;
+        this.suggestIndex = suggestIndex;
+    }
+
+    @Transactional
+    public void removeBook(long id) {
+        List<Long> currentBorrowerIds = borrowedBookRepository.findCurrentBorrowerIds(id);
+        memberSummaryService.releaseBorrowsOfBook(id);
+        archivedBorrowRepository.deleteByBookId(id);
+        bookRepository.deleteById(id);
+        statisticsService.recordBookRemoved(currentBorrowerIds);
+        availabilityIndex.bookRemoved(id);
+        searchIndex.remove(id);
+        suggestIndex.bookRemoved(id);
+    }
+
+    // The books go one at a time through the path above; the author row itself is left to the caller
+    @Transactional
+    public void removeBooksOfAuthor(long authorId) {
+        bookRepository.findIdsByAuthorId(authorId).forEach(this::removeBook);
+    }
+}
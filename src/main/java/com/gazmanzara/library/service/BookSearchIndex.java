@@ -0,0 +1,518 @@
+package com.gazmanzara.library.service;
+
+import com.gazmanzara.library.model.Book;
+import com.gazmanzara.library.model.Category;
+import com.gazmanzara.library.repository.BookRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * In-memory inverted index over the catalog.
+ * <p>
+ * Title, author name, category names and description are tokenized with
+ * {@link TextNormalizer} into per-field posting lists of book ids. Author,
+ * category and publication year get exact-match posting lists so they can be
+ * combined with text terms. The last word of each text criterion also
+ * matches as a prefix, so "harr" finds "Harry" while it is being typed.
+ * Every clause of a query must match; matches are ranked by a field-weighted
+ * idf score. The index is built at startup from two streamed projections,
+ * kept current by the catalog write paths, and rebuilt periodically to
+ * pick up changes they do not see, such as books deleted with their author
+ * or written by other instances.
+ */
+@Service
+public class BookSearchIndex {
+
+    private static final Logger log = LoggerFactory.getLogger(BookSearchIndex.class);
+
+    enum Field {
+        TITLE(4.0),
+        AUTHOR(3.0),
+        CATEGORY(2.0),
+        DESCRIPTION(1.0);
+
+        final double weight;
+
+        Field(double weight) {
+            this.weight = weight;
+        }
+    }
+
+    /**
+     * Search criteria; null or blank values are ignored. {@code text} matches
+     * any field, the other text values only their own field.
+     */
+    public record Query(String text, String title, String author, Long authorId,
+                        String category, Long categoryId, Integer year) {
+    }
+
+    private final BookRepository bookRepository;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private State state = new State();
+    // Writes made while a rebuild reads the tables, applied again to the rebuilt index
+    private List<Consumer<State>> pending;
+    private volatile boolean loaded;
+
+    public BookSearchIndex(BookRepository bookRepository) {
+        this.bookRepository = bookRepository;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(fixedDelayString = "${library.search.refresh-interval:PT1H}",
+            initialDelayString = "${library.search.refresh-interval:PT1H}")
+    // Not read-only: with read replicas configured, that would build the index from a lagging copy
+    @Transactional
+    public void rebuild() {
+        lock.writeLock().lock();
+        try {
+            pending = new ArrayList<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        try {
+            Map<Integer, Doc> docs = new HashMap<>();
+            try (Stream<BookRepository.SearchRow> rows = bookRepository.streamSearchRows()) {
+                rows.forEach(row -> {
+                    Doc doc = new Doc(slot(row.getId()), row.getAuthorId(), row.getPublicationYear());
+                    doc.tokens[Field.TITLE.ordinal()] = tokenArray(row.getTitle());
+                    doc.tokens[Field.AUTHOR.ordinal()] = tokenArray(row.getAuthorName());
+                    doc.tokens[Field.DESCRIPTION.ordinal()] = tokenArray(row.getDescription());
+                    docs.put(doc.id, doc);
+                });
+            }
+            Map<Integer, StringBuilder> categoryNames = new HashMap<>();
+            try (Stream<BookRepository.CategoryRow> rows = bookRepository.streamCategoryRows()) {
+                rows.forEach(row -> {
+                    Doc doc = docs.get(slot(row.getBookId()));
+                    if (doc != null) {
+                        doc.categoryIds = append(doc.categoryIds, row.getCategoryId());
+                        categoryNames.computeIfAbsent(doc.id, id -> new StringBuilder()).append(' ').append(row.getCategoryName());
+                    }
+                });
+            }
+            categoryNames.forEach((id, names) -> docs.get(id).tokens[Field.CATEGORY.ordinal()] = tokenArray(names.toString()));
+
+            State rebuilt = new State();
+            docs.values().stream()
+                    .sorted(Comparator.comparingInt(doc -> doc.id))
+                    .forEach(rebuilt::add);
+
+            lock.writeLock().lock();
+            try {
+                pending.forEach(update -> update.accept(rebuilt));
+                state = rebuilt;
+                loaded = true;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            log.info("Search index loaded: {} books", docs.size());
+        } finally {
+            lock.writeLock().lock();
+            try {
+                pending = null;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    /**
+     * Returns the ids of matching books, best match first. Without any text
+     * criteria the matches are returned in id order.
+     */
+    public List<Long> search(Query query, int limit) {
+        lock.readLock().lock();
+        try {
+            return state.search(query, limit);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // The methods below take effect once the current transaction commits
+
+    public void index(Book book) {
+        Doc doc = docOf(book);
+        AfterCommit.run(() -> write(current -> {
+            current.remove(doc.id);
+            current.add(doc);
+        }));
+    }
+
+    public void index(Collection<Book> books) {
+        List<Doc> docs = books.stream().map(BookSearchIndex::docOf).toList();
+        AfterCommit.run(() -> write(current -> docs.forEach(doc -> {
+            current.remove(doc.id);
+            current.add(doc);
+        })));
+    }
+
+    public void remove(long bookId) {
+        AfterCommit.run(() -> write(current -> current.remove(slot(bookId))));
+    }
+
+    // Deleting an author deletes its books with it
+    public void authorRemoved(long authorId) {
+        AfterCommit.run(() -> write(current -> current.removeAuthor(authorId)));
+    }
+
+    public void authorRenamed(long authorId, String name) {
+        String[] tokens = tokenArray(name);
+        AfterCommit.run(() -> write(current -> current.renameAuthor(authorId, tokens)));
+    }
+
+    private void write(Consumer<State> update) {
+        lock.writeLock().lock();
+        try {
+            update.accept(state);
+            if (pending != null) {
+                pending.add(update);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private static Doc docOf(Book book) {
+        Long authorId = book.getAuthor() != null ? book.getAuthor().getId() : null;
+        Doc doc = new Doc(slot(book.getId()), authorId, book.getPublicationYear());
+        doc.tokens[Field.TITLE.ordinal()] = tokenArray(book.getTitle());
+        doc.tokens[Field.AUTHOR.ordinal()] = tokenArray(book.getAuthor() != null ? book.getAuthor().getName() : null);
+        doc.tokens[Field.DESCRIPTION.ordinal()] = tokenArray(book.getDescription());
+        StringBuilder categoryNames = new StringBuilder();
+        for (Category category : book.getCategories()) {
+            doc.categoryIds = append(doc.categoryIds, category.getId());
+            categoryNames.append(' ').append(category.getName());
+        }
+        doc.tokens[Field.CATEGORY.ordinal()] = tokenArray(categoryNames.toString());
+        return doc;
+    }
+
+    private static String[] tokenArray(String text) {
+        return TextNormalizer.tokens(text).toArray(String[]::new);
+    }
+
+    private static long[] append(long[] values, long value) {
+        long[] result = Arrays.copyOf(values, values.length + 1);
+        result[values.length] = value;
+        return result;
+    }
+
+    private static int slot(long bookId) {
+        if (bookId < 0 || bookId > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Book id out of range for the search index: " + bookId);
+        }
+        return (int) bookId;
+    }
+
+    private static final class Doc {
+        final int id;
+        final Long authorId;
+        final Integer year;
+        final String[][] tokens = new String[Field.values().length][];
+        long[] categoryIds = new long[0];
+
+        Doc(int id, Long authorId, Integer year) {
+            this.id = id;
+            this.authorId = authorId;
+            this.year = year;
+            Arrays.fill(tokens, new String[0]);
+        }
+    }
+
+    private static final class State {
+        final Map<Integer, Doc> docs = new HashMap<>();
+        // Sorted, so that the terms starting with a prefix are one range
+        final List<NavigableMap<String, PostingList>> terms = new ArrayList<>();
+        final Map<Long, PostingList> byAuthor = new HashMap<>();
+        final Map<Long, PostingList> byCategory = new HashMap<>();
+        final Map<Integer, PostingList> byYear = new HashMap<>();
+
+        State() {
+            for (Field ignored : Field.values()) {
+                terms.add(new TreeMap<>());
+            }
+        }
+
+        void add(Doc doc) {
+            docs.put(doc.id, doc);
+            for (Field field : Field.values()) {
+                for (String token : doc.tokens[field.ordinal()]) {
+                    terms.get(field.ordinal()).computeIfAbsent(token, t -> new PostingList()).add(doc.id);
+                }
+            }
+            if (doc.authorId != null) {
+                byAuthor.computeIfAbsent(doc.authorId, id -> new PostingList()).add(doc.id);
+            }
+            for (long categoryId : doc.categoryIds) {
+                byCategory.computeIfAbsent(categoryId, id -> new PostingList()).add(doc.id);
+            }
+            if (doc.year != null) {
+                byYear.computeIfAbsent(doc.year, year -> new PostingList()).add(doc.id);
+            }
+        }
+
+        void remove(int id) {
+            Doc doc = docs.remove(id);
+            if (doc == null) {
+                return;
+            }
+            for (Field field : Field.values()) {
+                for (String token : doc.tokens[field.ordinal()]) {
+                    removeFrom(terms.get(field.ordinal()), token, id);
+                }
+            }
+            if (doc.authorId != null) {
+                removeFrom(byAuthor, doc.authorId, id);
+            }
+            for (long categoryId : doc.categoryIds) {
+                removeFrom(byCategory, categoryId, id);
+            }
+            if (doc.year != null) {
+                removeFrom(byYear, doc.year, id);
+            }
+        }
+
+        void removeAuthor(long authorId) {
+            PostingList books = byAuthor.get(authorId);
+            if (books != null) {
+                for (int id : books.toArray()) {
+                    remove(id);
+                }
+            }
+        }
+
+        void renameAuthor(long authorId, String[] tokens) {
+            PostingList books = byAuthor.get(authorId);
+            if (books == null) {
+                return;
+            }
+            Map<String, PostingList> authorTerms = terms.get(Field.AUTHOR.ordinal());
+            for (int id : books.toArray()) {
+                Doc doc = docs.get(id);
+                for (String token : doc.tokens[Field.AUTHOR.ordinal()]) {
+                    removeFrom(authorTerms, token, id);
+                }
+                doc.tokens[Field.AUTHOR.ordinal()] = tokens;
+                for (String token : tokens) {
+                    authorTerms.computeIfAbsent(token, t -> new PostingList()).add(id);
+                }
+            }
+        }
+
+        List<Long> search(Query query, int limit) {
+            List<int[]> clauses = new ArrayList<>();
+            List<ScoredTerm> scoredTerms = new ArrayList<>();
+
+            List<String> tokens = TextNormalizer.tokens(query.text());
+            for (int i = 0; i < tokens.size(); i++) {
+                boolean prefix = i == tokens.size() - 1;
+                int[] matches = new int[0];
+                for (Field field : Field.values()) {
+                    ScoredTerm term = new ScoredTerm(field, tokens.get(i), prefix);
+                    matches = union(matches, postings(term));
+                    scoredTerms.add(term);
+                }
+                clauses.add(matches);
+            }
+            addFieldClauses(Field.TITLE, query.title(), clauses, scoredTerms);
+            addFieldClauses(Field.AUTHOR, query.author(), clauses, scoredTerms);
+            addFieldClauses(Field.CATEGORY, query.category(), clauses, scoredTerms);
+            if (query.authorId() != null) {
+                clauses.add(toArray(byAuthor.get(query.authorId())));
+            }
+            if (query.categoryId() != null) {
+                clauses.add(toArray(byCategory.get(query.categoryId())));
+            }
+            if (query.year() != null) {
+                clauses.add(toArray(byYear.get(query.year())));
+            }
+            if (clauses.isEmpty()) {
+                return List.of();
+            }
+
+            clauses.sort(Comparator.comparingInt(clause -> clause.length));
+            int[] matches = clauses.get(0);
+            for (int i = 1; i < clauses.size() && matches.length > 0; i++) {
+                matches = intersect(matches, clauses.get(i));
+            }
+
+            if (scoredTerms.isEmpty()) {
+                return Arrays.stream(matches).limit(limit).mapToObj(id -> (long) id).toList();
+            }
+            return rank(matches, scoredTerms, limit);
+        }
+
+        private void addFieldClauses(Field field, String text, List<int[]> clauses, List<ScoredTerm> scoredTerms) {
+            List<String> tokens = TextNormalizer.tokens(text);
+            for (int i = 0; i < tokens.size(); i++) {
+                ScoredTerm term = new ScoredTerm(field, tokens.get(i), i == tokens.size() - 1);
+                clauses.add(postings(term));
+                scoredTerms.add(term);
+            }
+        }
+
+        private List<Long> rank(int[] matches, List<ScoredTerm> scoredTerms, int limit) {
+            double[] idf = new double[scoredTerms.size()];
+            int[][] lists = new int[scoredTerms.size()][];
+            for (int i = 0; i < scoredTerms.size(); i++) {
+                ScoredTerm term = scoredTerms.get(i);
+                lists[i] = postings(term);
+                idf[i] = term.field().weight * Math.log(1.0 + (double) docs.size() / (1 + lists[i].length));
+            }
+
+            // Keep only the best `limit` matches: a min-heap on score, ties broken by lower id
+            Comparator<double[]> byRank = Comparator.<double[]>comparingDouble(entry -> entry[1])
+                    .thenComparing(entry -> -entry[0]);
+            PriorityQueue<double[]> best = new PriorityQueue<>(byRank);
+            for (int id : matches) {
+                double score = 0;
+                for (int i = 0; i < lists.length; i++) {
+                    if (Arrays.binarySearch(lists[i], id) >= 0) {
+                        score += idf[i];
+                    }
+                }
+                best.offer(new double[]{id, score});
+                if (best.size() > limit) {
+                    best.poll();
+                }
+            }
+
+            List<Long> ranked = new ArrayList<>(best.size());
+            while (!best.isEmpty()) {
+                ranked.add((long) best.poll()[0]);
+            }
+            Collections.reverse(ranked);
+            return ranked;
+        }
+
+        private int[] postings(ScoredTerm term) {
+            NavigableMap<String, PostingList> fieldTerms = terms.get(term.field().ordinal());
+            if (!term.prefix()) {
+                return toArray(fieldTerms.get(term.token()));
+            }
+            // A short prefix spans many terms; merging them pairwise would copy the matches once per term
+            BitSet matches = new BitSet();
+            for (PostingList list : fieldTerms.subMap(term.token(), true, term.token() + Character.MAX_VALUE, false).values()) {
+                for (int i = 0; i < list.size; i++) {
+                    matches.set(list.ids[i]);
+                }
+            }
+            return matches.stream().toArray();
+        }
+
+        private static int[] toArray(PostingList list) {
+            return list == null ? new int[0] : list.toArray();
+        }
+
+        private static <K> void removeFrom(Map<K, PostingList> index, K key, int id) {
+            PostingList list = index.get(key);
+            if (list != null) {
+                list.remove(id);
+                if (list.size == 0) {
+                    index.remove(key);
+                }
+            }
+        }
+    }
+
+    // A query word; a prefix term matches every indexed word starting with it
+    private record ScoredTerm(Field field, String token, boolean prefix) {
+    }
+
+    /**
+     * Sorted, growable array of book ids. Ids are mostly appended in
+     * ascending order, so adds are usually O(1).
+     */
+    static final class PostingList {
+        int[] ids = new int[2];
+        int size;
+
+        void add(int id) {
+            if (size == 0 || ids[size - 1] < id) {
+                grow();
+                ids[size++] = id;
+                return;
+            }
+            int position = Arrays.binarySearch(ids, 0, size, id);
+            if (position >= 0) {
+                return;
+            }
+            int insertAt = -position - 1;
+            grow();
+            System.arraycopy(ids, insertAt, ids, insertAt + 1, size - insertAt);
+            ids[insertAt] = id;
+            size++;
+        }
+
+        void remove(int id) {
+            int position = Arrays.binarySearch(ids, 0, size, id);
+            if (position >= 0) {
+                System.arraycopy(ids, position + 1, ids, position, size - position - 1);
+                size--;
+            }
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(ids, size);
+        }
+
+        private void grow() {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, ids.length * 2);
+            }
+        }
+    }
+
+    static int[] intersect(int[] left, int[] right) {
+        int[] result = new int[Math.min(left.length, right.length)];
+        int i = 0, j = 0, n = 0;
+        while (i < left.length && j < right.length) {
+            if (left[i] < right[j]) {
+                i++;
+            } else if (left[i] > right[j]) {
+                j++;
+            } else {
+                result[n++] = left[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(result, n);
+    }
+
+    static int[] union(int[] left, int[] right) {
+        int[] result = new int[left.length + right.length];
+        int i = 0, j = 0, n = 0;
+        while (i < left.length || j < right.length) {
+            int next;
+            if (j >= right.length || (i < left.length && left[i] < right[j])) {
+                next = left[i++];
+            } else if (i >= left.length || right[j] < left[i]) {
+                next = right[j++];
+            } else {
+                next = left[i];
+                i++;
+                j++;
+            }
+            result[n++] = next;
+        }
+        return Arrays.copyOf(result, n);
+    }
+}
@@ -0,0 +1,89 @@
+package com.gazmanzara.library.service;
+
+import com.gazmanzara.library.model.JobRun;
+import com.gazmanzara.library.repository.JobRunRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.NestedExceptionUtils;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+
+/**
+ * Moves returned borrows older than the configured age from
+ * {@code borrowed_books} to {@code borrowed_books_archive}, so the live
+ * table, its indexes and the books' and members' mapped borrows only hold
+ * current and recent borrows. Each chunk is moved by a single statement that
+ * deletes and inserts the same rows, committed on its own; rows are claimed
+ * with {@code SKIP LOCKED}, as in the overdue sweep. Only RETURNED rows move,
+ * so member summaries and the availability index are unaffected.
+ */
+@Service
+public class BorrowArchiver {
+
+    public static final String JOB_NAME = "borrow-archive";
+
+    private static final Logger log = LoggerFactory.getLogger(BorrowArchiver.class);
+
+    private static final String MOVE_SQL =
+            "WITH moved AS (DELETE FROM borrowed_books WHERE id IN (" +
+                    "SELECT id FROM borrowed_books WHERE status = 'RETURNED' AND return_date < ? " +
+                    "LIMIT ? FOR UPDATE SKIP LOCKED) " +
+                    "RETURNING id, book_id, member_id, borrow_date, due_date, return_date) " +
+                    "INSERT INTO borrowed_books_archive (id, book_id, member_id, borrow_date, due_date, return_date, archived_at) " +
+                    "SELECT id, book_id, member_id, borrow_date, due_date, return_date, ? FROM moved";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final JobRunRepository jobRunRepository;
+    private final TransactionTemplate transaction;
+    private final Duration minAge;
+    private final int chunkSize;
+
+    public BorrowArchiver(
+            JdbcTemplate jdbcTemplate,
+            JobRunRepository jobRunRepository,
+            PlatformTransactionManager transactionManager,
+            @Value("${library.archive.min-age:P365D}") Duration minAge,
+            @Value("${library.archive.chunk-size:5000}") int chunkSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.jobRunRepository = jobRunRepository;
+        this.transaction = new TransactionTemplate(transactionManager);
+        this.minAge = minAge;
+        this.chunkSize = chunkSize;
+    }
+
+    @Scheduled(fixedDelayString = "${library.archive.interval:PT1H}",
+            initialDelayString = "${library.archive.initial-delay:PT2M}")
+    public JobRun archive() {
+        JobRun run = new JobRun(JOB_NAME);
+        run.setStartedAt(LocalDateTime.now());
+        long started = System.nanoTime();
+        LocalDateTime cutoff = run.getStartedAt().minus(minAge);
+        long moved = 0;
+        try {
+            int chunk;
+            do {
+                chunk = transaction.execute(status ->
+                        jdbcTemplate.update(MOVE_SQL, cutoff, chunkSize, run.getStartedAt()));
+                moved += chunk;
+            } while (chunk > 0);
+        } catch (DataAccessException ex) {
+            run.setError(NestedExceptionUtils.getMostSpecificCause(ex).getMessage());
+            log.warn("Borrow archive stopped after {} borrows", moved, ex);
+        }
+        run.setRowsProcessed(moved);
+        run.setFinishedAt(LocalDateTime.now());
+        run.setDurationMillis((System.nanoTime() - started) / 1_000_000);
+        if (moved > 0) {
+            log.info("Borrow archive moved {} returned borrows in {} ms", moved, run.getDurationMillis());
+        }
+        return jobRunRepository.save(run);
+    }
+}
@@ -0,0 +1,299 @@
+package com.gazmanzara.library.service;
+
+import com.gazmanzara.library.dto.CirculationBatchResult;
+import com.gazmanzara.library.exception.BadRequestException;
+import com.gazmanzara.library.model.BorrowStatus;
+import com.gazmanzara.library.repository.BookRepository;
+import com.gazmanzara.library.repository.BorrowedBookRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.NestedExceptionUtils;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * Batch borrows and returns for circulation desks. A batch is split into
+ * chunks that each run in one transaction: a chunk checks its books, member
+ * summaries and current borrows with one set-based query each, then writes
+ * all its borrows with a single insert or marks all its returns with a single
+ * update. Entries that fail a check are reported and skipped without
+ * affecting the rest of the batch.
+ */
+@Service
+public class CirculationService {
+
+    private static final Logger log = LoggerFactory.getLogger(CirculationService.class);
+
+    static final int DEFAULT_DURATION_DAYS = 14;
+
+    // Rows that lost a race for the active borrow index are skipped and reported as already borrowed
+    private static final String INSERT_BORROWS_SQL =
+            "INSERT INTO borrowed_books (book_id, member_id, borrow_date, due_date, status) " +
+                    "SELECT item.book_id, item.member_id, ?, ?, 'BORROWED' " +
+                    "FROM unnest(?::bigint[], ?::bigint[]) AS item(book_id, member_id) " +
+                    "ON CONFLICT DO NOTHING RETURNING id, book_id";
+    private static final String LOCK_CURRENT_BORROWS_SQL =
+            "SELECT id, book_id, member_id, status FROM borrowed_books " +
+                    "WHERE id = ANY (?) AND status IN ('BORROWED', 'OVERDUE') ORDER BY id FOR UPDATE";
+    private static final String RETURN_BORROWS_SQL =
+            "UPDATE borrowed_books SET status = 'RETURNED', return_date = ? WHERE id = ANY (?)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final BookRepository bookRepository;
+    private final MemberSummaryService memberSummaryService;
+    private final BorrowedBookRepository borrowedBookRepository;
+    private final LibraryStatisticsService statisticsService;
+    private final BookAvailabilityIndex availabilityIndex;
+    private final TransactionTemplate transaction;
+    private final int chunkSize;
+    private final int maxBatchSize;
+
+    public record BorrowItem(Long bookId, Long memberId) {
+    }
+
+    public CirculationService(
+            JdbcTemplate jdbcTemplate,
+            BookRepository bookRepository,
+            MemberSummaryService memberSummaryService,
+            BorrowedBookRepository borrowedBookRepository,
+            LibraryStatisticsService statisticsService,
+            BookAvailabilityIndex availabilityIndex,
+            PlatformTransactionManager transactionManager,
+            @Value("${library.circulation.chunk-size:500}") int chunkSize,
+            @Value("${library.circulation.max-batch-size:10000}") int maxBatchSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.bookRepository = bookRepository;
+        this.memberSummaryService = memberSummaryService;
+        this.borrowedBookRepository = borrowedBookRepository;
+        this.statisticsService = statisticsService;
+        this.availabilityIndex = availabilityIndex;
+        this.transaction = new TransactionTemplate(transactionManager);
+        this.chunkSize = chunkSize;
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    /**
+     * Borrows each book for its member, with the same rules as a single
+     * borrow: the book and member must exist, the book must not be on loan
+     * and the member must not have overdue books or reach their borrow limit.
+     */
+    public CirculationBatchResult borrow(List<BorrowItem> requests, Integer durationInDays) {
+        long started = System.nanoTime();
+        checkSize(requests);
+        int days = durationInDays != null ? durationInDays : DEFAULT_DURATION_DAYS;
+
+        List<CirculationBatchResult.Item> items = new ArrayList<>(requests.size());
+        Set<Long> seenBooks = new HashSet<>();
+        for (int i = 0; i < requests.size(); i++) {
+            BorrowItem request = requests.get(i);
+            CirculationBatchResult.Item item = new CirculationBatchResult.Item(i,
+                    null, request != null ? request.bookId() : null, request != null ? request.memberId() : null);
+            if (item.bookId == null || item.memberId == null) {
+                item.error = "bookId and memberId are required";
+            } else if (!seenBooks.add(item.bookId)) {
+                item.error = "Book appears more than once in this batch";
+            }
+            items.add(item);
+        }
+        inChunks(items, chunk -> borrowChunk(chunk, days));
+        return finish("borrow", items, started);
+    }
+
+    /**
+     * Returns each borrow that is still current.
+     */
+    public CirculationBatchResult returnBorrows(List<Long> borrowIds) {
+        long started = System.nanoTime();
+        checkSize(borrowIds);
+
+        List<CirculationBatchResult.Item> items = new ArrayList<>(borrowIds.size());
+        Set<Long> seenBorrows = new HashSet<>();
+        for (int i = 0; i < borrowIds.size(); i++) {
+            CirculationBatchResult.Item item = new CirculationBatchResult.Item(i, borrowIds.get(i), null, null);
+            if (item.borrowId == null) {
+                item.error = "Borrow id is required";
+            } else if (!seenBorrows.add(item.borrowId)) {
+                item.error = "Borrow appears more than once in this batch";
+            }
+            items.add(item);
+        }
+        inChunks(items, this::returnChunk);
+        return finish("return", items, started);
+    }
+
+    private void checkSize(List<?> requests) {
+        if (requests == null || requests.isEmpty()) {
+            throw new BadRequestException("The batch is empty");
+        }
+        if (requests.size() > maxBatchSize) {
+            throw new BadRequestException("At most " + maxBatchSize + " entries are accepted per batch");
+        }
+    }
+
+    // Runs each chunk of still valid items in its own transaction
+    private void inChunks(List<CirculationBatchResult.Item> items, Consumer<List<CirculationBatchResult.Item>> work) {
+        List<CirculationBatchResult.Item> valid = items.stream().filter(item -> item.error == null).toList();
+        for (int from = 0; from < valid.size(); from += chunkSize) {
+            List<CirculationBatchResult.Item> chunk = valid.subList(from, Math.min(from + chunkSize, valid.size()));
+            try {
+                transaction.executeWithoutResult(status -> work.accept(chunk));
+            } catch (DataAccessException ex) {
+                String reason = "Chunk rejected by the database: " + NestedExceptionUtils.getMostSpecificCause(ex).getMessage();
+                for (CirculationBatchResult.Item item : chunk) {
+                    if (item.error == null) {
+                        item.status = null;
+                        item.dueDate = null;
+                        item.error = reason;
+                    }
+                }
+            }
+        }
+    }
+
+    private void borrowChunk(List<CirculationBatchResult.Item> chunk, int days) {
+        LocalDateTime now = LocalDateTime.now();
+        Set<Long> bookIds = chunk.stream().map(item -> item.bookId).collect(Collectors.toSet());
+        Set<Long> memberIds = chunk.stream().map(item -> item.memberId).collect(Collectors.toSet());
+
+        Set<Long> books = new HashSet<>(bookRepository.findIdsByIdIn(bookIds));
+        Set<Long> onLoan = borrowedBookRepository.findCurrentBorrowsByBookIdIn(bookIds).stream()
+                .map(BorrowedBookRepository.CurrentBorrow::getBookId)
+                .collect(Collectors.toSet());
+        // Locked until the chunk commits, so the limits below cannot be overtaken by concurrent borrows
+        Map<Long, MemberSummaryService.Summary> members = memberSummaryService.lock(memberIds);
+        Set<Long> withOverdue = members.values().stream()
+                .filter(summary -> summary.overdueBorrows() > 0)
+                .map(MemberSummaryService.Summary::memberId)
+                .collect(Collectors.toCollection(HashSet::new));
+        // Borrows that fell due since the last overdue sweep are not counted yet
+        List<Long> mayHaveUnsweptOverdue = members.values().stream()
+                .filter(summary -> summary.activeBorrows() > summary.overdueBorrows())
+                .map(MemberSummaryService.Summary::memberId)
+                .toList();
+        if (!mayHaveUnsweptOverdue.isEmpty()) {
+            withOverdue.addAll(borrowedBookRepository.findMemberIdsWithOverdueIn(mayHaveUnsweptOverdue, now));
+        }
+
+        Map<Long, Integer> claimed = new HashMap<>();
+        List<CirculationBatchResult.Item> ready = new ArrayList<>(chunk.size());
+        for (CirculationBatchResult.Item item : chunk) {
+            MemberSummaryService.Summary member = members.get(item.memberId);
+            item.error = !books.contains(item.bookId) ? "Book not found with id: '" + item.bookId + "'"
+                    : onLoan.contains(item.bookId) ? "Book is already borrowed"
+                    : member == null ? "Member not found with id: '" + item.memberId + "'"
+                    : withOverdue.contains(item.memberId) ? "Member has overdue books and cannot borrow more books"
+                    : claimed.getOrDefault(item.memberId, 0) >= member.remainingBorrows()
+                    ? "Member has reached the limit of " + member.borrowLimit() + " borrowed books"
+                    : null;
+            if (item.error == null) {
+                claimed.merge(item.memberId, 1, Integer::sum);
+                ready.add(item);
+            }
+        }
+        if (ready.isEmpty()) {
+            return;
+        }
+
+        LocalDateTime dueDate = now.plusDays(days);
+        Map<Long, Long> borrowIdsByBook = new HashMap<>();
+        jdbcTemplate.query(INSERT_BORROWS_SQL, ps -> {
+            ps.setObject(1, now);
+            ps.setObject(2, dueDate);
+            ps.setArray(3, bigintArray(ps, ready.stream().map(item -> item.bookId).toArray(Long[]::new)));
+            ps.setArray(4, bigintArray(ps, ready.stream().map(item -> item.memberId).toArray(Long[]::new)));
+        }, rs -> {
+            borrowIdsByBook.put(rs.getLong("book_id"), rs.getLong("id"));
+        });
+
+        List<Long> borrowingMembers = new ArrayList<>(borrowIdsByBook.size());
+        Map<Long, MemberSummaryService.Delta> deltas = new HashMap<>();
+        for (CirculationBatchResult.Item item : ready) {
+            item.borrowId = borrowIdsByBook.get(item.bookId);
+            if (item.borrowId == null) {
+                item.error = "Book is already borrowed";
+                continue;
+            }
+            item.dueDate = dueDate;
+            item.status = BorrowStatus.BORROWED;
+            borrowingMembers.add(item.memberId);
+            deltas.merge(item.memberId, new MemberSummaryService.Delta(1, 0), CirculationService::sum);
+            availabilityIndex.borrowed(item.bookId, item.borrowId);
+        }
+        memberSummaryService.adjust(deltas, now);
+        statisticsService.recordBorrows(borrowingMembers);
+    }
+
+    private void returnChunk(List<CirculationBatchResult.Item> chunk) {
+        LocalDateTime now = LocalDateTime.now();
+        Map<Long, CirculationBatchResult.Item> byBorrowId = chunk.stream()
+                .collect(Collectors.toMap(item -> item.borrowId, item -> item));
+
+        // Locking the current borrows first pins down whether each was overdue when it was returned
+        List<Long> returning = new ArrayList<>(chunk.size());
+        List<Long> returningMembers = new ArrayList<>(chunk.size());
+        Map<Long, MemberSummaryService.Delta> deltas = new HashMap<>();
+        jdbcTemplate.query(LOCK_CURRENT_BORROWS_SQL,
+                ps -> ps.setArray(1, bigintArray(ps, byBorrowId.keySet().toArray(Long[]::new))), rs -> {
+                    CirculationBatchResult.Item item = byBorrowId.remove(rs.getLong("id"));
+                    item.bookId = rs.getLong("book_id");
+                    item.memberId = rs.getLong("member_id");
+                    item.status = BorrowStatus.RETURNED;
+                    returning.add(item.borrowId);
+                    returningMembers.add(item.memberId);
+                    boolean overdue = BorrowStatus.OVERDUE.name().equals(rs.getString("status"));
+                    deltas.merge(item.memberId, new MemberSummaryService.Delta(-1, overdue ? -1 : 0), CirculationService::sum);
+                    availabilityIndex.returned(item.bookId, item.borrowId);
+                });
+        if (!returning.isEmpty()) {
+            jdbcTemplate.update(RETURN_BORROWS_SQL, ps -> {
+                ps.setObject(1, now);
+                ps.setArray(2, bigintArray(ps, returning.toArray(Long[]::new)));
+            });
+            memberSummaryService.adjust(deltas, now);
+            statisticsService.recordReturns(returningMembers);
+        }
+
+        // Whatever was not updated is either unknown or no longer current
+        if (!byBorrowId.isEmpty()) {
+            Set<Long> existing = new HashSet<>(borrowedBookRepository.findIdsByIdIn(byBorrowId.keySet()));
+            byBorrowId.values().forEach(item -> item.error = existing.contains(item.borrowId)
+                    ? "Book is already returned"
+                    : "BorrowedBook not found with id: '" + item.borrowId + "'");
+        }
+    }
+
+    private static MemberSummaryService.Delta sum(MemberSummaryService.Delta a, MemberSummaryService.Delta b) {
+        return new MemberSummaryService.Delta(a.active() + b.active(), a.overdue() + b.overdue());
+    }
+
+    private static java.sql.Array bigintArray(PreparedStatement ps, Long[] values) throws SQLException {
+        return ps.getConnection().createArrayOf("bigint", values);
+    }
+
+    private static CirculationBatchResult finish(String operation, List<CirculationBatchResult.Item> items, long started) {
+        CirculationBatchResult result = new CirculationBatchResult();
+        result.items = items;
+        for (CirculationBatchResult.Item item : items) {
+            if (item.error == null) {
+                result.succeeded++;
+            } else {
+                result.failed++;
+            }
+        }
+        result.elapsedMillis = (System.nanoTime() - started) / 1_000_000;
+        log.debug("Batch {}: {} succeeded, {} failed in {} ms", operation, result.succeeded, result.failed,
+                result.elapsedMillis);
+        return result;
+    }
+}
@@ -0,0 +1,126 @@
+package com.gazmanzara.library.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.gazmanzara.library.config.RequestQueryStatistics;
+import com.gazmanzara.library.dto.AuthorDTO;
+import com.gazmanzara.library.dto.BookDTO;
+import com.gazmanzara.library.dto.BorrowRecordDTO;
+import com.gazmanzara.library.dto.CategoryDTO;
+import com.gazmanzara.library.repository.ArchivedBorrowRepository;
+import com.gazmanzara.library.repository.BookRepository;
+import com.gazmanzara.library.repository.BookRepository.ExportRow;
+import com.gazmanzara.library.repository.BorrowedBookRepository;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * Writes full-table exports as newline-delimited JSON. Rows are read as flat
+ * projections through a database cursor and written as they arrive; no
+ * entities are loaded, so memory use does not depend on the number of rows
+ * exported and no row needs a further query.
+ */
+@Service
+public class ExportService {
+
+    private final BookRepository bookRepository;
+    private final BorrowedBookRepository borrowedBookRepository;
+    private final ArchivedBorrowRepository archivedBorrowRepository;
+    private final ObjectMapper objectMapper;
+    private final TransactionTemplate readOnlyTransaction;
+
+    public ExportService(
+            BookRepository bookRepository,
+            BorrowedBookRepository borrowedBookRepository,
+            ArchivedBorrowRepository archivedBorrowRepository,
+            ObjectMapper objectMapper,
+            PlatformTransactionManager transactionManager) {
+        this.bookRepository = bookRepository;
+        this.borrowedBookRepository = borrowedBookRepository;
+        this.archivedBorrowRepository = archivedBorrowRepository;
+        this.objectMapper = objectMapper;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+    }
+
+    public void exportBooks(OutputStream out) {
+        readOnlyTransaction.executeWithoutResult(status -> {
+            try (Stream<ExportRow> rows = bookRepository.streamExportRows()) {
+                writeLines(booksOf(counted(rows)), out);
+            }
+        });
+    }
+
+    // Archived borrows, when included, follow the live ones
+    public void exportBorrowRecords(OutputStream out, boolean includeArchived) {
+        readOnlyTransaction.executeWithoutResult(status -> {
+            try (Stream<BorrowRecordDTO> records = borrowedBookRepository.streamAllRecords()) {
+                writeLines(counted(records), out);
+            }
+            if (includeArchived) {
+                try (Stream<BorrowRecordDTO> records = archivedBorrowRepository.streamAllRecords()) {
+                    writeLines(counted(records), out);
+                }
+            }
+        });
+    }
+
+    // Folds the consecutive rows of each book, one per category, into one BookDTO
+    static Iterator<BookDTO> booksOf(Iterator<ExportRow> rows) {
+        return new Iterator<>() {
+            private ExportRow pending = rows.hasNext() ? rows.next() : null;
+
+            @Override
+            public boolean hasNext() {
+                return pending != null;
+            }
+
+            @Override
+            public BookDTO next() {
+                if (pending == null) {
+                    throw new NoSuchElementException();
+                }
+                ExportRow book = pending;
+                Set<CategoryDTO> categories = new LinkedHashSet<>();
+                while (pending != null && pending.getId().equals(book.getId())) {
+                    if (pending.getCategoryId() != null) {
+                        categories.add(new CategoryDTO(pending.getCategoryId(), pending.getCategoryName(),
+                                pending.getCategoryDescription()));
+                    }
+                    pending = rows.hasNext() ? rows.next() : null;
+                }
+                AuthorDTO author = book.getAuthorId() != null ? new AuthorDTO(book.getAuthorId(), book.getAuthorName()) : null;
+                return new BookDTO(book.getId(), book.getTitle(), book.getDescription(), book.getImgUrl(),
+                        book.getIsbn(), book.getPublicationYear(), author, categories);
+            }
+        };
+    }
+
+    // Streamed rows only reach the request's metrics when counted as they are read
+    private static <T> Iterator<T> counted(Stream<T> rows) {
+        return rows.peek(row -> RequestQueryStatistics.rowStreamed()).iterator();
+    }
+
+    private void writeLines(Iterator<?> rows, OutputStream out) {
+        BufferedOutputStream buffer = new BufferedOutputStream(out);
+        try {
+            while (rows.hasNext()) {
+                buffer.write(objectMapper.writeValueAsBytes(rows.next()));
+                buffer.write('\n');
+            }
+            buffer.flush();
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+}
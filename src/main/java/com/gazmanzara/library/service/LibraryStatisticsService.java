@@ -0,0 +1,182 @@
+package com.gazmanzara.library.service;
+
+import com.gazmanzara.library.model.LibraryStatistics;
+import com.gazmanzara.library.repository.BookRepository;
+import com.gazmanzara.library.repository.BorrowedBookRepository;
+import com.gazmanzara.library.repository.LibraryStatisticsRepository;
+import com.gazmanzara.library.repository.MemberRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Maintains the materialized dashboard counters.
+ * <p>
+ * The record* methods are called from the write paths and join the caller's
+ * transaction, so a counter only moves if the change it describes commits.
+ * The number of members with overdue books changes as time passes rather than
+ * on writes, so it is refreshed on its own short schedule. A full reconcile
+ * rebuilds every counter from the tables and corrects any drift.
+ */
+@Service
+public class LibraryStatisticsService {
+
+    private static final Logger log = LoggerFactory.getLogger(LibraryStatisticsService.class);
+
+    private final LibraryStatisticsRepository statisticsRepository;
+    private final BookRepository bookRepository;
+    private final MemberRepository memberRepository;
+    private final BorrowedBookRepository borrowedBookRepository;
+
+    public LibraryStatisticsService(
+            LibraryStatisticsRepository statisticsRepository,
+            BookRepository bookRepository,
+            MemberRepository memberRepository,
+            BorrowedBookRepository borrowedBookRepository) {
+        this.statisticsRepository = statisticsRepository;
+        this.bookRepository = bookRepository;
+        this.memberRepository = memberRepository;
+        this.borrowedBookRepository = borrowedBookRepository;
+    }
+
+    // Never writes, so it can run on a read replica; until the first reconcile stores the row, the counters are counted here
+    @Transactional(readOnly = true)
+    public LibraryStatistics getStatistics() {
+        return statisticsRepository.findById(LibraryStatistics.SINGLETON_ID)
+                .orElseGet(() -> count(new LibraryStatistics()));
+    }
+
+    @Transactional
+    public void recordBookAdded() {
+        recordBooksAdded(1);
+    }
+
+    @Transactional
+    public void recordBooksAdded(long count) {
+        adjust(count, 0, 0, 0);
+    }
+
+    /**
+     * @param currentBorrowerIds members holding the book at deletion time
+     */
+    @Transactional
+    public void recordBookRemoved(List<Long> currentBorrowerIds) {
+        long noLongerActive = currentBorrowerIds.stream()
+                .distinct()
+                .filter(memberId -> !borrowedBookRepository.existsCurrentByMemberId(memberId))
+                .count();
+        adjust(-1, -currentBorrowerIds.size(), 0, -noLongerActive);
+    }
+
+    @Transactional
+    public void recordMemberAdded() {
+        adjust(0, 0, 1, 0);
+    }
+
+    @Transactional
+    public void recordMemberRemoved(long currentBorrows) {
+        adjust(0, -currentBorrows, -1, currentBorrows > 0 ? -1 : 0);
+    }
+
+    // Called after the new borrow row has been written
+    @Transactional
+    public void recordBorrow(Long memberId) {
+        boolean firstActiveBorrow = borrowedBookRepository.countCurrentByMemberId(memberId) == 1;
+        adjust(0, 1, 0, firstActiveBorrow ? 1 : 0);
+    }
+
+    // Called after the borrow row has been marked as returned
+    @Transactional
+    public void recordReturn(Long memberId) {
+        boolean stillActive = borrowedBookRepository.existsCurrentByMemberId(memberId);
+        adjust(0, -1, 0, stillActive ? 0 : -1);
+    }
+
+    /**
+     * Batch form of {@link #recordBorrow}, called after the new borrow rows
+     * have been written.
+     *
+     * @param memberIds the borrowing member of each new borrow
+     */
+    @Transactional
+    public void recordBorrows(List<Long> memberIds) {
+        if (memberIds.isEmpty()) {
+            return;
+        }
+        Map<Long, Long> added = memberIds.stream().collect(Collectors.groupingBy(Function.identity(), Collectors.counting()));
+        // Members whose only current borrows are the new ones have just become active
+        long firstActiveBorrows = borrowedBookRepository.countCurrentBorrowsByMember(added.keySet()).stream()
+                .filter(count -> count.getBorrowCount() == added.get(count.getMemberId()))
+                .count();
+        adjust(0, memberIds.size(), 0, firstActiveBorrows);
+    }
+
+    /**
+     * Batch form of {@link #recordReturn}, called after the borrow rows have
+     * been marked as returned.
+     *
+     * @param memberIds the member of each returned borrow
+     */
+    @Transactional
+    public void recordReturns(List<Long> memberIds) {
+        if (memberIds.isEmpty()) {
+            return;
+        }
+        Set<Long> members = new HashSet<>(memberIds);
+        long stillActive = borrowedBookRepository.countCurrentBorrowsByMember(members).size();
+        adjust(0, -memberIds.size(), 0, -(members.size() - stillActive));
+    }
+
+    @Scheduled(fixedDelayString = "${library.statistics.overdue-refresh-interval:PT1M}",
+            initialDelayString = "${library.statistics.overdue-refresh-interval:PT1M}")
+    @Transactional
+    public void refreshMembersWithOverdue() {
+        long membersWithOverdue = borrowedBookRepository
+                .countCurrentCirculation(LocalDateTime.now())
+                .getMembersWithOverdue();
+        statisticsRepository.updateMembersWithOverdue(LibraryStatistics.SINGLETON_ID, membersWithOverdue);
+    }
+
+    /**
+     * Rebuilds all counters from the tables. The counters row is locked first,
+     * so write paths that touch it wait for the rebuild and then apply their
+     * delta on top of it.
+     */
+    @Scheduled(fixedDelayString = "${library.statistics.reconcile-interval:PT15M}")
+    @Transactional
+    public LibraryStatistics reconcile() {
+        LibraryStatistics statistics = statisticsRepository.findByIdForUpdate(LibraryStatistics.SINGLETON_ID)
+                .orElseGet(LibraryStatistics::new);
+
+        LibraryStatistics saved = statisticsRepository.save(count(statistics));
+        log.debug("Reconciled library statistics: {} books, {} members", saved.getTotalBooks(), saved.getTotalMembers());
+        return saved;
+    }
+
+    private LibraryStatistics count(LibraryStatistics statistics) {
+        BorrowedBookRepository.CirculationCounts circulation =
+                borrowedBookRepository.countCurrentCirculation(LocalDateTime.now());
+
+        statistics.setTotalBooks(bookRepository.count());
+        statistics.setBorrowedBooks(circulation.getBorrowedBooks());
+        statistics.setTotalMembers(memberRepository.count());
+        statistics.setActiveMembers(circulation.getActiveMembers());
+        statistics.setMembersWithOverdue(circulation.getMembersWithOverdue());
+        statistics.setReconciledAt(LocalDateTime.now());
+        return statistics;
+    }
+
+    private void adjust(long booksDelta, long borrowedDelta, long membersDelta, long activeDelta) {
+        statisticsRepository.adjust(LibraryStatistics.SINGLETON_ID, booksDelta, borrowedDelta, membersDelta, activeDelta);
+    }
+}
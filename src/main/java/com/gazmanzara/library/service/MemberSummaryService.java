@@ -0,0 +1,219 @@
+package com.gazmanzara.library.service;
+
+import com.gazmanzara.library.model.JobRun;
+import com.gazmanzara.library.repository.JobRunRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.NestedExceptionUtils;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.*;
+
+/**
+ * Maintains the circulation summary stored on each member: the number of
+ * current and overdue borrows and the time of the last borrow or return.
+ * Borrow checks and member responses read these columns instead of the
+ * member's borrow history.
+ * <p>
+ * The summary is changed with relative updates in the same transaction as
+ * the borrows they describe. Paths that change several members lock their
+ * rows in id order first, so they cannot deadlock each other. A reconcile
+ * recounts the members whose summary disagrees with their borrows, which
+ * also fills in the columns for members that predate them.
+ */
+@Service
+public class MemberSummaryService {
+
+    public static final String RECONCILE_JOB_NAME = "member-summary-reconcile";
+
+    private static final Logger log = LoggerFactory.getLogger(MemberSummaryService.class);
+
+    private static final int RECONCILE_CHUNK_SIZE = 500;
+
+    private static final String LOCK_SQL =
+            "SELECT id, active_borrows, overdue_borrows, borrow_limit FROM members " +
+                    "WHERE id = ANY (?) ORDER BY id FOR UPDATE";
+    private static final String SUMMARY_SQL =
+            "SELECT id, active_borrows, overdue_borrows, borrow_limit FROM members WHERE id = ?";
+    // Takes one borrow slot unless the member is at their limit
+    private static final String CLAIM_SQL =
+            "UPDATE members SET active_borrows = active_borrows + 1, last_activity_at = ?, version = version + 1 " +
+                    "WHERE id = ? AND active_borrows < COALESCE(borrow_limit, ?)";
+    private static final String ADJUST_SQL =
+            "UPDATE members m SET active_borrows = m.active_borrows + d.active, " +
+                    "overdue_borrows = m.overdue_borrows + d.overdue, " +
+                    "last_activity_at = COALESCE(?::timestamp, m.last_activity_at), version = m.version + 1 " +
+                    "FROM unnest(?::bigint[], ?::int[], ?::int[]) AS d(id, active, overdue) WHERE m.id = d.id";
+    private static final String RELEASE_BOOK_SQL =
+            "UPDATE members m SET active_borrows = m.active_borrows - 1, " +
+                    "overdue_borrows = m.overdue_borrows - CASE WHEN bb.status = 'OVERDUE' THEN 1 ELSE 0 END, " +
+                    "version = m.version + 1 " +
+                    "FROM borrowed_books bb " +
+                    "WHERE bb.book_id = ? AND bb.status IN ('BORROWED', 'OVERDUE') AND m.id = bb.member_id";
+    // Members whose counters differ from their current borrows, or who have history but no activity time yet
+    private static final String DRIFTED_SQL =
+            "SELECT m.id FROM members m LEFT JOIN (" +
+                    "SELECT member_id, COUNT(*) AS active, COUNT(*) FILTER (WHERE status = 'OVERDUE') AS overdue " +
+                    "FROM borrowed_books WHERE status IN ('BORROWED', 'OVERDUE') GROUP BY member_id) c " +
+                    "ON c.member_id = m.id " +
+                    "WHERE m.active_borrows <> COALESCE(c.active, 0) OR m.overdue_borrows <> COALESCE(c.overdue, 0) " +
+                    "OR (m.last_activity_at IS NULL AND EXISTS (SELECT 1 FROM borrowed_books bb WHERE bb.member_id = m.id)) " +
+                    "ORDER BY m.id";
+    private static final String RECOUNT_SQL =
+            "UPDATE members m SET active_borrows = c.active, overdue_borrows = c.overdue, " +
+                    "last_activity_at = COALESCE(m.last_activity_at, c.last_activity), version = m.version + 1 " +
+                    "FROM (SELECT mm.id, " +
+                    "COUNT(bb.id) FILTER (WHERE bb.status IN ('BORROWED', 'OVERDUE')) AS active, " +
+                    "COUNT(bb.id) FILTER (WHERE bb.status = 'OVERDUE') AS overdue, " +
+                    "MAX(GREATEST(bb.borrow_date, bb.return_date)) AS last_activity " +
+                    "FROM members mm LEFT JOIN borrowed_books bb ON bb.member_id = mm.id " +
+                    "WHERE mm.id = ANY (?) GROUP BY mm.id) c " +
+                    "WHERE m.id = c.id";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final JobRunRepository jobRunRepository;
+    private final TransactionTemplate transaction;
+    private final int defaultBorrowLimit;
+
+    /**
+     * @param borrowLimit the member's own limit, or the configured default
+     */
+    public record Summary(long memberId, int activeBorrows, int overdueBorrows, int borrowLimit) {
+
+        public int remainingBorrows() {
+            return Math.max(0, borrowLimit - activeBorrows);
+        }
+    }
+
+    // A change to one member's counters
+    public record Delta(int active, int overdue) {
+    }
+
+    public MemberSummaryService(
+            JdbcTemplate jdbcTemplate,
+            JobRunRepository jobRunRepository,
+            PlatformTransactionManager transactionManager,
+            @Value("${library.circulation.default-borrow-limit:10}") int defaultBorrowLimit) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.jobRunRepository = jobRunRepository;
+        this.transaction = new TransactionTemplate(transactionManager);
+        this.defaultBorrowLimit = defaultBorrowLimit;
+    }
+
+    public Optional<Summary> find(long memberId) {
+        return jdbcTemplate.query(SUMMARY_SQL, (rs, row) -> summary(rs), memberId).stream().findFirst();
+    }
+
+    /**
+     * Locks the given members until the current transaction ends and returns
+     * their summaries; unknown ids are left out.
+     */
+    public Map<Long, Summary> lock(Collection<Long> memberIds) {
+        Map<Long, Summary> summaries = new HashMap<>();
+        if (memberIds.isEmpty()) {
+            return summaries;
+        }
+        jdbcTemplate.query(LOCK_SQL, ps -> ps.setArray(1, bigintArray(ps, memberIds.toArray(Long[]::new))), rs -> {
+            Summary summary = summary(rs);
+            summaries.put(summary.memberId(), summary);
+        });
+        return summaries;
+    }
+
+    /**
+     * Takes a borrow slot for the member. Returns false, and changes nothing,
+     * when the member is at their borrow limit or does not exist.
+     */
+    public boolean claimBorrowSlot(long memberId, LocalDateTime now) {
+        return jdbcTemplate.update(CLAIM_SQL, now, memberId, defaultBorrowLimit) == 1;
+    }
+
+    /**
+     * Applies the changes to the members' counters. The members are locked in
+     * id order first.
+     *
+     * @param activityAt recorded as the members' last activity, or null to leave it unchanged
+     */
+    public void adjust(Map<Long, Delta> deltas, LocalDateTime activityAt) {
+        if (deltas.isEmpty()) {
+            return;
+        }
+        lock(deltas.keySet());
+        List<Map.Entry<Long, Delta>> entries = new ArrayList<>(deltas.entrySet());
+        jdbcTemplate.update(ADJUST_SQL, ps -> {
+            ps.setObject(1, activityAt);
+            ps.setArray(2, bigintArray(ps, entries.stream().map(Map.Entry::getKey).toArray(Long[]::new)));
+            ps.setArray(3, ps.getConnection().createArrayOf("integer",
+                    entries.stream().map(entry -> entry.getValue().active()).toArray(Integer[]::new)));
+            ps.setArray(4, ps.getConnection().createArrayOf("integer",
+                    entries.stream().map(entry -> entry.getValue().overdue()).toArray(Integer[]::new)));
+        });
+    }
+
+    public void adjust(long memberId, Delta delta, LocalDateTime activityAt) {
+        adjust(Map.of(memberId, delta), activityAt);
+    }
+
+    // Gives back the slot held by the book's current borrow; call before the book and its borrows are deleted
+    public void releaseBorrowsOfBook(long bookId) {
+        jdbcTemplate.update(RELEASE_BOOK_SQL, bookId);
+    }
+
+    /**
+     * Recounts the summary of every member whose counters disagree with their
+     * borrows. Each chunk locks its members before counting, so borrows and
+     * returns that run meanwhile are neither lost nor counted twice.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(fixedDelayString = "${library.members.summary-reconcile-interval:PT1H}",
+            initialDelayString = "${library.members.summary-reconcile-interval:PT1H}")
+    public JobRun reconcile() {
+        JobRun run = new JobRun(RECONCILE_JOB_NAME);
+        run.setStartedAt(LocalDateTime.now());
+        long started = System.nanoTime();
+        long recounted = 0;
+        try {
+            List<Long> drifted = jdbcTemplate.queryForList(DRIFTED_SQL, Long.class);
+            for (int from = 0; from < drifted.size(); from += RECONCILE_CHUNK_SIZE) {
+                List<Long> chunk = drifted.subList(from, Math.min(from + RECONCILE_CHUNK_SIZE, drifted.size()));
+                recounted += transaction.execute(status -> {
+                    lock(chunk);
+                    return jdbcTemplate.update(RECOUNT_SQL, ps -> ps.setArray(1, bigintArray(ps, chunk.toArray(Long[]::new))));
+                });
+            }
+        } catch (DataAccessException ex) {
+            run.setError(NestedExceptionUtils.getMostSpecificCause(ex).getMessage());
+            log.warn("Member summary reconcile stopped after {} members", recounted, ex);
+        }
+        run.setRowsProcessed(recounted);
+        run.setFinishedAt(LocalDateTime.now());
+        run.setDurationMillis((System.nanoTime() - started) / 1_000_000);
+        if (recounted > 0) {
+            log.info("Member summary reconcile recounted {} members in {} ms", recounted, run.getDurationMillis());
+        }
+        return jobRunRepository.save(run);
+    }
+
+    private Summary summary(java.sql.ResultSet rs) throws SQLException {
+        int limit = rs.getInt("borrow_limit");
+        if (rs.wasNull()) {
+            limit = defaultBorrowLimit;
+        }
+        return new Summary(rs.getLong("id"), rs.getInt("active_borrows"), rs.getInt("overdue_borrows"), limit);
+    }
+
+    private static java.sql.Array bigintArray(PreparedStatement ps, Long[] values) throws SQLException {
+        return ps.getConnection().createArrayOf("bigint", values);
+    }
+}
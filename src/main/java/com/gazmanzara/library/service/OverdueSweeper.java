@@ -0,0 +1,112 @@
+package com.gazmanzara.library.service;
+
+import com.gazmanzara.library.model.JobRun;
+import com.gazmanzara.library.repository.JobRunRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.NestedExceptionUtils;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Moves borrows that are past their due date from BORROWED to OVERDUE, and
+ * counts them in their members' summaries, so that overdue lookups are index
+ * scans on {@code (status, due_date)} rather than date comparisons over every
+ * current borrow. Each chunk is claimed with
+ * {@code SKIP LOCKED} and committed on its own, so the sweep never holds many
+ * row locks, and several instances can sweep at the same time. Until the
+ * next sweep, borrows that have just become due are still BORROWED; checks
+ * that must be exact also compare the due date.
+ */
+@Service
+public class OverdueSweeper {
+
+    public static final String JOB_NAME = "overdue-sweep";
+
+    private static final Logger log = LoggerFactory.getLogger(OverdueSweeper.class);
+
+    private static final String CLAIM_DUE_SQL =
+            "SELECT id, member_id FROM borrowed_books WHERE status = 'BORROWED' AND due_date < ? " +
+                    "ORDER BY due_date LIMIT ? FOR UPDATE SKIP LOCKED";
+    private static final String MARK_OVERDUE_SQL =
+            "UPDATE borrowed_books SET status = 'OVERDUE' WHERE id = ANY (?)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final JobRunRepository jobRunRepository;
+    private final MemberSummaryService memberSummaryService;
+    private final TransactionTemplate transaction;
+    private final int chunkSize;
+
+    public OverdueSweeper(
+            JdbcTemplate jdbcTemplate,
+            JobRunRepository jobRunRepository,
+            MemberSummaryService memberSummaryService,
+            PlatformTransactionManager transactionManager,
+            @Value("${library.overdue.chunk-size:1000}") int chunkSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.jobRunRepository = jobRunRepository;
+        this.memberSummaryService = memberSummaryService;
+        this.transaction = new TransactionTemplate(transactionManager);
+        this.chunkSize = chunkSize;
+    }
+
+    @Scheduled(fixedDelayString = "${library.overdue.sweep-interval:PT5M}",
+            initialDelayString = "${library.overdue.sweep-initial-delay:PT30S}")
+    public JobRun sweep() {
+        JobRun run = new JobRun(JOB_NAME);
+        run.setStartedAt(LocalDateTime.now());
+        long started = System.nanoTime();
+        // Borrows that fall due while the sweep runs are left for the next one
+        LocalDateTime cutoff = run.getStartedAt();
+        long moved = 0;
+        try {
+            int chunk;
+            do {
+                chunk = transaction.execute(status -> markOverdue(cutoff));
+                moved += chunk;
+            } while (chunk > 0);
+        } catch (DataAccessException ex) {
+            run.setError(NestedExceptionUtils.getMostSpecificCause(ex).getMessage());
+            log.warn("Overdue sweep stopped after {} borrows", moved, ex);
+        }
+        run.setRowsProcessed(moved);
+        run.setFinishedAt(LocalDateTime.now());
+        run.setDurationMillis((System.nanoTime() - started) / 1_000_000);
+        if (moved > 0) {
+            log.info("Overdue sweep marked {} borrows as overdue in {} ms", moved, run.getDurationMillis());
+        }
+        return jobRunRepository.save(run);
+    }
+
+    // Runs in the chunk's transaction; returns the number of borrows marked
+    private int markOverdue(LocalDateTime cutoff) {
+        List<Long> borrowIds = new ArrayList<>(chunkSize);
+        Map<Long, MemberSummaryService.Delta> deltas = new HashMap<>();
+        jdbcTemplate.query(CLAIM_DUE_SQL, ps -> {
+            ps.setObject(1, cutoff);
+            ps.setInt(2, chunkSize);
+        }, rs -> {
+            borrowIds.add(rs.getLong("id"));
+            deltas.merge(rs.getLong("member_id"), new MemberSummaryService.Delta(0, 1),
+                    (a, b) -> new MemberSummaryService.Delta(0, a.overdue() + b.overdue()));
+        });
+        if (borrowIds.isEmpty()) {
+            return 0;
+        }
+        jdbcTemplate.update(MARK_OVERDUE_SQL, ps -> ps.setArray(1,
+                ps.getConnection().createArrayOf("bigint", borrowIds.toArray(Long[]::new))));
+        memberSummaryService.adjust(deltas, null);
+        return borrowIds.size();
+    }
+}
@@ -0,0 +1,526 @@
+package com.gazmanzara.library.service;
+
+import com.gazmanzara.library.model.Author;
+import com.gazmanzara.library.model.Book;
+import com.gazmanzara.library.model.Category;
+import com.gazmanzara.library.repository.AuthorRepository;
+import com.gazmanzara.library.repository.BookRepository;
+import com.gazmanzara.library.repository.CategoryRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Typeahead over book titles, author names and category names.
+ * <p>
+ * Names are folded with {@link TextNormalizer} and every word start is a
+ * key, so "potter" finds "Harry Potter". The keys are one sorted array of
+ * references into the folded names, used as a trie: a prefix is a range of
+ * it, and the characters that can follow a prefix are found by skipping
+ * from one run to the next. A max tree over the range gives its most
+ * popular entries first. When a prefix matches fewer entries than asked
+ * for, the rest are filled with matches one edit away: a character added,
+ * dropped, replaced, or two neighbours swapped.
+ * <p>
+ * Popularity is the number of borrows of a book, archived ones included,
+ * summed over the books of an author or a category. The index is rebuilt
+ * at startup and on {@code library.suggest.refresh-interval}, which also
+ * brings the popularity up to date; catalog writes in between are searched
+ * linearly until the next rebuild.
+ */
+@Service
+public class SuggestIndex {
+
+    private static final Logger log = LoggerFactory.getLogger(SuggestIndex.class);
+
+    // Below this length a prefix matches so much that a one-edit variant is more noise than correction
+    private static final int FUZZY_MIN_LENGTH = 3;
+
+    public enum Kind {
+        BOOK,
+        AUTHOR,
+        CATEGORY
+    }
+
+    public record Suggestion(Kind kind, long id, String text, long popularity) {
+    }
+
+    private final BookRepository bookRepository;
+    private final AuthorRepository authorRepository;
+    private final CategoryRepository categoryRepository;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private State state = new State(new ArrayList<>());
+    // Writes made while a rebuild reads the tables, applied again to the rebuilt index
+    private List<Consumer<State>> pending;
+    private volatile boolean loaded;
+
+    public SuggestIndex(BookRepository bookRepository, AuthorRepository authorRepository,
+                        CategoryRepository categoryRepository) {
+        this.bookRepository = bookRepository;
+        this.authorRepository = authorRepository;
+        this.categoryRepository = categoryRepository;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(fixedDelayString = "${library.suggest.refresh-interval:PT1H}",
+            initialDelayString = "${library.suggest.refresh-interval:PT1H}")
+    // On the primary: a replica that has not replayed a recent write would drop it from the index until the next run
+    @Transactional
+    public void rebuild() {
+        lock.writeLock().lock();
+        try {
+            pending = new ArrayList<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        try {
+            List<Entry> entries = new ArrayList<>();
+            Map<Long, Entry> books = new HashMap<>();
+            Map<Long, Long> authorBorrows = new HashMap<>();
+            try (Stream<BookRepository.TitleRow> rows = bookRepository.streamTitleRows()) {
+                rows.forEach(row -> {
+                    Entry entry = new Entry(Kind.BOOK, row.getId(), row.getTitle(), row.getBorrows());
+                    entries.add(entry);
+                    books.put(row.getId(), entry);
+                    if (row.getAuthorId() != null) {
+                        authorBorrows.merge(row.getAuthorId(), row.getBorrows(), Long::sum);
+                    }
+                });
+            }
+            Map<Long, Long> categoryBorrows = new HashMap<>();
+            try (Stream<BookRepository.CategoryRow> rows = bookRepository.streamCategoryRows()) {
+                rows.forEach(row -> {
+                    Entry book = books.get(row.getBookId());
+                    if (book != null) {
+                        categoryBorrows.merge(row.getCategoryId(), book.popularity, Long::sum);
+                    }
+                });
+            }
+            for (Author author : authorRepository.findAll()) {
+                entries.add(new Entry(Kind.AUTHOR, author.getId(), author.getName(),
+                        authorBorrows.getOrDefault(author.getId(), 0L)));
+            }
+            for (Category category : categoryRepository.findAll()) {
+                entries.add(new Entry(Kind.CATEGORY, category.getId(), category.getName(),
+                        categoryBorrows.getOrDefault(category.getId(), 0L)));
+            }
+            books.clear();
+
+            State rebuilt = new State(entries);
+            lock.writeLock().lock();
+            try {
+                pending.forEach(update -> update.accept(rebuilt));
+                state = rebuilt;
+                loaded = true;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            log.info("Suggest index loaded: {} names, {} keys", entries.size(), rebuilt.keys.length);
+        } finally {
+            lock.writeLock().lock();
+            try {
+                pending = null;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    /**
+     * Names with a word starting with the given text, most popular first,
+     * followed by names one edit away from it if there are not enough.
+     */
+    public List<Suggestion> suggest(String text, int limit) {
+        String prefix = TextNormalizer.fold(text);
+        if (prefix.isEmpty()) {
+            return List.of();
+        }
+        lock.readLock().lock();
+        try {
+            return state.suggest(prefix, limit);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // The methods below take effect once the current transaction commits; a renamed entry keeps its popularity
+
+    public void bookSaved(Book book) {
+        booksSaved(List.of(book));
+    }
+
+    public void booksSaved(Collection<Book> books) {
+        Map<Long, String> titles = new LinkedHashMap<>();
+        books.forEach(book -> titles.put(book.getId(), book.getTitle()));
+        AfterCommit.run(() -> write(current -> titles.forEach((id, title) -> current.put(Kind.BOOK, id, title))));
+    }
+
+    public void bookRemoved(long bookId) {
+        AfterCommit.run(() -> write(current -> current.remove(Kind.BOOK, bookId)));
+    }
+
+    public void authorSaved(long authorId, String name) {
+        AfterCommit.run(() -> write(current -> current.put(Kind.AUTHOR, authorId, name)));
+    }
+
+    public void authorRemoved(long authorId) {
+        AfterCommit.run(() -> write(current -> current.remove(Kind.AUTHOR, authorId)));
+    }
+
+    public void categorySaved(long categoryId, String name) {
+        AfterCommit.run(() -> write(current -> current.put(Kind.CATEGORY, categoryId, name)));
+    }
+
+    public void categoryRemoved(long categoryId) {
+        AfterCommit.run(() -> write(current -> current.remove(Kind.CATEGORY, categoryId)));
+    }
+
+    private void write(Consumer<State> update) {
+        lock.writeLock().lock();
+        try {
+            update.accept(state);
+            if (pending != null) {
+                pending.add(update);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Whether some prefix of {@code text} from {@code offset} is at most one
+     * edit away from {@code prefix}.
+     */
+    static boolean startsWithinOneEdit(String text, int offset, String prefix) {
+        int length = text.length() - offset;
+        int i = 0;
+        while (i < prefix.length() && i < length && text.charAt(offset + i) == prefix.charAt(i)) {
+            i++;
+        }
+        if (i == prefix.length()) {
+            return true;
+        }
+        String rest = prefix.substring(i + 1);
+        return text.startsWith(rest, offset + i)
+                || text.startsWith(rest, offset + i + 1)
+                || text.startsWith(prefix.substring(i), offset + i + 1)
+                || (i + 1 < prefix.length() && i + 1 < length
+                && text.charAt(offset + i) == prefix.charAt(i + 1) && text.charAt(offset + i + 1) == prefix.charAt(i)
+                && text.startsWith(prefix.substring(i + 2), offset + i + 2));
+    }
+
+    private static final class Entry {
+        final Kind kind;
+        final long id;
+        final String text;
+        final String folded;
+        final long popularity;
+
+        Entry(Kind kind, long id, String text, long popularity) {
+            this.kind = kind;
+            this.id = id;
+            this.text = text;
+            this.folded = TextNormalizer.fold(text);
+            this.popularity = popularity;
+        }
+
+        // Offsets of the words in the folded name
+        int[] wordStarts() {
+            int[] starts = new int[folded.length()];
+            int count = 0;
+            for (int i = 0; i < folded.length(); i++) {
+                if (i == 0 || folded.charAt(i - 1) == ' ') {
+                    starts[count++] = i;
+                }
+            }
+            return Arrays.copyOf(starts, count);
+        }
+
+        Suggestion toSuggestion() {
+            return new Suggestion(kind, id, text, popularity);
+        }
+    }
+
+    /**
+     * Entries by slot. Those below {@code indexed} have their word starts in
+     * {@code keys}, packed as slot and offset; later ones are searched
+     * linearly. Replaced and removed entries stay in place, since the keys
+     * still sort by their names, and are skipped.
+     */
+    private static final class State {
+        private static final Comparator<Entry> RANK = Comparator.<Entry>comparingLong(entry -> entry.popularity).reversed()
+                .thenComparing(entry -> entry.folded);
+
+        final List<Entry> entries;
+        final Map<Kind, Map<Long, Integer>> slots = new EnumMap<>(Kind.class);
+        final BitSet removed = new BitSet();
+        final int indexed;
+        final long[] keys;
+        // Max popularity over key ranges: leaves at keys.length + i, node n covers its children 2n and 2n + 1
+        final long[] tree;
+
+        State(List<Entry> entries) {
+            this.entries = entries;
+            for (Kind kind : Kind.values()) {
+                slots.put(kind, new HashMap<>());
+            }
+            int count = 0;
+            for (int slot = 0; slot < entries.size(); slot++) {
+                Entry entry = entries.get(slot);
+                slots.get(entry.kind).put(entry.id, slot);
+                count += entry.wordStarts().length;
+            }
+            indexed = entries.size();
+
+            Long[] sorted = new Long[count];
+            int next = 0;
+            for (int slot = 0; slot < entries.size(); slot++) {
+                for (int offset : entries.get(slot).wordStarts()) {
+                    sorted[next++] = key(slot, offset);
+                }
+            }
+            Arrays.sort(sorted, this::compare);
+            keys = new long[count];
+            tree = new long[2 * count];
+            for (int i = 0; i < count; i++) {
+                keys[i] = sorted[i];
+                tree[count + i] = entries.get(slot(keys[i])).popularity;
+            }
+            for (int node = count - 1; node > 0; node--) {
+                tree[node] = Math.max(tree[2 * node], tree[2 * node + 1]);
+            }
+        }
+
+        void put(Kind kind, long id, String text) {
+            Integer previous = slots.get(kind).get(id);
+            long popularity = 0;
+            if (previous != null) {
+                if (entries.get(previous).text.equals(text)) {
+                    return;
+                }
+                popularity = entries.get(previous).popularity;
+                removed.set(previous);
+            }
+            slots.get(kind).put(id, entries.size());
+            entries.add(new Entry(kind, id, text, popularity));
+        }
+
+        void remove(Kind kind, long id) {
+            Integer slot = slots.get(kind).remove(id);
+            if (slot != null) {
+                removed.set(slot);
+            }
+        }
+
+        List<Suggestion> suggest(String prefix, int limit) {
+            Set<Integer> exact = new HashSet<>();
+            top(range(prefix), limit, Set.of(), exact);
+            for (int slot = indexed; slot < entries.size(); slot++) {
+                if (!removed.get(slot) && matches(entries.get(slot), prefix, false)) {
+                    exact.add(slot);
+                }
+            }
+            List<Entry> found = ranked(exact, limit);
+            if (found.size() < limit && prefix.length() >= FUZZY_MIN_LENGTH) {
+                Set<Integer> fuzzy = new HashSet<>();
+                for (String variant : oneEditAway(prefix)) {
+                    top(range(variant), limit, exact, fuzzy);
+                }
+                for (int slot = indexed; slot < entries.size(); slot++) {
+                    if (!removed.get(slot) && !exact.contains(slot) && matches(entries.get(slot), prefix, true)) {
+                        fuzzy.add(slot);
+                    }
+                }
+                found.addAll(ranked(fuzzy, limit - found.size()));
+            }
+            return found.stream().map(Entry::toSuggestion).toList();
+        }
+
+        private List<Entry> ranked(Set<Integer> slots, int limit) {
+            return slots.stream()
+                    .map(entries::get)
+                    .sorted(RANK)
+                    .limit(limit)
+                    .collect(ArrayList::new, ArrayList::add, ArrayList::addAll);
+        }
+
+        private static boolean matches(Entry entry, String prefix, boolean fuzzy) {
+            for (int offset : entry.wordStarts()) {
+                if (fuzzy ? startsWithinOneEdit(entry.folded, offset, prefix) : entry.folded.startsWith(prefix, offset)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        // Adds the slots of the most popular live entries with a key in the range, up to limit, other than those excluded
+        private void top(int[] range, int limit, Set<Integer> excluded, Set<Integer> into) {
+            int n = keys.length;
+            PriorityQueue<Integer> queue = new PriorityQueue<>((a, b) -> Long.compare(tree[b], tree[a]));
+            for (int lo = range[0] + n, hi = range[1] + n; lo < hi; lo >>= 1, hi >>= 1) {
+                if ((lo & 1) == 1) {
+                    queue.add(lo++);
+                }
+                if ((hi & 1) == 1) {
+                    queue.add(--hi);
+                }
+            }
+            Set<Integer> found = new HashSet<>();
+            while (!queue.isEmpty() && found.size() < limit) {
+                int node = queue.poll();
+                if (node < n) {
+                    queue.add(2 * node);
+                    queue.add(2 * node + 1);
+                } else {
+                    int slot = slot(keys[node - n]);
+                    if (!removed.get(slot) && !excluded.contains(slot)) {
+                        found.add(slot);
+                    }
+                }
+            }
+            into.addAll(found);
+        }
+
+        /**
+         * Prefixes one edit away from the given one that some key starts
+         * with. Added and replacing characters are only those that follow
+         * the unchanged part of the prefix in some key.
+         */
+        private Set<String> oneEditAway(String prefix) {
+            Set<String> variants = new LinkedHashSet<>();
+            for (int i = 0; i < prefix.length(); i++) {
+                String head = prefix.substring(0, i);
+                variants.add(head + prefix.substring(i + 1));
+                if (i + 1 < prefix.length()) {
+                    variants.add(head + prefix.charAt(i + 1) + prefix.charAt(i) + prefix.substring(i + 2));
+                }
+                for (char next : following(head)) {
+                    variants.add(head + next + prefix.substring(i + 1));
+                    variants.add(head + next + prefix.substring(i));
+                }
+            }
+            variants.remove(prefix);
+            return variants;
+        }
+
+        // Characters that come right after the prefix in some key, found by skipping from one run to the next
+        private List<Character> following(String prefix) {
+            List<Character> chars = new ArrayList<>();
+            int[] range = range(prefix);
+            int i = range[0];
+            while (i < range[1]) {
+                Entry entry = entries.get(slot(keys[i]));
+                int at = offset(keys[i]) + prefix.length();
+                if (at >= entry.folded.length()) {
+                    i++;
+                    continue;
+                }
+                char next = entry.folded.charAt(at);
+                chars.add(next);
+                i = next == Character.MAX_VALUE ? range[1] : lowerBound(prefix + (char) (next + 1));
+            }
+            return chars;
+        }
+
+        // Keys starting with the prefix, as [from, to)
+        private int[] range(String prefix) {
+            return new int[]{lowerBound(prefix), upperBound(prefix)};
+        }
+
+        private int lowerBound(String prefix) {
+            int lo = 0;
+            int hi = keys.length;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (compare(keys[mid], prefix) < 0) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            return lo;
+        }
+
+        private int upperBound(String prefix) {
+            int lo = 0;
+            int hi = keys.length;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (compare(keys[mid], prefix) <= 0) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            return lo;
+        }
+
+        // Orders the key by its text cut to the prefix's length; 0 when it starts with the prefix
+        private int compare(long key, String prefix) {
+            String text = entries.get(slot(key)).folded;
+            int offset = offset(key);
+            int length = Math.min(text.length() - offset, prefix.length());
+            for (int i = 0; i < length; i++) {
+                int difference = text.charAt(offset + i) - prefix.charAt(i);
+                if (difference != 0) {
+                    return difference;
+                }
+            }
+            return text.length() - offset < prefix.length() ? -1 : 0;
+        }
+
+        private int compare(long a, long b) {
+            String first = entries.get(slot(a)).folded;
+            String second = entries.get(slot(b)).folded;
+            int i = offset(a);
+            int j = offset(b);
+            while (i < first.length() && j < second.length()) {
+                int difference = first.charAt(i++) - second.charAt(j++);
+                if (difference != 0) {
+                    return difference;
+                }
+            }
+            return (first.length() - i) - (second.length() - j);
+        }
+
+        private static long key(int slot, int offset) {
+            return (long) slot << 16 | offset;
+        }
+
+        private static int slot(long key) {
+            return (int) (key >>> 16);
+        }
+
+        private static int offset(long key) {
+            return (int) (key & 0xFFFF);
+        }
+    }
+}
@@ -0,0 +1,65 @@
+-- The schema as Hibernate's ddl-auto=update created it before the migrations existed. Databases created that way
+-- are baselined at this version and skip this script, so constraint names are Hibernate's generated ones, to be the
+-- same on new and existing databases. Everything added since then lives in the later migrations.
+
+CREATE TABLE author (
+    id        bigint GENERATED BY DEFAULT AS IDENTITY,
+    biography text,
+    name      varchar(255) NOT NULL,
+    CONSTRAINT author_pkey PRIMARY KEY (id),
+    CONSTRAINT ukor6k6jmywerxbme223c988bmg UNIQUE (name)
+);
+
+CREATE TABLE category (
+    id          bigint GENERATED BY DEFAULT AS IDENTITY,
+    description text,
+    name        varchar(255) NOT NULL,
+    CONSTRAINT category_pkey PRIMARY KEY (id),
+    CONSTRAINT uk46ccwnsi9409t36lurvtyljak UNIQUE (name)
+);
+
+CREATE TABLE books (
+    id               bigint GENERATED BY DEFAULT AS IDENTITY,
+    description      text,
+    img_url          varchar(255),
+    isbn             varchar(255) NOT NULL,
+    publication_year integer,
+    title            varchar(255) NOT NULL,
+    author_id        bigint,
+    CONSTRAINT books_pkey PRIMARY KEY (id),
+    CONSTRAINT ukkibbepcitr0a3cpk3rfr7nihn UNIQUE (isbn),
+    CONSTRAINT fkdh6rjf063y1kmud3t0vrmrlo3 FOREIGN KEY (author_id) REFERENCES author (id)
+);
+
+CREATE TABLE book_categories (
+    book_id     bigint NOT NULL,
+    category_id bigint NOT NULL,
+    CONSTRAINT book_categories_pkey PRIMARY KEY (book_id, category_id),
+    CONSTRAINT fk3k3ahp5vqlgmrr9swqqprmbxy FOREIGN KEY (book_id) REFERENCES books (id),
+    CONSTRAINT fken2tgslrqspfien26r5hagxf9 FOREIGN KEY (category_id) REFERENCES category (id)
+);
+
+CREATE TABLE members (
+    id         bigint GENERATED BY DEFAULT AS IDENTITY,
+    email      varchar(255),
+    first_name varchar(255) NOT NULL,
+    last_name  varchar(255) NOT NULL,
+    phone      varchar(255) NOT NULL,
+    CONSTRAINT members_pkey PRIMARY KEY (id),
+    CONSTRAINT uk1ftq959eeh8vwc4ywlxwclqjj UNIQUE (phone),
+    CONSTRAINT uk9d30a9u1qpg8eou0otgkwrp5d UNIQUE (email)
+);
+
+CREATE TABLE borrowed_books (
+    id          bigint GENERATED BY DEFAULT AS IDENTITY,
+    borrow_date timestamp(6) NOT NULL,
+    due_date    timestamp(6) NOT NULL,
+    return_date timestamp(6),
+    status      varchar(255) NOT NULL,
+    book_id     bigint       NOT NULL,
+    member_id   bigint       NOT NULL,
+    CONSTRAINT borrowed_books_pkey PRIMARY KEY (id),
+    CONSTRAINT borrowed_books_status_check CHECK (status IN ('BORROWED', 'RETURNED')),
+    CONSTRAINT fkirp80rty69v7va8179fdkbrls FOREIGN KEY (book_id) REFERENCES books (id),
+    CONSTRAINT fkicgs1rdhct1pjr25spi3flcqm FOREIGN KEY (member_id) REFERENCES members (id)
+);
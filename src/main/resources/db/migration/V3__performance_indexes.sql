@@ -0,0 +1,32 @@
+-- Indexes behind the repository queries' filters, joins and foreign keys. The plan each query is expected to get
+-- is recorded with @ExpectedPlan on the repository method and checked by QueryPlanTests.
+-- Plain CREATE INDEX blocks writes to the table while it builds; on a large live database run this in a quiet hour.
+
+-- A book's borrow history and current borrow; the partial unique index only covers current borrows
+CREATE INDEX ix_borrowed_books_book_status ON borrowed_books (book_id, status);
+-- Windowed rankings on the dashboard
+CREATE INDEX ix_borrowed_books_borrow_date ON borrowed_books (borrow_date);
+CREATE INDEX ix_borrowed_books_archive_borrow_date ON borrowed_books_archive (borrow_date);
+-- Returned borrows due for the archive
+CREATE INDEX ix_borrowed_books_returned ON borrowed_books (return_date) WHERE status = 'RETURNED';
+
+CREATE INDEX ix_book_categories_category ON book_categories (category_id);
+CREATE INDEX ix_books_author ON books (author_id);
+CREATE INDEX ix_books_publication_year ON books (publication_year);
+
+-- Case-insensitive substring searches. The derived ...ContainingIgnoreCase queries and findRowsByTitleContaining
+-- compare upper(column) LIKE upper(pattern), which a trigram index on the same expression serves. Categories are
+-- few enough to be scanned
+CREATE EXTENSION IF NOT EXISTS pg_trgm;
+CREATE INDEX ix_books_title_trgm ON books USING gin (upper(title) gin_trgm_ops);
+CREATE INDEX ix_author_name_trgm ON author USING gin (upper(name) gin_trgm_ops);
+CREATE INDEX ix_members_first_name_trgm ON members USING gin (upper(first_name) gin_trgm_ops);
+CREATE INDEX ix_members_last_name_trgm ON members USING gin (upper(last_name) gin_trgm_ops);
+
+-- Statistics for the indexed expressions
+ANALYZE books;
+ANALYZE author;
+ANALYZE members;
+ANALYZE borrowed_books;
+ANALYZE borrowed_books_archive;
+ANALYZE book_categories;
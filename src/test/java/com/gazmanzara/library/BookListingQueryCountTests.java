@@ -0,0 +1,101 @@
+package com.gazmanzara.library;
+
+import com.gazmanzara.library.config.RequestQueryStatistics;
+import com.gazmanzara.library.dto.BookDTO;
+import com.gazmanzara.library.dto.CursorPage;
+import com.gazmanzara.library.model.Author;
+import com.gazmanzara.library.model.Book;
+import com.gazmanzara.library.model.Category;
+import com.gazmanzara.library.service.BookReadService;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ApplicationContext;
+
+import java.util.List;
+import java.util.Set;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Counts the statements Hibernate prepares for the book listings, which must
+ * not grow with the number of books listed. Adds its own books to the
+ * PostgreSQL database configured through DB_URL, DB_USER and DB_PASS, and
+ * removes them afterwards; run with {@code mvn test -Dquerycounts=true}.
+ */
+@EnabledIfSystemProperty(named = "querycounts", matches = "true")
+@SpringBootTest
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class BookListingQueryCountTests {
+
+    private static final int BOOKS = 600;
+
+    @Autowired
+    private ApplicationContext context;
+
+    @Autowired
+    private BookReadService bookReadService;
+
+    private TestCatalog catalog;
+    private Author author;
+    private List<Long> bookIds;
+
+    @BeforeAll
+    void addBooks() {
+        catalog = new TestCatalog(context, "Count");
+        author = catalog.author();
+        Category fiction = catalog.category("fiction");
+        Category poetry = catalog.category("poetry");
+        bookIds = catalog.books(author, BOOKS, Set.of(fiction, poetry)).stream().map(Book::getId).toList();
+    }
+
+    @AfterAll
+    void removeBooks() {
+        catalog.remove();
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 50, 500})
+    void pageUsesTwoStatementsWhateverItsSize(int size) {
+        CursorPage<BookDTO> page = counted(() -> bookReadService.page(bookIds.get(0) - 1, size), 2);
+
+        assertThat(page.getItems()).hasSize(size)
+                .allSatisfy(book -> assertThat(book.categories).hasSize(2));
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 50, 500})
+    void requestedBooksUseTwoStatementsWhateverTheirNumber(int size) {
+        List<BookDTO> books = counted(() -> bookReadService.findAllInOrder(bookIds.subList(0, size)), 2);
+
+        assertThat(books).hasSize(size);
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 50, 500})
+    void authorListingUsesTwoStatementsWhateverItsSize(int size) {
+        List<BookDTO> books = counted(() -> bookReadService.findByAuthorId(author.getId(), size), 2);
+
+        assertThat(books).hasSize(size)
+                .allSatisfy(book -> assertThat(book.author.name).isEqualTo(author.getName()));
+    }
+
+    // Runs the listing and checks it prepared the given number of statements and loaded no entities
+    private static <T> T counted(Supplier<T> listing, int statements) {
+        RequestQueryStatistics.Counts counts = RequestQueryStatistics.begin();
+        try {
+            T result = listing.get();
+            assertThat(counts.statements()).isEqualTo(statements);
+            assertThat(counts.entities()).isZero();
+            return result;
+        } finally {
+            RequestQueryStatistics.end();
+        }
+    }
+}
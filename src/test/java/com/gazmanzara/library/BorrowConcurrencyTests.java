@@ -0,0 +1,106 @@
+package com.gazmanzara.library;
+
+import com.gazmanzara.library.model.Book;
+import com.gazmanzara.library.model.Member;
+import com.gazmanzara.library.repository.BorrowedBookRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.context.ApplicationContext;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Races many kiosks for the same books and checks that every book ends up
+ * with exactly one active borrow. Needs the PostgreSQL database configured
+ * through DB_URL, DB_USER and DB_PASS, from which it removes its books,
+ * members and borrows afterwards; run with {@code mvn test -Dstress=true}.
+ */
+@EnabledIfSystemProperty(named = "stress", matches = "true")
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+class BorrowConcurrencyTests {
+
+    private static final int BOOKS = 200;
+    private static final int KIOSKS = 32;
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private ApplicationContext context;
+
+    @Autowired
+    private BorrowedBookRepository borrowedBookRepository;
+
+    private TestCatalog catalog;
+
+    @AfterEach
+    void removeCatalog() {
+        if (catalog != null) {
+            catalog.remove();
+        }
+    }
+
+    @Test
+    void concurrentBorrowsOfTheSameBookCreateOneActiveBorrow() throws Exception {
+        catalog = new TestCatalog(context, "Stress");
+        List<Long> bookIds = catalog.books(catalog.author(), BOOKS, Set.of()).stream().map(Book::getId).toList();
+        List<Long> memberIds = catalog.members(KIOSKS).stream().map(Member::getId).toList();
+
+        HttpClient client = HttpClient.newHttpClient();
+        AtomicInteger created = new AtomicInteger();
+        AtomicInteger rejected = new AtomicInteger();
+        AtomicInteger failed = new AtomicInteger();
+
+        long started = System.nanoTime();
+        try (ExecutorService kiosks = Executors.newFixedThreadPool(KIOSKS)) {
+            for (Long bookId : bookIds) {
+                // Every kiosk tries to borrow the same book at the same moment
+                CountDownLatch start = new CountDownLatch(1);
+                List<Future<?>> attempts = new ArrayList<>();
+                for (Long memberId : memberIds) {
+                    attempts.add(kiosks.submit(() -> {
+                        start.await();
+                        HttpRequest request = HttpRequest.newBuilder(URI.create(
+                                        "http://localhost:" + port + "/api/borrowed-books/borrow?bookId=" + bookId + "&memberId=" + memberId))
+                                .POST(HttpRequest.BodyPublishers.noBody())
+                                .build();
+                        int status = client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+                        (status == 201 ? created : status == 400 ? rejected : failed).incrementAndGet();
+                        return null;
+                    }));
+                }
+                start.countDown();
+                for (Future<?> attempt : attempts) {
+                    attempt.get();
+                }
+            }
+        }
+        double seconds = (System.nanoTime() - started) / 1e9;
+        int requests = BOOKS * KIOSKS;
+        System.out.printf("Borrow stress: %d requests from %d kiosks in %.2fs (%.0f req/s): %d created, %d rejected, %d failed%n",
+                requests, KIOSKS, seconds, requests / seconds, created.get(), rejected.get(), failed.get());
+
+        assertThat(failed.get()).isZero();
+        assertThat(created.get()).isEqualTo(BOOKS);
+        for (Long bookId : bookIds) {
+            assertThat(borrowedBookRepository.findCurrentBorrowerIds(bookId)).hasSize(1);
+        }
+    }
+}
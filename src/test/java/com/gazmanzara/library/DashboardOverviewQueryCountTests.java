@@ -0,0 +1,92 @@
+package com.gazmanzara.library;
+
+import com.gazmanzara.library.config.RequestQueryStatistics;
+import com.gazmanzara.library.controller.DashboardController;
+import com.gazmanzara.library.model.Author;
+import com.gazmanzara.library.service.LibraryStatisticsService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ApplicationContext;
+
+import java.util.Map;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Checks that the dashboard overview, and the reconcile that recounts its
+ * figures from the tables, read aggregates rather than borrow, book or
+ * member rows. Adds its own books and members to the PostgreSQL database
+ * configured through DB_URL, DB_USER and DB_PASS, and removes them
+ * afterwards; run with {@code mvn test -Dquerycounts=true}.
+ */
+@EnabledIfSystemProperty(named = "querycounts", matches = "true")
+@SpringBootTest
+class DashboardOverviewQueryCountTests {
+
+    @Autowired
+    private DashboardController dashboardController;
+
+    @Autowired
+    private LibraryStatisticsService statisticsService;
+
+    @Autowired
+    private ApplicationContext context;
+
+    private TestCatalog catalog;
+
+    @AfterEach
+    void removeCatalog() {
+        if (catalog != null) {
+            catalog.remove();
+        }
+    }
+
+    @Test
+    void overviewReadsOnlyTheCountersRow() {
+        statisticsService.reconcile();
+
+        RequestQueryStatistics.Counts counts = RequestQueryStatistics.begin();
+        Map<String, Object> overview;
+        try {
+            overview = dashboardController.getDashboardOverview().getBody();
+        } finally {
+            RequestQueryStatistics.end();
+        }
+
+        assertThat(overview).containsKeys("totalBooks", "borrowedBooks", "availableBooks",
+                "totalMembers", "activeMembers", "membersWithOverdue");
+        assertThat(counts.statements()).isLessThanOrEqualTo(1);
+        assertThat(counts.entities()).isLessThanOrEqualTo(1);
+    }
+
+    @Test
+    void reconcileCostDoesNotGrowWithTheData() {
+        RequestQueryStatistics.Counts before = reconcileCounted();
+
+        catalog = new TestCatalog(context, "Overview");
+        Author author = catalog.author();
+        catalog.books(author, 100, Set.of());
+        catalog.members(100);
+        RequestQueryStatistics.Counts after = reconcileCounted();
+
+        assertThat(before.statements()).isPositive();
+        assertThat(after.statements()).isEqualTo(before.statements());
+        assertThat(after.rows()).isEqualTo(before.rows());
+        // The counters row itself; no book, member or borrow is materialized
+        assertThat(after.entities()).isLessThanOrEqualTo(1);
+    }
+
+    private RequestQueryStatistics.Counts reconcileCounted() {
+        RequestQueryStatistics.Counts counts = RequestQueryStatistics.begin();
+        try {
+            statisticsService.reconcile();
+        } finally {
+            RequestQueryStatistics.end();
+        }
+        return counts;
+    }
+}
@@ -0,0 +1,101 @@
+package com.gazmanzara.library;
+
+import com.gazmanzara.library.repository.ArchivedBorrowRepository;
+import com.gazmanzara.library.repository.BookRepository;
+import com.gazmanzara.library.repository.BorrowedBookRepository;
+import com.gazmanzara.library.service.ExportService;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Exports the whole catalog and borrow ledger and checks that the heap in
+ * use after a collection does not grow with the number of rows written.
+ * Meant for a database filled by the load-test DatasetGenerator, configured
+ * through DB_URL, DB_USER and DB_PASS; run with
+ * {@code mvn test -Dexportheap=true -DargLine=-Xmx3g}.
+ */
+@EnabledIfSystemProperty(named = "exportheap", matches = "true")
+@SpringBootTest(properties = "library.archive.initial-delay=P1D")
+class ExportHeapTests {
+
+    // Cursor buffers and serializer state; far below what holding the rows would take
+    private static final long MAX_GROWTH = 64L * 1024 * 1024;
+
+    @Autowired
+    private ExportService exportService;
+
+    @Autowired
+    private BookRepository bookRepository;
+
+    @Autowired
+    private BorrowedBookRepository borrowedBookRepository;
+
+    @Autowired
+    private ArchivedBorrowRepository archivedBorrowRepository;
+
+    @Test
+    void bookExportUsesConstantHeap() {
+        HeapSampler sampler = new HeapSampler(100_000);
+        exportService.exportBooks(sampler);
+
+        assertThat(sampler.lines).isEqualTo(bookRepository.count());
+        assertThat(sampler.lines).isGreaterThan(500_000);
+        assertThat(sampler.maxGrowth()).isLessThan(MAX_GROWTH);
+    }
+
+    @Test
+    void borrowExportUsesConstantHeap() {
+        HeapSampler sampler = new HeapSampler(1_000_000);
+        exportService.exportBorrowRecords(sampler, true);
+
+        assertThat(sampler.lines).isEqualTo(borrowedBookRepository.count() + archivedBorrowRepository.count());
+        assertThat(sampler.lines).isGreaterThan(5_000_000);
+        assertThat(sampler.maxGrowth()).isLessThan(MAX_GROWTH);
+    }
+
+    // Discards the export, counting its lines and measuring the heap every so many of them
+    private static final class HeapSampler extends OutputStream {
+        private final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        private final long interval;
+        private final long baseline;
+        private long lines;
+        private long max;
+
+        HeapSampler(long interval) {
+            this.interval = interval;
+            this.baseline = usedAfterCollection();
+        }
+
+        @Override
+        public void write(int b) {
+            if (b == '\n' && ++lines % interval == 0) {
+                max = Math.max(max, usedAfterCollection());
+            }
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) {
+            for (int i = offset; i < offset + length; i++) {
+                write(bytes[i]);
+            }
+        }
+
+        long maxGrowth() {
+            return max - baseline;
+        }
+
+        private long usedAfterCollection() {
+            System.gc();
+            return memory.getHeapMemoryUsage().getUsed();
+        }
+    }
+}
@@ -0,0 +1,472 @@
+package com.gazmanzara.library;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.gazmanzara.library.model.BorrowStatus;
+import com.gazmanzara.library.repository.ArchivedBorrowRepository;
+import com.gazmanzara.library.repository.AuthorRepository;
+import com.gazmanzara.library.repository.BookRepository;
+import com.gazmanzara.library.repository.BorrowedBookRepository;
+import com.gazmanzara.library.repository.CategoryRepository;
+import com.gazmanzara.library.repository.ExpectedPlan;
+import com.gazmanzara.library.repository.JobRunRepository;
+import com.gazmanzara.library.repository.LibraryStatisticsRepository;
+import com.gazmanzara.library.repository.MemberRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.data.domain.Limit;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Checks every repository query against its {@link ExpectedPlan}. Each query
+ * method is called once with arguments taken from the data; the statements
+ * it prepares are recorded and answered with no rows, and then explained
+ * with the same parameters, so nothing is read or written.
+ * <p>
+ * The expected plans hold at the DatasetGenerator's default scale, after the
+ * application has run against the data long enough for the borrow archiver
+ * to move the old returned borrows. Needs that database configured through
+ * DB_URL, DB_USER and DB_PASS; run with {@code mvn test -Dqueryplans=true}.
+ */
+@EnabledIfSystemProperty(named = "queryplans", matches = "true")
+@SpringBootTest(properties = "library.archive.initial-delay=P1D")
+class QueryPlanTests {
+
+    private static final List<Class<?>> REPOSITORIES = List.of(
+            ArchivedBorrowRepository.class, AuthorRepository.class, BookRepository.class,
+            BorrowedBookRepository.class, CategoryRepository.class, JobRunRepository.class,
+            LibraryStatisticsRepository.class, MemberRepository.class);
+
+    private static final ThreadLocal<List<RecordedStatement>> RECORDING = new ThreadLocal<>();
+
+    @Autowired
+    private ArchivedBorrowRepository archivedBorrowRepository;
+
+    @Autowired
+    private AuthorRepository authorRepository;
+
+    @Autowired
+    private BookRepository bookRepository;
+
+    @Autowired
+    private BorrowedBookRepository borrowedBookRepository;
+
+    @Autowired
+    private CategoryRepository categoryRepository;
+
+    @Autowired
+    private LibraryStatisticsRepository statisticsRepository;
+
+    @Autowired
+    private MemberRepository memberRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    void repositoryQueriesGetTheirExpectedPlans() {
+        Map<String, Runnable> cases = cases(new Sample(jdbcTemplate));
+        List<String> failures = new ArrayList<>();
+
+        for (Class<?> repository : REPOSITORIES) {
+            for (Method method : repository.getDeclaredMethods()) {
+                if (method.isDefault() || method.isSynthetic() || Modifier.isStatic(method.getModifiers())) {
+                    continue;
+                }
+                String name = repository.getSimpleName() + "." + method.getName();
+                ExpectedPlan expected = method.getAnnotation(ExpectedPlan.class);
+                Runnable query = cases.remove(name);
+                if (expected == null) {
+                    failures.add(name + ": no @ExpectedPlan");
+                } else if (query == null) {
+                    failures.add(name + ": no case in QueryPlanTests");
+                } else {
+                    check(name, expected, query, failures);
+                }
+            }
+        }
+        cases.keySet().forEach(name -> failures.add(name + ": case for a method that does not exist"));
+
+        assertThat(failures).as("Queries whose plan differs from their @ExpectedPlan").isEmpty();
+    }
+
+    private void check(String name, ExpectedPlan expected, Runnable query, List<String> failures) {
+        List<RecordedStatement> statements = record(query);
+        if (statements.isEmpty()) {
+            failures.add(name + ": ran no statement");
+            return;
+        }
+        Set<String> indexes = new TreeSet<>();
+        Set<String> scans = new TreeSet<>();
+        for (RecordedStatement statement : statements) {
+            walk(explain(statement).get(0).get("Plan"), indexes, scans);
+        }
+        Set<String> missing = new TreeSet<>(Arrays.asList(expected.indexes()));
+        missing.removeAll(indexes);
+        Set<String> unexpected = new TreeSet<>(scans);
+        unexpected.removeAll(Arrays.asList(expected.scans()));
+        System.out.printf("%-70s indexes %s, scans %s%n", name, indexes, scans);
+        if (!missing.isEmpty() || !unexpected.isEmpty()) {
+            failures.add(name + ": expected indexes " + Arrays.toString(expected.indexes())
+                    + " and scans " + Arrays.toString(expected.scans())
+                    + ", but the plan reads indexes " + indexes + " and scans " + scans);
+        }
+    }
+
+    // Runs the query in a transaction that is rolled back; statements are recorded, not executed
+    private List<RecordedStatement> record(Runnable query) {
+        List<RecordedStatement> statements = new ArrayList<>();
+        RECORDING.set(statements);
+        try {
+            TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+            transaction.executeWithoutResult(status -> {
+                status.setRollbackOnly();
+                try {
+                    query.run();
+                } catch (RuntimeException ex) {
+                    // Expected from queries that must return a row, since none comes back
+                }
+            });
+        } finally {
+            RECORDING.remove();
+        }
+        return statements;
+    }
+
+    private JsonNode explain(RecordedStatement statement) {
+        return jdbcTemplate.execute((Connection connection) -> {
+            try (PreparedStatement explain = connection.prepareStatement("EXPLAIN (FORMAT JSON) " + statement.sql)) {
+                for (Object[] call : statement.parameters) {
+                    invoke((Method) call[0], explain, (Object[]) call[1]);
+                }
+                try (ResultSet result = explain.executeQuery()) {
+                    result.next();
+                    return objectMapper.readTree(result.getString(1));
+                } catch (Exception ex) {
+                    throw new IllegalStateException("Could not explain " + statement.sql, ex);
+                }
+            }
+        });
+    }
+
+    private static void walk(JsonNode plan, Set<String> indexes, Set<String> scans) {
+        if (plan.has("Index Name")) {
+            indexes.add(plan.get("Index Name").asText());
+        }
+        if ("Seq Scan".equals(plan.path("Node Type").asText())) {
+            scans.add(plan.get("Relation Name").asText());
+        }
+        for (JsonNode child : plan.path("Plans")) {
+            walk(child, indexes, scans);
+        }
+    }
+
+    private Map<String, Runnable> cases(Sample sample) {
+        LocalDateTime now = LocalDateTime.now();
+        Limit page = Limit.of(51);
+        Map<String, Runnable> cases = new LinkedHashMap<>();
+
+        cases.put("ArchivedBorrowRepository.findWithBookAndMemberById",
+                () -> archivedBorrowRepository.findWithBookAndMemberById(sample.archivedBorrowId));
+        cases.put("ArchivedBorrowRepository.findByMemberIdOrderByBorrowDateDesc",
+                () -> archivedBorrowRepository.findByMemberIdOrderByBorrowDateDesc(sample.memberId));
+        cases.put("ArchivedBorrowRepository.findByBookIdOrderByBorrowDateDesc",
+                () -> archivedBorrowRepository.findByBookIdOrderByBorrowDateDesc(sample.bookId));
+        cases.put("ArchivedBorrowRepository.deleteByBookId", () -> archivedBorrowRepository.deleteByBookId(sample.bookId));
+        cases.put("ArchivedBorrowRepository.deleteByMemberId", () -> archivedBorrowRepository.deleteByMemberId(sample.memberId));
+        cases.put("ArchivedBorrowRepository.streamAllRecords", () -> consume(archivedBorrowRepository.streamAllRecords()));
+
+        cases.put("AuthorRepository.existsByName", () -> authorRepository.existsByName(sample.authorName));
+        cases.put("AuthorRepository.findByName", () -> authorRepository.findByName(sample.authorName));
+        cases.put("AuthorRepository.findByNameContainingIgnoreCase",
+                () -> authorRepository.findByNameContainingIgnoreCase(sample.authorName));
+        cases.put("AuthorRepository.findByNameIn", () -> authorRepository.findByNameIn(List.of(sample.authorName)));
+        cases.put("AuthorRepository.findByIdGreaterThanOrderByIdAsc",
+                () -> authorRepository.findByIdGreaterThanOrderByIdAsc(sample.authorId, page));
+
+        cases.put("BookRepository.existsByIsbn", () -> bookRepository.existsByIsbn(sample.isbn));
+        cases.put("BookRepository.findByIsbn", () -> bookRepository.findByIsbn(sample.isbn));
+        cases.put("BookRepository.findByTitleContainingIgnoreCase",
+                () -> bookRepository.findByTitleContainingIgnoreCase(sample.title));
+        cases.put("BookRepository.findByAuthor",
+                () -> bookRepository.findByAuthor(authorRepository.getReferenceById(sample.authorId)));
+        cases.put("BookRepository.findByAuthorId", () -> bookRepository.findByAuthorId(sample.authorId));
+        cases.put("BookRepository.findByCategoriesContaining",
+                () -> bookRepository.findByCategoriesContaining(categoryRepository.getReferenceById(sample.categoryId)));
+        cases.put("BookRepository.findByPublicationYear", () -> bookRepository.findByPublicationYear(sample.year));
+        cases.put("BookRepository.findByIdGreaterThanOrderByIdAsc",
+                () -> bookRepository.findByIdGreaterThanOrderByIdAsc(sample.bookId, page));
+        cases.put("BookRepository.streamExportRows", () -> consume(bookRepository.streamExportRows()));
+        cases.put("BookRepository.streamAllIds", () -> consume(bookRepository.streamAllIds()));
+        cases.put("BookRepository.findIdsByIdIn", () -> bookRepository.findIdsByIdIn(sample.bookIds));
+        cases.put("BookRepository.findIdsByAuthorId", () -> bookRepository.findIdsByAuthorId(sample.authorId));
+        cases.put("BookRepository.findAvailabilityByIdIn", () -> bookRepository.findAvailabilityByIdIn(sample.bookIds));
+        cases.put("BookRepository.findIdsByIsbnIn", () -> bookRepository.findIdsByIsbnIn(List.of(sample.isbn)));
+        cases.put("BookRepository.streamSearchRows", () -> consume(bookRepository.streamSearchRows()));
+        cases.put("BookRepository.streamCategoryRows", () -> consume(bookRepository.streamCategoryRows()));
+        cases.put("BookRepository.streamTitleRows", () -> consume(bookRepository.streamTitleRows()));
+        cases.put("BookRepository.findRowsAfter", () -> bookRepository.findRowsAfter(sample.bookId, page));
+        cases.put("BookRepository.findRowsByIdIn", () -> bookRepository.findRowsByIdIn(sample.bookIds));
+        cases.put("BookRepository.findRowsByIsbn", () -> bookRepository.findRowsByIsbn(sample.isbn));
+        cases.put("BookRepository.findRowsByTitleContaining",
+                () -> bookRepository.findRowsByTitleContaining(sample.title, page));
+        cases.put("BookRepository.findRowsByAuthorId", () -> bookRepository.findRowsByAuthorId(sample.authorId, page));
+        cases.put("BookRepository.findRowsByPublicationYear",
+                () -> bookRepository.findRowsByPublicationYear(sample.year, page));
+        cases.put("BookRepository.findActiveRows", bookRepository::findActiveRows);
+        cases.put("BookRepository.findCategoriesByBookIdIn", () -> bookRepository.findCategoriesByBookIdIn(sample.bookIds));
+        cases.put("BookRepository.findVersionsAfter", () -> bookRepository.findVersionsAfter(sample.bookId, page));
+        cases.put("BookRepository.findVersionsByIdIn", () -> bookRepository.findVersionsByIdIn(sample.bookIds));
+        cases.put("BookRepository.findActiveBooks", bookRepository::findActiveBooks);
+        cases.put("BookRepository.findCurrentlyBorrowedBooks", bookRepository::findCurrentlyBorrowedBooks);
+
+        cases.put("BorrowedBookRepository.findByMemberIdAndStatus",
+                () -> borrowedBookRepository.findByMemberIdAndStatus(sample.memberId, BorrowStatus.BORROWED));
+        cases.put("BorrowedBookRepository.findByBookIdAndStatus",
+                () -> borrowedBookRepository.findByBookIdAndStatus(sample.bookId, BorrowStatus.BORROWED));
+        cases.put("BorrowedBookRepository.findByStatusAndDueDateBefore",
+                () -> borrowedBookRepository.findByStatusAndDueDateBefore(BorrowStatus.BORROWED, now));
+        cases.put("BorrowedBookRepository.findCurrentDueBefore", () -> borrowedBookRepository.findCurrentDueBefore(now));
+        cases.put("BorrowedBookRepository.existsCurrentByBookId",
+                () -> borrowedBookRepository.existsCurrentByBookId(sample.bookId));
+        cases.put("BorrowedBookRepository.existsCurrentByMemberId",
+                () -> borrowedBookRepository.existsCurrentByMemberId(sample.memberId));
+        cases.put("BorrowedBookRepository.countCurrentByMemberId",
+                () -> borrowedBookRepository.countCurrentByMemberId(sample.memberId));
+        cases.put("BorrowedBookRepository.existsOverdueByMemberId",
+                () -> borrowedBookRepository.existsOverdueByMemberId(sample.memberId, now));
+        cases.put("BorrowedBookRepository.findStateByIdForUpdate",
+                () -> borrowedBookRepository.findStateByIdForUpdate(sample.borrowId));
+        cases.put("BorrowedBookRepository.updateStatus",
+                () -> borrowedBookRepository.updateStatus(sample.borrowId, BorrowStatus.RETURNED, now));
+        cases.put("BorrowedBookRepository.findCurrentBookIdsForMember",
+                () -> borrowedBookRepository.findCurrentBookIdsForMember(sample.memberId));
+        cases.put("BorrowedBookRepository.streamCurrentBorrows", () -> consume(borrowedBookRepository.streamCurrentBorrows()));
+        cases.put("BorrowedBookRepository.findCurrentBorrowsByBookIdIn",
+                () -> borrowedBookRepository.findCurrentBorrowsByBookIdIn(sample.bookIds));
+        cases.put("BorrowedBookRepository.findCurrentBorrowerIds",
+                () -> borrowedBookRepository.findCurrentBorrowerIds(sample.bookId));
+        cases.put("BorrowedBookRepository.findMemberIdsWithOverdueIn",
+                () -> borrowedBookRepository.findMemberIdsWithOverdueIn(sample.memberIds, now));
+        cases.put("BorrowedBookRepository.findIdsByIdIn", () -> borrowedBookRepository.findIdsByIdIn(sample.borrowIds));
+        cases.put("BorrowedBookRepository.findCurrentBorrowsForMember",
+                () -> borrowedBookRepository.findCurrentBorrowsForMember(sample.memberId));
+        cases.put("BorrowedBookRepository.findByBookIdOrderByBorrowDateDesc",
+                () -> borrowedBookRepository.findByBookIdOrderByBorrowDateDesc(sample.bookId));
+        cases.put("BorrowedBookRepository.findByStatus", () -> borrowedBookRepository.findByStatus(BorrowStatus.OVERDUE));
+        cases.put("BorrowedBookRepository.findByIdGreaterThanOrderByIdAsc",
+                () -> borrowedBookRepository.findByIdGreaterThanOrderByIdAsc(sample.borrowId, page));
+        cases.put("BorrowedBookRepository.findByStatusAndIdGreaterThanOrderByIdAsc",
+                () -> borrowedBookRepository.findByStatusAndIdGreaterThanOrderByIdAsc(BorrowStatus.OVERDUE, sample.borrowId, page));
+        cases.put("BorrowedBookRepository.streamAllRecords", () -> consume(borrowedBookRepository.streamAllRecords()));
+        cases.put("BorrowedBookRepository.countCurrentCirculation", () -> borrowedBookRepository.countCurrentCirculation(now));
+        cases.put("BorrowedBookRepository.findPopularBooks", () -> borrowedBookRepository.findPopularBooks(Limit.of(10)));
+        cases.put("BorrowedBookRepository.findPopularBooksSince",
+                () -> borrowedBookRepository.findPopularBooksSince(now.minusDays(30), Limit.of(10)));
+        cases.put("BorrowedBookRepository.findTopBorrowers", () -> borrowedBookRepository.findTopBorrowers(Limit.of(10)));
+        cases.put("BorrowedBookRepository.findTopBorrowersSince",
+                () -> borrowedBookRepository.findTopBorrowersSince(now.minusDays(30), Limit.of(10)));
+        cases.put("BorrowedBookRepository.countCurrentBorrowsByMember",
+                () -> borrowedBookRepository.countCurrentBorrowsByMember(sample.memberIds));
+
+        cases.put("CategoryRepository.existsByName", () -> categoryRepository.existsByName(sample.categoryName));
+        cases.put("CategoryRepository.findByName", () -> categoryRepository.findByName(sample.categoryName));
+        cases.put("CategoryRepository.findByNameContainingIgnoreCase",
+                () -> categoryRepository.findByNameContainingIgnoreCase(sample.categoryName));
+        cases.put("CategoryRepository.findByNameIn", () -> categoryRepository.findByNameIn(List.of(sample.categoryName)));
+        cases.put("CategoryRepository.findByIdGreaterThanOrderByIdAsc",
+                () -> categoryRepository.findByIdGreaterThanOrderByIdAsc(sample.categoryId, page));
+
+        cases.put("LibraryStatisticsRepository.findByIdForUpdate", () -> statisticsRepository.findByIdForUpdate(1L));
+        cases.put("LibraryStatisticsRepository.adjust", () -> statisticsRepository.adjust(1L, 1, 1, 1, 1));
+        cases.put("LibraryStatisticsRepository.updateMembersWithOverdue",
+                () -> statisticsRepository.updateMembersWithOverdue(1L, 1));
+
+        cases.put("MemberRepository.existsByEmail", () -> memberRepository.existsByEmail(sample.email));
+        cases.put("MemberRepository.findByEmail", () -> memberRepository.findByEmail(sample.email));
+        cases.put("MemberRepository.findByFirstNameContainingIgnoreCaseOrLastNameContainingIgnoreCase",
+                () -> memberRepository.findByFirstNameContainingIgnoreCaseOrLastNameContainingIgnoreCase(
+                        sample.memberName, sample.memberName));
+        cases.put("MemberRepository.findByIdGreaterThanOrderByIdAsc",
+                () -> memberRepository.findByIdGreaterThanOrderByIdAsc(sample.memberId, page));
+        return cases;
+    }
+
+    private static void consume(Stream<?> rows) {
+        try (rows) {
+            rows.findFirst();
+        }
+    }
+
+    /**
+     * Query arguments from the middle of the data: a book with a current
+     * borrow, its borrower, author and a category, and batches of ids around
+     * them, as the listing and batch endpoints would pass.
+     */
+    private static class Sample {
+
+        final long bookId;
+        final long borrowId;
+        final long memberId;
+        final long archivedBorrowId;
+        final long authorId;
+        final long categoryId;
+        final String isbn;
+        final String title;
+        final int year;
+        final String authorName;
+        final String categoryName;
+        final String email;
+        final String memberName;
+        final List<Long> bookIds;
+        final List<Long> borrowIds;
+        final List<Long> memberIds;
+
+        Sample(JdbcTemplate jdbc) {
+            Map<String, Object> borrow = jdbc.queryForMap("SELECT bb.id, bb.book_id, bb.member_id FROM borrowed_books bb " +
+                    "WHERE bb.status IN ('BORROWED', 'OVERDUE') AND bb.book_id >= (SELECT (MIN(id) + MAX(id)) / 2 FROM books) " +
+                    "ORDER BY bb.book_id LIMIT 1");
+            borrowId = ((Number) borrow.get("id")).longValue();
+            bookId = ((Number) borrow.get("book_id")).longValue();
+            memberId = ((Number) borrow.get("member_id")).longValue();
+            archivedBorrowId = jdbc.queryForList("SELECT id FROM borrowed_books_archive WHERE book_id = ? LIMIT 1",
+                    Long.class, bookId).stream().findFirst().orElse(borrowId);
+
+            Map<String, Object> book = jdbc.queryForMap("SELECT b.isbn, b.title, b.publication_year, a.id AS author_id, " +
+                    "a.name AS author_name FROM books b JOIN author a ON a.id = b.author_id WHERE b.id = ?", bookId);
+            isbn = (String) book.get("isbn");
+            title = (String) book.get("title");
+            year = ((Number) book.get("publication_year")).intValue();
+            authorId = ((Number) book.get("author_id")).longValue();
+            authorName = (String) book.get("author_name");
+
+            Map<String, Object> category = jdbc.queryForMap("SELECT c.id, c.name FROM book_categories bc " +
+                    "JOIN category c ON c.id = bc.category_id WHERE bc.book_id = ? LIMIT 1", bookId);
+            categoryId = ((Number) category.get("id")).longValue();
+            categoryName = (String) category.get("name");
+
+            Map<String, Object> member = jdbc.queryForMap("SELECT email, first_name, last_name FROM members WHERE id = ?", memberId);
+            email = (String) member.get("email");
+            // The longer name: trigram indexes cannot serve a search for fewer than three characters
+            String firstName = (String) member.get("first_name");
+            String lastName = (String) member.get("last_name");
+            memberName = firstName.length() > lastName.length() ? firstName : lastName;
+
+            bookIds = jdbc.queryForList("SELECT id FROM books WHERE id >= ? ORDER BY id LIMIT 50", Long.class, bookId);
+            borrowIds = jdbc.queryForList("SELECT id FROM borrowed_books WHERE id >= ? ORDER BY id LIMIT 50", Long.class, borrowId);
+            memberIds = jdbc.queryForList("SELECT id FROM members WHERE id >= ? ORDER BY id LIMIT 50", Long.class, memberId);
+        }
+    }
+
+    private record RecordedStatement(String sql, List<Object[]> parameters) {
+    }
+
+    /**
+     * Records the statements prepared on the test thread while a case runs.
+     * Queries are prepared wrapped so that they return no rows, and updates
+     * are not executed.
+     */
+    @TestConfiguration
+    static class RecordingConfig {
+
+        @Bean
+        static BeanPostProcessor recordingDataSource() {
+            return new BeanPostProcessor() {
+                @Override
+                public Object postProcessAfterInitialization(Object bean, String beanName) {
+                    if (bean instanceof DataSource dataSource && beanName.equals("dataSource")) {
+                        return new DelegatingDataSource(dataSource) {
+                            @Override
+                            public Connection getConnection() throws SQLException {
+                                return recording(super.getConnection());
+                            }
+                        };
+                    }
+                    return bean;
+                }
+            };
+        }
+
+        private static Connection recording(Connection connection) {
+            return proxy(Connection.class, (proxy, method, args) -> {
+                List<RecordedStatement> recording = RECORDING.get();
+                if (recording == null || !method.getName().equals("prepareStatement")) {
+                    return invoke(method, connection, args);
+                }
+                String sql = (String) args[0];
+                RecordedStatement statement = new RecordedStatement(sql, new ArrayList<>());
+                recording.add(statement);
+                boolean query = sql.stripLeading().regionMatches(true, 0, "select", 0, 6);
+                if (query) {
+                    args = args.clone();
+                    args[0] = "SELECT * FROM (" + sql + ") recorded WHERE false";
+                }
+                return recording((PreparedStatement) invoke(method, connection, args), statement, query);
+            });
+        }
+
+        private static PreparedStatement recording(PreparedStatement target, RecordedStatement statement, boolean query) {
+            return proxy(PreparedStatement.class, (proxy, method, args) -> {
+                String name = method.getName();
+                if (name.startsWith("set") && args != null && args.length >= 2 && args[0] instanceof Integer) {
+                    statement.parameters.add(new Object[]{method, args});
+                }
+                if (!query && (name.equals("executeUpdate") || name.equals("executeLargeUpdate"))) {
+                    return name.equals("executeUpdate") ? 0 : 0L;
+                }
+                return invoke(method, target, args);
+            });
+        }
+    }
+
+    private static <T> T proxy(Class<T> type, java.lang.reflect.InvocationHandler handler) {
+        return type.cast(Proxy.newProxyInstance(QueryPlanTests.class.getClassLoader(), new Class<?>[]{type}, handler));
+    }
+
+    private static Object invoke(Method method, Object target, Object[] args) throws SQLException {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException ex) {
+            if (ex.getCause() instanceof SQLException sqlException) {
+                throw sqlException;
+            }
+            throw new IllegalStateException(ex.getCause());
+        } catch (IllegalAccessException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+}
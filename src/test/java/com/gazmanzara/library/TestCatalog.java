@@ -0,0 +1,98 @@
+package com.gazmanzara.library;
+
+import com.gazmanzara.library.model.Author;
+import com.gazmanzara.library.model.Book;
+import com.gazmanzara.library.model.Category;
+import com.gazmanzara.library.model.Member;
+import com.gazmanzara.library.repository.AuthorRepository;
+import com.gazmanzara.library.repository.BookRepository;
+import com.gazmanzara.library.repository.CategoryRepository;
+import com.gazmanzara.library.repository.MemberRepository;
+import com.gazmanzara.library.service.BookRemovalService;
+import com.gazmanzara.library.service.LibraryStatisticsService;
+import org.springframework.context.ApplicationContext;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Books, members and categories that a test adds to a real database under a
+ * name unique to the run, and removes again with {@link #remove()}. The
+ * books go through the book delete path, so their borrows, live or
+ * archived, go with them and the dashboard counters end up where they
+ * started.
+ */
+class TestCatalog {
+
+    private final AuthorRepository authorRepository;
+    private final CategoryRepository categoryRepository;
+    private final BookRepository bookRepository;
+    private final MemberRepository memberRepository;
+    private final BookRemovalService bookRemovalService;
+    private final LibraryStatisticsService statisticsService;
+
+    private final String prefix;
+    private final String run = Long.toString(System.nanoTime());
+    private final List<Long> authorIds = new ArrayList<>();
+    private final List<Long> categoryIds = new ArrayList<>();
+    private final List<Long> memberIds = new ArrayList<>();
+
+    TestCatalog(ApplicationContext context, String prefix) {
+        this.authorRepository = context.getBean(AuthorRepository.class);
+        this.categoryRepository = context.getBean(CategoryRepository.class);
+        this.bookRepository = context.getBean(BookRepository.class);
+        this.memberRepository = context.getBean(MemberRepository.class);
+        this.bookRemovalService = context.getBean(BookRemovalService.class);
+        this.statisticsService = context.getBean(LibraryStatisticsService.class);
+        this.prefix = prefix;
+    }
+
+    Author author() {
+        Author author = authorRepository.save(new Author(prefix + " author " + run));
+        authorIds.add(author.getId());
+        return author;
+    }
+
+    Category category(String name) {
+        Category category = categoryRepository.save(new Category(prefix + " " + name + " " + run));
+        categoryIds.add(category.getId());
+        return category;
+    }
+
+    List<Book> books(Author author, int count, Set<Category> categories) {
+        List<Book> books = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Book book = new Book(prefix + " book " + i, prefix.toLowerCase() + "-" + run + "-" + i, author);
+            book.setCategories(categories);
+            books.add(bookRepository.save(book));
+        }
+        statisticsService.recordBooksAdded(count);
+        return books;
+    }
+
+    List<Member> members(int count) {
+        List<Member> members = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Member member = new Member(prefix, "Member " + i, prefix.toLowerCase() + i + "-" + run + "@example.com");
+            member.setPhone(run + "-" + i);
+            member = memberRepository.save(member);
+            members.add(member);
+            memberIds.add(member.getId());
+            statisticsService.recordMemberAdded();
+        }
+        return members;
+    }
+
+    // Books first, which takes every borrow of them along, so the members have none left when they go
+    void remove() {
+        authorIds.forEach(bookRemovalService::removeBooksOfAuthor);
+        memberRepository.deleteAllById(memberIds);
+        memberIds.forEach(id -> statisticsService.recordMemberRemoved(0));
+        categoryRepository.deleteAllById(categoryIds);
+        authorRepository.deleteAllById(authorIds);
+        authorIds.clear();
+        categoryIds.clear();
+        memberIds.clear();
+    }
+}
@@ -0,0 +1,185 @@
+package com.gazmanzara.library;
+
+import com.gazmanzara.library.model.Book;
+import com.gazmanzara.library.model.Member;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Compares the borrow and catalog endpoints with requests served on Tomcat's
+ * platform thread pool and on virtual threads. Each mode starts its own
+ * application instance against the PostgreSQL database configured through
+ * DB_URL, DB_USER and DB_PASS, and is driven by the same number of
+ * concurrent clients; the books and members it adds are removed before the
+ * instance stops. Run with {@code mvn test -Dbenchmark=true}; tune with
+ * -Dbenchmark.clients and -Dbenchmark.seconds.
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class ThreadModeBenchmarkTests {
+
+    private static final int CLIENTS = Integer.getInteger("benchmark.clients", 400);
+    private static final int SECONDS = Integer.getInteger("benchmark.seconds", 15);
+    private static final int WARMUP_SECONDS = 3;
+    private static final int BOOKS = 1000;
+
+    private final HttpClient client = HttpClient.newHttpClient();
+
+    @Test
+    void compareThreadModes() throws Exception {
+        List<String> report = new ArrayList<>();
+        report.add(String.format("%-9s %-8s %10s %10s %10s %8s", "mode", "workload", "requests", "req/s", "p99 ms", "errors"));
+        for (boolean virtual : new boolean[]{false, true}) {
+            SpringApplicationBuilder builder = new SpringApplicationBuilder(LibraryApplication.class);
+            if (virtual) {
+                builder.profiles("virtual-threads");
+            }
+            // Same pool in both modes, so only the request threads differ
+            try (ConfigurableApplicationContext app = builder.run("--server.port=0", "--spring.jpa.show-sql=false",
+                    "--spring.devtools.restart.enabled=false", "--spring.datasource.hikari.maximum-pool-size=20")) {
+                String mode = virtual ? "virtual" : "platform";
+                String baseUrl = "http://localhost:" + app.getEnvironment().getProperty("local.server.port");
+                TestCatalog fixtures = new TestCatalog(app, "Benchmark");
+                try {
+                    Fixture fixture = seed(fixtures);
+
+                    Result catalog = drive(() -> {
+                        ThreadLocalRandom random = ThreadLocalRandom.current();
+                        String path = random.nextBoolean()
+                                ? "/api/books?limit=50"
+                                : "/api/books/" + fixture.bookIds.get(random.nextInt(fixture.bookIds.size()));
+                        return send(HttpRequest.newBuilder(URI.create(baseUrl + path)).GET().build());
+                    });
+                    Result borrow = drive(() -> {
+                        ThreadLocalRandom random = ThreadLocalRandom.current();
+                        long bookId = fixture.bookIds.get(random.nextInt(fixture.bookIds.size()));
+                        long memberId = fixture.memberIds.get(random.nextInt(fixture.memberIds.size()));
+                        HttpResponse<String> response = client.send(HttpRequest.newBuilder(URI.create(
+                                        baseUrl + "/api/borrowed-books/borrow?bookId=" + bookId + "&memberId=" + memberId))
+                                .POST(HttpRequest.BodyPublishers.noBody()).build(), HttpResponse.BodyHandlers.ofString());
+                        if (response.statusCode() == 201) {
+                            // Give the book back so the catalog does not run dry
+                            String location = response.headers().firstValue("Location").orElseThrow();
+                            send(HttpRequest.newBuilder(URI.create(location + "/return"))
+                                    .POST(HttpRequest.BodyPublishers.noBody()).build());
+                        }
+                        // A borrow that loses a race for the book is a normal outcome, not an error
+                        return response.statusCode() < 500;
+                    });
+
+                    report.add(catalog.format(mode, "catalog"));
+                    report.add(borrow.format(mode, "borrow"));
+                    assertThat(catalog.requests).isPositive();
+                    assertThat(borrow.requests).isPositive();
+                } finally {
+                    fixtures.remove();
+                }
+            }
+        }
+        System.out.println("Thread mode benchmark, " + CLIENTS + " clients, " + SECONDS + "s per workload\n"
+                + String.join("\n", report));
+    }
+
+    private boolean send(HttpRequest request) throws Exception {
+        return client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode() < 500;
+    }
+
+    // Runs the call from every client for the warmup and then the measured interval
+    private Result drive(Call call) throws Exception {
+        long warmupEnd = System.nanoTime() + WARMUP_SECONDS * 1_000_000_000L;
+        long end = warmupEnd + SECONDS * 1_000_000_000L;
+        List<Future<Samples>> clients = new ArrayList<>();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < CLIENTS; i++) {
+                clients.add(executor.submit(() -> {
+                    Samples samples = new Samples();
+                    for (long now = System.nanoTime(); now < end; now = System.nanoTime()) {
+                        boolean ok;
+                        try {
+                            ok = call.run();
+                        } catch (Exception ex) {
+                            ok = false;
+                        }
+                        if (now >= warmupEnd) {
+                            samples.add(System.nanoTime() - now, ok);
+                        }
+                    }
+                    return samples;
+                }));
+            }
+        }
+        Samples all = new Samples();
+        for (Future<Samples> samples : clients) {
+            all.addAll(samples.get());
+        }
+        return all.result();
+    }
+
+    private Fixture seed(TestCatalog catalog) {
+        List<Long> bookIds = catalog.books(catalog.author(), BOOKS, Set.of()).stream().map(Book::getId).toList();
+        List<Long> memberIds = catalog.members(CLIENTS).stream().map(Member::getId).toList();
+        return new Fixture(bookIds, memberIds);
+    }
+
+    private interface Call {
+        boolean run() throws Exception;
+    }
+
+    private record Fixture(List<Long> bookIds, List<Long> memberIds) {
+    }
+
+    private record Result(long requests, long errors, double p99Millis) {
+
+        String format(String mode, String workload) {
+            return String.format("%-9s %-8s %10d %10.0f %10.1f %8d",
+                    mode, workload, requests, (double) requests / SECONDS, p99Millis, errors);
+        }
+    }
+
+    // Latencies of one client; merged once the clients are done
+    private static class Samples {
+        private long[] nanos = new long[1024];
+        private int size;
+        private long errors;
+
+        void add(long latency, boolean ok) {
+            if (size == nanos.length) {
+                nanos = Arrays.copyOf(nanos, size * 2);
+            }
+            nanos[size++] = latency;
+            if (!ok) {
+                errors++;
+            }
+        }
+
+        void addAll(Samples other) {
+            for (int i = 0; i < other.size; i++) {
+                add(other.nanos[i], true);
+            }
+            errors += other.errors;
+        }
+
+        Result result() {
+            long[] sorted = Arrays.copyOf(nanos, size);
+            Arrays.sort(sorted);
+            double p99 = size == 0 ? 0 : sorted[(int) Math.ceil(size * 0.99) - 1] / 1e6;
+            return new Result(size, errors, p99);
+        }
+    }
+}
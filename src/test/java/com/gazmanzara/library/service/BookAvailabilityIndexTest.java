@@ -0,0 +1,45 @@
+package com.gazmanzara.library.service;
+
+import com.gazmanzara.library.repository.BookRepository;
+import com.gazmanzara.library.repository.BorrowedBookRepository;
+import com.gazmanzara.library.repository.BorrowedBookRepository.CurrentBorrow;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.projection.SpelAwareProxyProjectionFactory;
+
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class BookAvailabilityIndexTest {
+
+    private final BookRepository bookRepository = mock(BookRepository.class);
+    private final BorrowedBookRepository borrowedBookRepository = mock(BorrowedBookRepository.class);
+    private final BookAvailabilityIndex index = new BookAvailabilityIndex(bookRepository, borrowedBookRepository);
+
+    @Test
+    void keepsWritesCommittedWhileRebuilding() {
+        when(bookRepository.streamAllIds()).thenAnswer(invocation -> Stream.of(1L, 2L, 3L));
+        // The snapshot was read before book 2 was borrowed, book 3 returned and book 4 added
+        when(borrowedBookRepository.streamCurrentBorrows()).thenAnswer(invocation -> {
+            index.borrowed(2L, 20L);
+            index.returned(3L, 30L);
+            index.bookAdded(4L);
+            return Stream.of(currentBorrow(1L, 10L), currentBorrow(3L, 30L));
+        });
+
+        index.rebuild();
+
+        assertThat(index.currentBorrowId(1L)).isEqualTo(10L);
+        assertThat(index.currentBorrowId(2L)).isEqualTo(20L);
+        assertThat(index.isBorrowed(3L)).isFalse();
+        assertThat(index.exists(4L)).isTrue();
+    }
+
+    private static CurrentBorrow currentBorrow(long bookId, long borrowId) {
+        return new SpelAwareProxyProjectionFactory().createProjection(CurrentBorrow.class,
+                Map.of("bookId", bookId, "borrowId", borrowId));
+    }
+}
@@ -0,0 +1,175 @@
+package com.gazmanzara.library.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.gazmanzara.library.dto.BookImportReport;
+import com.gazmanzara.library.dto.BookImportReport.RowError;
+import com.gazmanzara.library.repository.AuthorRepository;
+import com.gazmanzara.library.repository.AuthorRepository.AuthorName;
+import com.gazmanzara.library.repository.BookRepository;
+import com.gazmanzara.library.repository.BookRepository.BookIsbn;
+import com.gazmanzara.library.repository.CategoryRepository;
+import com.gazmanzara.library.repository.CategoryRepository.CategoryName;
+import jakarta.persistence.EntityManagerFactory;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.projection.ProjectionFactory;
+import org.springframework.data.projection.SpelAwareProxyProjectionFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class BookImportServiceTest {
+
+    private static final String HEADER = "title,isbn,author,categories,publicationYear\n";
+
+    private final ProjectionFactory projections = new SpelAwareProxyProjectionFactory();
+    private final JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+    private final BookRepository bookRepository = mock(BookRepository.class);
+    private final AuthorRepository authorRepository = mock(AuthorRepository.class);
+    private final CategoryRepository categoryRepository = mock(CategoryRepository.class);
+    private final AtomicLong nextId = new AtomicLong(100);
+    private BookImportService service;
+
+    @BeforeEach
+    void setUp() {
+        when(bookRepository.findIdsByIsbnIn(anyCollection())).thenAnswer(invocation -> {
+            Collection<String> isbns = invocation.getArgument(0);
+            return isbns.contains("existing") ? List.of(projection(BookIsbn.class, Map.of("id", 1L, "isbn", "existing"))) : List.of();
+        });
+        when(authorRepository.findByNameIn(anyCollection())).thenAnswer(invocation -> {
+            Collection<String> names = invocation.getArgument(0);
+            return names.contains("Austen") ? List.of(projection(AuthorName.class, Map.of("id", 7L, "name", "Austen"))) : List.of();
+        });
+        when(categoryRepository.findByNameIn(anyCollection())).thenAnswer(invocation -> {
+            Collection<String> names = invocation.getArgument(0);
+            return names.contains("Classics") ? List.of(projection(CategoryName.class, Map.of("id", 3L, "name", "Classics"))) : List.of();
+        });
+        when(jdbcTemplate.queryForList(anyString(), eq(Long.class), any())).thenAnswer(invocation -> {
+            int count = invocation.getArgument(2);
+            return LongStream.range(0, count).mapToObj(i -> nextId.getAndIncrement()).toList();
+        });
+        service = new BookImportService(jdbcTemplate, bookRepository, authorRepository, categoryRepository,
+                mock(LibraryStatisticsService.class), mock(BookAvailabilityIndex.class), mock(BookSearchIndex.class),
+                mock(SuggestIndex.class), mock(EntityManagerFactory.class), new ObjectMapper(),
+                mock(PlatformTransactionManager.class));
+    }
+
+    @Test
+    void reportsEveryRejectedRowInInputOrder() {
+        BookImportReport report = importCsv(HEADER
+                + "Emma,emma,Austen,Classics,1815\n"
+                + ",untitled,Austen,Classics,\n"
+                + "Persuasion,,Austen,Classics,\n"
+                + "Sanditon,sanditon,,Classics,\n"
+                + "Lady Susan,susan,Austen,,\n"
+                + "Mansfield Park,mansfield,Austen,Classics,soon\n"
+                + "Emma again,emma,Austen,Classics,\n"
+                + "Old copy,existing,Austen,Classics,\n"
+                + "Dracula,dracula,Stoker,Classics,\n"
+                + "Ulysses,ulysses,Austen,Classics|Modernism,\n"
+                + "Northanger Abbey,northanger,Austen,Classics,1817\n");
+
+        assertThat(report.received).isEqualTo(11);
+        assertThat(report.imported).isEqualTo(2);
+        assertThat(report.rejected).isEqualTo(9);
+        assertThat(report.errors).extracting(RowError::row, RowError::message).containsExactly(
+                tuple(2L, "Book title must not be blank"),
+                tuple(3L, "ISBN must not be blank"),
+                tuple(4L, "Author is required"),
+                tuple(5L, "At least one category is required"),
+                tuple(6L, "Invalid publication year: soon"),
+                tuple(7L, "Duplicate ISBN in this import"),
+                tuple(8L, "ISBN already exists"),
+                tuple(9L, "Unknown author: Stoker"),
+                tuple(10L, "Unknown category: Modernism"));
+        assertThat(report.aborted).isNull();
+    }
+
+    @Test
+    void readsJsonRowsWithCategoryArrays() {
+        BookImportReport report = service.importJson(input("""
+                [{"title": "Emma", "isbn": "emma", "author": "Austen", "categories": ["Classics", " Classics "]},
+                 {"title": "Lady Susan", "isbn": "susan", "author": "Austen", "categories": []}]
+                """), new BookImportService.Options(false, false));
+
+        assertThat(report.imported).isEqualTo(1);
+        assertThat(report.errors).extracting(RowError::message).containsExactly("At least one category is required");
+    }
+
+    @Test
+    void keepsTheRowsReadBeforeTheInputBreaks() {
+        BookImportReport report = service.importJson(input("""
+                [{"title": "Emma", "isbn": "emma", "author": "Austen", "categories": ["Classics"]},
+                 {"title": "Persu
+                """), new BookImportService.Options(false, false));
+
+        assertThat(report.imported).isEqualTo(1);
+        assertThat(report.aborted).startsWith("Input could not be read after row 1");
+    }
+
+    @Test
+    void rejectsAnIsbnRepeatedInALaterChunk() {
+        BookImportReport report = importCsv(chunkAndRepeatOfItsFirstRow());
+
+        assertThat(report.imported).isEqualTo(BookImportService.CHUNK_SIZE);
+        assertThat(report.errors).extracting(RowError::row, RowError::message)
+                .containsExactly(tuple(BookImportService.CHUNK_SIZE + 1L, "Duplicate ISBN in this import"));
+    }
+
+    @Test
+    void importsAnIsbnWhoseEarlierChunkWasRolledBack() {
+        when(jdbcTemplate.batchUpdate(startsWith("INSERT INTO books "), anyCollection(), anyInt(), any()))
+                .thenThrow(new DataIntegrityViolationException("value too long"))
+                .thenReturn(new int[0][]);
+
+        BookImportReport report = importCsv(chunkAndRepeatOfItsFirstRow());
+
+        // The rolled-back chunk wrote nothing, so the repeated row is the first copy to reach the table
+        assertThat(report.imported).isEqualTo(1);
+        assertThat(report.rejected).isEqualTo(BookImportService.CHUNK_SIZE);
+        assertThat(report.errors).first().satisfies(error -> {
+            assertThat(error.row()).isEqualTo(1L);
+            assertThat(error.message()).isEqualTo("Chunk rejected by the database: value too long");
+        });
+    }
+
+    // One full chunk followed by a row with the ISBN of the chunk's first row
+    private static String chunkAndRepeatOfItsFirstRow() {
+        StringBuilder csv = new StringBuilder(HEADER);
+        for (int i = 0; i < BookImportService.CHUNK_SIZE; i++) {
+            csv.append("Book ").append(i).append(",isbn-").append(i).append(",Austen,Classics,\n");
+        }
+        return csv.append("Book again,isbn-0,Austen,Classics,\n").toString();
+    }
+
+    private BookImportReport importCsv(String csv) {
+        return service.importCsv(input(csv), new BookImportService.Options(false, false));
+    }
+
+    private static ByteArrayInputStream input(String text) {
+        return new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private <T> T projection(Class<T> type, Map<String, Object> values) {
+        return projections.createProjection(type, values);
+    }
+}
@@ -0,0 +1,120 @@
+package com.gazmanzara.library.service;
+
+import com.gazmanzara.library.dto.BookDTO;
+import com.gazmanzara.library.dto.CursorPage;
+import com.gazmanzara.library.dto.Fieldset;
+import com.gazmanzara.library.repository.BookRepository;
+import com.gazmanzara.library.repository.BookRepository.BookRow;
+import com.gazmanzara.library.repository.BorrowedBookRepository;
+import com.gazmanzara.library.repository.BorrowedBookRepository.CurrentBorrow;
+import com.gazmanzara.library.repository.SparseRowRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.data.projection.ProjectionFactory;
+import org.springframework.data.projection.SpelAwareProxyProjectionFactory;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.entry;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.when;
+
+class BookReadServiceTest {
+
+    private final ProjectionFactory projections = new SpelAwareProxyProjectionFactory();
+
+    private BookRepository bookRepository;
+    private BorrowedBookRepository borrowedBookRepository;
+    private BookAvailabilityIndex availabilityIndex;
+    private SparseRowRepository sparseRowRepository;
+    private BookReadService service;
+
+    @BeforeEach
+    void setUp() {
+        bookRepository = mock(BookRepository.class);
+        borrowedBookRepository = mock(BorrowedBookRepository.class);
+        availabilityIndex = mock(BookAvailabilityIndex.class);
+        sparseRowRepository = mock(SparseRowRepository.class);
+        service = new BookReadService(bookRepository, borrowedBookRepository, availabilityIndex, sparseRowRepository);
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 999, 2500})
+    void activeListingQueriesPerBatchWhileIndexLoads(int size) {
+        when(availabilityIndex.isLoaded()).thenReturn(false);
+        when(bookRepository.findActiveRows()).thenReturn(rows(size));
+        when(borrowedBookRepository.findCurrentBorrowsByBookIdIn(anyCollection())).thenReturn(List.of());
+
+        List<BookDTO> books = service.findActive();
+
+        int batches = (size + BookReadService.BATCH_SIZE - 1) / BookReadService.BATCH_SIZE;
+        assertThat(books).hasSize(size).allSatisfy(book -> assertThat(book.currentlyBorrowed).isFalse());
+        verify(bookRepository).findActiveRows();
+        verify(bookRepository, times(batches)).findCategoriesByBookIdIn(anyCollection());
+        verify(borrowedBookRepository, times(batches)).findCurrentBorrowsByBookIdIn(anyCollection());
+        verifyNoMoreInteractions(bookRepository, borrowedBookRepository);
+    }
+
+    @Test
+    void findAllInOrderKeepsRequestedOrder() {
+        when(availabilityIndex.isLoaded()).thenReturn(false);
+        when(bookRepository.findRowsByIdIn(anyCollection())).thenReturn(rows(3));
+        when(borrowedBookRepository.findCurrentBorrowsByBookIdIn(anyCollection()))
+                .thenReturn(List.of(projections.createProjection(CurrentBorrow.class, Map.of("bookId", 2L, "borrowId", 20L))));
+
+        List<BookDTO> books = service.findAllInOrder(List.of(3L, 99L, 1L, 2L));
+
+        assertThat(books).extracting(book -> book.id).containsExactly(3L, 1L, 2L);
+        assertThat(books).extracting(book -> book.currentBorrow).containsExactly(null, null, 20L);
+    }
+
+    @Test
+    void sparsePageReadsOnlySelectedColumns() {
+        when(availabilityIndex.isLoaded()).thenReturn(true);
+        when(availabilityIndex.currentBorrowId(2L)).thenReturn(20L);
+        when(sparseRowRepository.findRows(anyString(), anyMap(), anyString(), anyMap(), any(), anyInt()))
+                .thenAnswer(invocation -> LongStream.rangeClosed(1, 3)
+                        .mapToObj(id -> {
+                            Map<String, Object> row = new LinkedHashMap<>();
+                            row.put("id", id);
+                            row.put("title", "Book " + id);
+                            return row;
+                        })
+                        .collect(Collectors.toList()));
+
+        CursorPage<Map<String, Object>> page = service.page(0L, 2,
+                Fieldset.parse("title,currentlyBorrowed", BookReadService.FIELDS));
+
+        assertThat(page.getItems()).hasSize(2);
+        assertThat(page.getNextCursor()).isNotNull();
+        assertThat(page.getItems().get(1)).containsExactly(
+                entry("id", 2L), entry("title", "Book 2"), entry("currentlyBorrowed", true));
+        verify(sparseRowRepository).findRows(eq("Book b"),
+                eq(Map.of("id", "b.id", "title", "b.title")), anyString(), anyMap(), any(), eq(3));
+        verifyNoMoreInteractions(bookRepository, borrowedBookRepository);
+    }
+
+    private List<BookRow> rows(int count) {
+        return LongStream.rangeClosed(1, count)
+                .mapToObj(id -> projections.createProjection(BookRow.class, Map.of(
+                        "id", id, "title", "Book " + id, "isbn", "isbn-" + id, "authorId", 1L, "authorName", "Author")))
+                .toList();
+    }
+}
@@ -0,0 +1,133 @@
+package com.gazmanzara.library.service;
+
+import com.gazmanzara.library.model.Author;
+import com.gazmanzara.library.model.Book;
+import com.gazmanzara.library.model.Category;
+import com.gazmanzara.library.repository.BookRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Set;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class BookSearchIndexTest {
+
+    private BookSearchIndex index;
+    private Author marquez;
+    private Author austen;
+    private Category classics;
+
+    @BeforeEach
+    void setUp() {
+        index = new BookSearchIndex(null);
+        marquez = author(1L, "Gabriel García Márquez");
+        austen = author(2L, "Jane Austen");
+        classics = new Category("Classic Literature");
+        classics.setId(10L);
+
+        index.index(book(1L, "One Hundred Years of Solitude", marquez, 1967, "The Buendía family in Macondo"));
+        index.index(book(2L, "Love in the Time of Cholera", marquez, 1985, "A love story spanning decades"));
+        index.index(book(3L, "Pride and Prejudice", austen, 1813, "Love and manners in Regency England"));
+    }
+
+    @Test
+    void foldsCaseAndAccents() {
+        assertThat(search(new BookSearchIndex.Query("garcia MARQUEZ", null, null, null, null, null, null)))
+                .containsExactlyInAnyOrder(1L, 2L);
+        assertThat(search(new BookSearchIndex.Query("buendia", null, null, null, null, null, null)))
+                .containsExactly(1L);
+    }
+
+    @Test
+    void combinesTextAndFilters() {
+        assertThat(search(new BookSearchIndex.Query("love", null, null, 1L, null, null, null)))
+                .containsExactly(2L);
+        assertThat(search(new BookSearchIndex.Query(null, null, "austen", null, "classic", null, 1813)))
+                .containsExactly(3L);
+        assertThat(search(new BookSearchIndex.Query(null, "pride", null, null, null, null, 1967)))
+                .isEmpty();
+    }
+
+    @Test
+    void ranksTitleMatchesAboveDescriptionMatches() {
+        assertThat(search(new BookSearchIndex.Query("love", null, null, null, null, null, null)))
+                .containsExactly(2L, 3L);
+    }
+
+    @Test
+    void matchesTheLastWordAsAPrefix() {
+        assertThat(search(new BookSearchIndex.Query(null, "prid", null, null, null, null, null)))
+                .containsExactly(3L);
+        assertThat(search(new BookSearchIndex.Query("years of sol", null, null, null, null, null, null)))
+                .containsExactly(1L);
+        assertThat(search(new BookSearchIndex.Query(null, null, "marq", null, null, null, null)))
+                .containsExactlyInAnyOrder(1L, 2L);
+        // Only the last word is a prefix
+        assertThat(search(new BookSearchIndex.Query("yea of solitude", null, null, null, null, null, null)))
+                .isEmpty();
+    }
+
+    @Test
+    void appliesUpdatesAndRemovals() {
+        index.index(book(3L, "Emma", austen, 1815, null));
+        assertThat(search(new BookSearchIndex.Query("pride", null, null, null, null, null, null))).isEmpty();
+        assertThat(search(new BookSearchIndex.Query("emma", null, null, null, null, null, null))).containsExactly(3L);
+
+        index.authorRenamed(1L, "Gabo");
+        assertThat(search(new BookSearchIndex.Query(null, null, "gabo", null, null, null, null)))
+                .containsExactly(1L, 2L);
+
+        index.remove(1L);
+        assertThat(search(new BookSearchIndex.Query(null, null, "gabo", null, null, null, null)))
+                .containsExactly(2L);
+    }
+
+    @Test
+    void removesTheBooksOfARemovedAuthor() {
+        index.authorRemoved(1L);
+        assertThat(search(new BookSearchIndex.Query("love", null, null, null, null, null, null)))
+                .containsExactly(3L);
+    }
+
+    @Test
+    void keepsWritesMadeWhileRebuilding() {
+        BookRepository bookRepository = mock(BookRepository.class);
+        BookSearchIndex rebuilding = new BookSearchIndex(bookRepository);
+        // The snapshot was read before "Emma" was added
+        when(bookRepository.streamSearchRows()).thenAnswer(invocation -> {
+            rebuilding.index(book(4L, "Emma", austen, 1815, null));
+            return Stream.empty();
+        });
+        when(bookRepository.streamCategoryRows()).thenAnswer(invocation -> Stream.empty());
+
+        rebuilding.rebuild();
+
+        assertThat(rebuilding.search(new BookSearchIndex.Query("emma", null, null, null, null, null, null), 10))
+                .containsExactly(4L);
+    }
+
+    private java.util.List<Long> search(BookSearchIndex.Query query) {
+        return index.search(query, 10);
+    }
+
+    private Book book(Long id, String title, Author author, int year, String description) {
+        Book book = new Book(title, "isbn-" + id, author);
+        book.setId(id);
+        book.setPublicationYear(year);
+        book.setDescription(description);
+        if (author == austen) {
+            book.setCategories(Set.of(classics));
+        }
+        return book;
+    }
+
+    private static Author author(Long id, String name) {
+        Author author = new Author(name);
+        author.setId(id);
+        return author;
+    }
+}
@@ -0,0 +1,202 @@
+package com.gazmanzara.library.service;
+
+import com.gazmanzara.library.dto.CirculationBatchResult;
+import com.gazmanzara.library.dto.CirculationBatchResult.Item;
+import com.gazmanzara.library.model.BorrowStatus;
+import com.gazmanzara.library.repository.BookRepository;
+import com.gazmanzara.library.repository.BorrowedBookRepository;
+import com.gazmanzara.library.service.CirculationService.BorrowItem;
+import com.gazmanzara.library.service.MemberSummaryService.Delta;
+import com.gazmanzara.library.service.MemberSummaryService.Summary;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.CannotAcquireLockException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementSetter;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class CirculationServiceTest {
+
+    private final JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+    private final BookRepository bookRepository = mock(BookRepository.class);
+    private final MemberSummaryService memberSummaryService = mock(MemberSummaryService.class);
+    private final BorrowedBookRepository borrowedBookRepository = mock(BorrowedBookRepository.class);
+    private final BookAvailabilityIndex availabilityIndex = mock(BookAvailabilityIndex.class);
+
+    private final Map<Long, Summary> members = new HashMap<>();
+    // Books another transaction borrows between the chunk's checks and its insert
+    private final Set<Long> takenConcurrently = new HashSet<>();
+    private final Map<Long, Delta> adjusted = new HashMap<>();
+    private final AtomicLong nextBorrowId = new AtomicLong(1000);
+
+    @BeforeEach
+    void setUp() {
+        when(bookRepository.findIdsByIdIn(anyCollection())).thenAnswer(invocation ->
+                new ArrayList<>(invocation.<Collection<Long>>getArgument(0)));
+        when(borrowedBookRepository.findCurrentBorrowsByBookIdIn(anyCollection())).thenReturn(List.of());
+        when(memberSummaryService.lock(anyCollection())).thenAnswer(invocation ->
+                invocation.<Collection<Long>>getArgument(0).stream().filter(members::containsKey)
+                        .collect(Collectors.toMap(id -> id, members::get)));
+        doAnswer(invocation -> {
+            adjusted.putAll(invocation.getArgument(0));
+            return null;
+        }).when(memberSummaryService).adjust(anyMap(), any());
+        // Inserts every book it is given except those taken concurrently, as ON CONFLICT DO NOTHING would
+        doAnswer(invocation -> {
+            List<Long[]> arrays = bindArrays(invocation.getArgument(1));
+            RowCallbackHandler handler = invocation.getArgument(2);
+            for (Long bookId : arrays.get(0)) {
+                if (!takenConcurrently.contains(bookId)) {
+                    handler.processRow(row(Map.of("id", nextBorrowId.getAndIncrement(), "book_id", bookId)));
+                }
+            }
+            return null;
+        }).when(jdbcTemplate).query(startsWith("INSERT INTO borrowed_books"), any(PreparedStatementSetter.class),
+                any(RowCallbackHandler.class));
+    }
+
+    @Test
+    void claimsTheLimitAcrossEntriesOfOneMember() {
+        members.put(1L, new Summary(1L, 3, 0, 5));
+        members.put(2L, new Summary(2L, 0, 0, 5));
+
+        CirculationBatchResult result = service(500).borrow(List.of(
+                new BorrowItem(10L, 1L), new BorrowItem(11L, 2L), new BorrowItem(12L, 1L),
+                new BorrowItem(13L, 1L), new BorrowItem(14L, 1L)), null);
+
+        assertThat(result.items).extracting(item -> item.error).containsExactly(
+                null, null, null,
+                "Member has reached the limit of 5 borrowed books",
+                "Member has reached the limit of 5 borrowed books");
+        assertThat(result.succeeded).isEqualTo(3);
+        assertThat(result.failed).isEqualTo(2);
+        assertThat(adjusted).containsEntry(1L, new Delta(2, 0)).containsEntry(2L, new Delta(1, 0));
+    }
+
+    @Test
+    void reportsABookLostToAConcurrentBorrowAsAlreadyBorrowed() {
+        members.put(1L, new Summary(1L, 0, 0, 5));
+        takenConcurrently.add(11L);
+
+        CirculationBatchResult result = service(500).borrow(List.of(
+                new BorrowItem(10L, 1L), new BorrowItem(11L, 1L)), 7);
+
+        Item won = result.items.get(0);
+        assertThat(won.error).isNull();
+        assertThat(won.borrowId).isNotNull();
+        assertThat(won.status).isEqualTo(BorrowStatus.BORROWED);
+        Item lost = result.items.get(1);
+        assertThat(lost.error).isEqualTo("Book is already borrowed");
+        assertThat(lost.borrowId).isNull();
+        assertThat(lost.status).isNull();
+        // Only the borrow that was written takes up a slot or shows the book as on loan
+        assertThat(adjusted).containsExactly(Map.entry(1L, new Delta(1, 0)));
+        verify(availabilityIndex).borrowed(10L, won.borrowId);
+        verify(availabilityIndex, never()).borrowed(eq(11L), anyLong());
+    }
+
+    @Test
+    void reportsEveryEntryOfARolledBackChunkAndCarriesOn() {
+        members.put(1L, new Summary(1L, 0, 0, 5));
+        members.put(2L, new Summary(2L, 0, 0, 5));
+        doThrow(new CannotAcquireLockException("deadlock", new java.sql.SQLException("deadlock detected")))
+                .doAnswer(invocation -> {
+                    adjusted.putAll(invocation.getArgument(0));
+                    return null;
+                })
+                .when(memberSummaryService).adjust(anyMap(), any());
+
+        CirculationBatchResult result = service(2).borrow(List.of(
+                new BorrowItem(10L, 1L), new BorrowItem(10L, 2L), new BorrowItem(11L, 1L), new BorrowItem(12L, 2L)), null);
+
+        // The duplicate never reached a chunk; the first chunk lost its writes, the second committed
+        assertThat(result.items).extracting(item -> item.error, item -> item.status, item -> item.dueDate == null).containsExactly(
+                tuple("Chunk rejected by the database: deadlock detected", null, true),
+                tuple("Book appears more than once in this batch", null, true),
+                tuple("Chunk rejected by the database: deadlock detected", null, true),
+                tuple(null, BorrowStatus.BORROWED, false));
+        assertThat(result.failed).isEqualTo(3);
+        assertThat(adjusted).containsExactly(Map.entry(2L, new Delta(1, 0)));
+    }
+
+    @Test
+    void tellsReturnedBorrowsFromUnknownOnes() {
+        when(borrowedBookRepository.findIdsByIdIn(anyCollection())).thenReturn(List.of(2L));
+        doAnswer(invocation -> {
+            RowCallbackHandler handler = invocation.getArgument(2);
+            handler.processRow(row(Map.of("id", 1L, "book_id", 10L, "member_id", 5L, "status", "OVERDUE")));
+            return null;
+        }).when(jdbcTemplate).query(startsWith("SELECT id, book_id"), any(PreparedStatementSetter.class),
+                any(RowCallbackHandler.class));
+
+        CirculationBatchResult result = service(500).returnBorrows(List.of(1L, 2L, 3L));
+
+        assertThat(result.items).extracting(item -> item.error).containsExactly(
+                null, "Book is already returned", "BorrowedBook not found with id: '3'");
+        assertThat(result.items.get(0).status).isEqualTo(BorrowStatus.RETURNED);
+        assertThat(adjusted).containsExactly(Map.entry(5L, new Delta(-1, -1)));
+        verify(availabilityIndex).returned(10L, 1L);
+    }
+
+    private CirculationService service(int chunkSize) {
+        return new CirculationService(jdbcTemplate, bookRepository, memberSummaryService, borrowedBookRepository,
+                mock(LibraryStatisticsService.class), availabilityIndex, mock(PlatformTransactionManager.class),
+                chunkSize, 10_000);
+    }
+
+    // Runs the statement's setter and returns the arrays it bound, in order
+    private static List<Long[]> bindArrays(PreparedStatementSetter setter) throws Exception {
+        List<Long[]> arrays = new ArrayList<>();
+        Connection connection = mock(Connection.class);
+        when(connection.createArrayOf(anyString(), any(Object[].class))).thenAnswer(invocation -> {
+            arrays.add((Long[]) invocation.getRawArguments()[1]);
+            return mock(java.sql.Array.class);
+        });
+        PreparedStatement ps = mock(PreparedStatement.class);
+        when(ps.getConnection()).thenReturn(connection);
+        setter.setValues(ps);
+        return arrays;
+    }
+
+    private static ResultSet row(Map<String, Object> columns) throws Exception {
+        ResultSet rs = mock(ResultSet.class);
+        for (Map.Entry<String, Object> column : columns.entrySet()) {
+            if (column.getValue() instanceof Long value) {
+                when(rs.getLong(column.getKey())).thenReturn(value);
+            } else {
+                when(rs.getString(column.getKey())).thenReturn((String) column.getValue());
+            }
+        }
+        return rs;
+    }
+}
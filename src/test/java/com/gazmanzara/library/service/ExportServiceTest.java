@@ -0,0 +1,51 @@
+package com.gazmanzara.library.service;
+
+import com.gazmanzara.library.dto.BookDTO;
+import com.gazmanzara.library.repository.BookRepository.ExportRow;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.projection.SpelAwareProxyProjectionFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ExportServiceTest {
+
+    @Test
+    void foldsTheCategoryRowsOfEachBook() {
+        List<BookDTO> books = new ArrayList<>();
+        ExportService.booksOf(List.of(
+                row(1L, 7L, "Jane Austen", 10L, "Classics"),
+                row(1L, 7L, "Jane Austen", 11L, "Romance"),
+                row(2L, null, null, null, null),
+                row(3L, 7L, "Jane Austen", 10L, "Classics")).iterator()).forEachRemaining(books::add);
+
+        assertThat(books).extracting(book -> book.id).containsExactly(1L, 2L, 3L);
+        assertThat(books.get(0).categories).extracting(category -> category.name).containsExactly("Classics", "Romance");
+        assertThat(books.get(0).author.name).isEqualTo("Jane Austen");
+        // A book without author or categories is written rather than failing the export
+        assertThat(books.get(1).author).isNull();
+        assertThat(books.get(1).categories).isEmpty();
+        assertThat(books.get(2).categories).extracting(category -> category.id).containsExactly(10L);
+    }
+
+    @Test
+    void writesNothingForNoRows() {
+        assertThat(ExportService.booksOf(List.<ExportRow>of().iterator()).hasNext()).isFalse();
+    }
+
+    private static ExportRow row(Long id, Long authorId, String authorName, Long categoryId, String categoryName) {
+        Map<String, Object> row = new HashMap<>();
+        row.put("id", id);
+        row.put("title", "Book " + id);
+        row.put("isbn", "isbn-" + id);
+        row.put("authorId", authorId);
+        row.put("authorName", authorName);
+        row.put("categoryId", categoryId);
+        row.put("categoryName", categoryName);
+        return new SpelAwareProxyProjectionFactory().createProjection(ExportRow.class, row);
+    }
+}
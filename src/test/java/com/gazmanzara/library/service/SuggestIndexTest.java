@@ -0,0 +1,171 @@
+package com.gazmanzara.library.service;
+
+import com.gazmanzara.library.model.Author;
+import com.gazmanzara.library.model.Book;
+import com.gazmanzara.library.model.Category;
+import com.gazmanzara.library.repository.AuthorRepository;
+import com.gazmanzara.library.repository.BookRepository;
+import com.gazmanzara.library.repository.BookRepository.CategoryRow;
+import com.gazmanzara.library.repository.BookRepository.TitleRow;
+import com.gazmanzara.library.repository.CategoryRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.projection.ProjectionFactory;
+import org.springframework.data.projection.SpelAwareProxyProjectionFactory;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class SuggestIndexTest {
+
+    private final ProjectionFactory projections = new SpelAwareProxyProjectionFactory();
+
+    private final List<TitleRow> titles = new ArrayList<>();
+    private final List<CategoryRow> categoryRows = new ArrayList<>();
+    private final List<Author> authors = new ArrayList<>();
+    private final List<Category> categories = new ArrayList<>();
+    private SuggestIndex index;
+
+    @BeforeEach
+    void setUp() {
+        BookRepository bookRepository = mock(BookRepository.class);
+        AuthorRepository authorRepository = mock(AuthorRepository.class);
+        CategoryRepository categoryRepository = mock(CategoryRepository.class);
+        when(bookRepository.streamTitleRows()).thenAnswer(invocation -> titles.stream());
+        when(bookRepository.streamCategoryRows()).thenAnswer(invocation -> categoryRows.stream());
+        when(authorRepository.findAll()).thenAnswer(invocation -> authors);
+        when(categoryRepository.findAll()).thenAnswer(invocation -> categories);
+        index = new SuggestIndex(bookRepository, authorRepository, categoryRepository);
+
+        author(1L, "Gabriel García Márquez");
+        author(2L, "Jane Austen");
+        author(3L, "Terry Pratchett");
+        category(10L, "Classic Literature");
+        category(11L, "Fantasy");
+        title(1L, "One Hundred Years of Solitude", 1L, 40, 10L);
+        title(2L, "Love in the Time of Cholera", 1L, 25, 10L);
+        title(3L, "Pride and Prejudice", 2L, 60, 10L);
+        title(4L, "Persuasion", 2L, 5, 10L);
+        title(5L, "Guards! Guards!", 3L, 30, 11L);
+        title(6L, "Mort", 3L, 12, 11L);
+        index.rebuild();
+    }
+
+    @Test
+    void matchesAtAnyWordStart() {
+        assertThat(suggest("prejud")).containsExactly("BOOK Pride and Prejudice 60");
+        assertThat(suggest("years of")).containsExactly("BOOK One Hundred Years of Solitude 40");
+        assertThat(suggest("austen")).containsExactly("AUTHOR Jane Austen 65");
+    }
+
+    @Test
+    void foldsCaseAndAccents() {
+        assertThat(suggest("MARQ")).containsExactly("AUTHOR Gabriel García Márquez 65");
+        assertThat(suggest("garcia m")).containsExactly("AUTHOR Gabriel García Márquez 65");
+    }
+
+    @Test
+    void ranksByBorrowsAcrossKinds() {
+        assertThat(suggest("p")).containsExactly(
+                "BOOK Pride and Prejudice 60",
+                "AUTHOR Terry Pratchett 42",
+                "BOOK Persuasion 5");
+        assertThat(suggest("classic")).containsExactly("CATEGORY Classic Literature 130");
+    }
+
+    @Test
+    void fillsWithMatchesOneEditAway() {
+        assertThat(suggest("practhett")).containsExactly("AUTHOR Terry Pratchett 42");
+        assertThat(suggest("solitdue")).containsExactly("BOOK One Hundred Years of Solitude 40");
+        assertThat(suggest("fantsy")).containsExactly("CATEGORY Fantasy 42");
+        assertThat(suggest("prejxdice")).containsExactly("BOOK Pride and Prejudice 60");
+        assertThat(suggest("mortt")).containsExactly("BOOK Mort 12");
+        assertThat(suggest("guardz")).containsExactly("BOOK Guards! Guards! 30");
+        assertThat(suggest("prejudiccx")).isEmpty();
+    }
+
+    @Test
+    void listsExactMatchesBeforeFuzzyOnes() {
+        assertThat(suggest("mor")).containsExactly("BOOK Mort 12", "AUTHOR Gabriel García Márquez 65");
+        assertThat(suggest("mar")).containsExactly("AUTHOR Gabriel García Márquez 65", "BOOK Mort 12");
+    }
+
+    @Test
+    void appliesWritesBeforeTheNextRebuild() {
+        Book book = new Book("Small Gods", "isbn-7", null);
+        book.setId(7L);
+        index.bookSaved(book);
+        index.authorSaved(2L, "Jane Austen-Leigh");
+        index.bookRemoved(4L);
+        Book renamed = new Book("Pride & Prejudice", "isbn-3", null);
+        renamed.setId(3L);
+        index.bookSaved(renamed);
+
+        assertThat(suggest("small")).containsExactly("BOOK Small Gods 0");
+        assertThat(suggest("smal gods")).containsExactly("BOOK Small Gods 0");
+        assertThat(suggest("leigh")).containsExactly("AUTHOR Jane Austen-Leigh 65");
+        assertThat(suggest("persuasion")).isEmpty();
+        assertThat(suggest("pride")).containsExactly("BOOK Pride & Prejudice 60");
+
+        // After a rebuild the same names come from the sorted keys
+        titles.removeIf(row -> row.getId() == 4L || row.getId() == 3L);
+        title(3L, "Pride & Prejudice", 2L, 60, 10L);
+        title(7L, "Small Gods", 3L, 0, 11L);
+        authors.get(1).setName("Jane Austen-Leigh");
+        index.rebuild();
+        assertThat(suggest("small")).containsExactly("BOOK Small Gods 0");
+        assertThat(suggest("smal gods")).containsExactly("BOOK Small Gods 0");
+        assertThat(suggest("persuasion")).isEmpty();
+        assertThat(suggest("pride")).containsExactly("BOOK Pride & Prejudice 60");
+    }
+
+    @Test
+    void oneEditMatchesAllowEveryKindOfEdit() {
+        assertThat(SuggestIndex.startsWithinOneEdit("pratchett", 0, "pratchet")).isTrue();
+        assertThat(SuggestIndex.startsWithinOneEdit("pratchett", 0, "pratchex")).isTrue();
+        assertThat(SuggestIndex.startsWithinOneEdit("pratchett", 0, "prtachett")).isTrue();
+        assertThat(SuggestIndex.startsWithinOneEdit("pratchett", 0, "pratxchett")).isTrue();
+        assertThat(SuggestIndex.startsWithinOneEdit("pratchett", 0, "prachett")).isTrue();
+        assertThat(SuggestIndex.startsWithinOneEdit("terry pratchett", 6, "prat")).isTrue();
+        assertThat(SuggestIndex.startsWithinOneEdit("pratchett", 0, "prxtchxtt")).isFalse();
+        assertThat(SuggestIndex.startsWithinOneEdit("mort", 0, "mortal")).isFalse();
+    }
+
+    private List<String> suggest(String text) {
+        return index.suggest(text, 10).stream()
+                .map(suggestion -> suggestion.kind() + " " + suggestion.text() + " " + suggestion.popularity())
+                .toList();
+    }
+
+    private void author(long id, String name) {
+        Author author = new Author(name);
+        author.setId(id);
+        authors.add(author);
+    }
+
+    private void category(long id, String name) {
+        Category category = new Category(name);
+        category.setId(id);
+        categories.add(category);
+    }
+
+    private void title(long id, String title, long authorId, long borrows, long categoryId) {
+        Map<String, Object> row = new LinkedHashMap<>();
+        row.put("id", id);
+        row.put("title", title);
+        row.put("authorId", authorId);
+        row.put("borrows", borrows);
+        titles.add(projections.createProjection(TitleRow.class, row));
+        Map<String, Object> category = new LinkedHashMap<>();
+        category.put("bookId", id);
+        category.put("categoryId", categoryId);
+        category.put("categoryName", null);
+        categoryRows.add(projections.createProjection(CategoryRow.class, category));
+    }
+}